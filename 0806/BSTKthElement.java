@@ -1,8 +1,10 @@
 // BSTKthElement.java
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
 public class BSTKthElement {
 
@@ -104,6 +106,71 @@ public class BSTKthElement {
     }
 
 
+    // --- 由陣列批次建立 ---
+
+    /**
+     * 由已排序（遞增，可含重複值）的陣列一次建立平衡的 BST，O(n)。
+     * 取中間元素為根、左右兩半遞迴建立；重複值和逐筆插入一樣只保留一個。
+     *
+     * @param sorted 遞增排序的陣列
+     * @return 建立好的樹
+     * @throws IllegalArgumentException 如果輸入不是遞增排序
+     */
+    public static BSTKthElement fromSorted(int[] sorted) {
+        int[] distinct = distinctSorted(sorted);
+        BSTKthElement tree = new BSTKthElement();
+        tree.root = buildBalanced(distinct, 0, distinct.length - 1);
+        return tree;
+    }
+
+    /**
+     * 由未排序的陣列建立：先排序再建立，O(n log n)，不修改傳入的陣列。
+     *
+     * @param values 任意順序的陣列
+     * @return 建立好的樹
+     */
+    public static BSTKthElement fromUnsorted(int[] values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return fromSorted(sorted);
+    }
+
+    // 檢查遞增並去除重複值，沒有重複時直接回傳原陣列
+    private static int[] distinctSorted(int[] sorted) {
+        int count = sorted.length == 0 ? 0 : 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] < sorted[i - 1]) {
+                throw new IllegalArgumentException("Input is not sorted at index " + i);
+            }
+            if (sorted[i] != sorted[i - 1]) {
+                count++;
+            }
+        }
+        if (count == sorted.length) {
+            return sorted;
+        }
+        int[] distinct = new int[count];
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                distinct[n++] = sorted[i];
+            }
+        }
+        return distinct;
+    }
+
+    private static TreeNode buildBalanced(int[] values, int lo, int hi) {
+        if (lo > hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        TreeNode node = new TreeNode(values[mid]);
+        node.left = buildBalanced(values, lo, mid - 1);
+        node.right = buildBalanced(values, mid + 1, hi);
+        node.size = hi - lo + 1; // 子樹就是 values[lo..hi]，大小直接可得
+        return node;
+    }
+
     // --- 找出BST中第k小的元素 ---
 
     /**
@@ -330,5 +397,31 @@ public class BSTKthElement {
         System.out.println("\n新總節點數: " + bst.getSize(bst.root)); // 7
         System.out.println("新的第 4 小: " + bst.findKthSmallest(4)); // 55
         System.out.println("---");
+
+        // 測試由陣列批次建立
+        System.out.println("\n--- 測試由陣列批次建立 ---");
+        BSTKthElement loaded = BSTKthElement.fromUnsorted(new int[]{80, 10, 60, 30, 50, 20, 70, 40, 30});
+        System.out.print("由未排序且含重複的資料建立 (值, size): ");
+        loaded.inorderTraversalWithSizes(loaded.root);
+        System.out.println("\n第 3 小: " + loaded.findKthSmallest(3) + ", 第 2 大: " + loaded.findKthLargest(2)); // 30, 70
+
+        int n = 1000000;
+        int[] randomValues = new Random(n).ints(n).toArray();
+        long start = System.nanoTime();
+        BSTKthElement inserted = new BSTKthElement();
+        for (int value : randomValues) {
+            inserted.insert(value);
+        }
+        long insertTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        BSTKthElement bulk = BSTKthElement.fromUnsorted(randomValues);
+        long bulkTime = System.nanoTime() - start;
+        boolean same = inserted.getSize(inserted.root) == bulk.getSize(bulk.root);
+        for (int k = 1; k <= bulk.getSize(bulk.root) && same; k += 9973) {
+            same = inserted.findKthSmallest(k) == bulk.findKthSmallest(k);
+        }
+        System.out.printf("%d 個隨機值: 逐筆插入 %.1f ms，排序後建立 %.1f ms，第 k 小抽查一致: %s%n",
+            n, insertTime / 1e6, bulkTime / 1e6, same);
+        System.out.println("---");
     }
 }
\ No newline at end of file
@@ -1,8 +1,12 @@
 // BSTRangeQuerySystem.java
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class BSTRangeQuerySystem {
 
@@ -47,6 +51,70 @@ public class BSTRangeQuerySystem {
         return current;
     }
 
+    // --- 由陣列批次建立 ---
+
+    /**
+     * 由已排序（遞增，可含重複值）的陣列一次建立平衡的 BST，O(n)。
+     * 取中間元素為根、左右兩半遞迴建立；重複值和逐筆插入一樣只保留一個。
+     *
+     * @param sorted 遞增排序的陣列
+     * @return 建立好的樹
+     * @throws IllegalArgumentException 如果輸入不是遞增排序
+     */
+    public static BSTRangeQuerySystem fromSorted(int[] sorted) {
+        int[] distinct = distinctSorted(sorted);
+        BSTRangeQuerySystem tree = new BSTRangeQuerySystem();
+        tree.root = buildBalanced(distinct, 0, distinct.length - 1);
+        return tree;
+    }
+
+    /**
+     * 由未排序的陣列建立：先排序再建立，O(n log n)，不修改傳入的陣列。
+     *
+     * @param values 任意順序的陣列
+     * @return 建立好的樹
+     */
+    public static BSTRangeQuerySystem fromUnsorted(int[] values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return fromSorted(sorted);
+    }
+
+    // 檢查遞增並去除重複值，沒有重複時直接回傳原陣列
+    private static int[] distinctSorted(int[] sorted) {
+        int count = sorted.length == 0 ? 0 : 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] < sorted[i - 1]) {
+                throw new IllegalArgumentException("Input is not sorted at index " + i);
+            }
+            if (sorted[i] != sorted[i - 1]) {
+                count++;
+            }
+        }
+        if (count == sorted.length) {
+            return sorted;
+        }
+        int[] distinct = new int[count];
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                distinct[n++] = sorted[i];
+            }
+        }
+        return distinct;
+    }
+
+    private static TreeNode buildBalanced(int[] values, int lo, int hi) {
+        if (lo > hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        TreeNode node = new TreeNode(values[mid]);
+        node.left = buildBalanced(values, lo, mid - 1);
+        node.right = buildBalanced(values, mid + 1, hi);
+        return node;
+    }
+
     // --- 實作範圍查詢：找出在 [min, max] 範圍內的所有節點 ---
 
     /**
@@ -146,6 +214,173 @@ public class BSTRangeQuerySystem {
         return node.val + rangeSumRecursive(node.left, min, max) + rangeSumRecursive(node.right, min, max);
     }
 
+    // --- 平行範圍統計：以 fork-join 分割子樹 ---
+
+    /**
+     * 範圍統計：數量、總和、最小、最大，以及把 [rangeMin, rangeMax] 等分成數個區間的直方圖。
+     * 子任務各自累積一份，最後以 merge 合併。
+     */
+    public static final class RangeStats {
+        public final int rangeMin;
+        public final int rangeMax;
+        public long count;
+        public long sum;
+        public int minValue = Integer.MAX_VALUE;
+        public int maxValue = Integer.MIN_VALUE;
+        public final long[] histogram;
+
+        RangeStats(int rangeMin, int rangeMax, int buckets) {
+            if (buckets < 1) {
+                throw new IllegalArgumentException("buckets must be at least 1: " + buckets);
+            }
+            this.rangeMin = rangeMin;
+            this.rangeMax = rangeMax;
+            this.histogram = new long[buckets];
+        }
+
+        void add(int value) {
+            count++;
+            sum += value;
+            minValue = Math.min(minValue, value);
+            maxValue = Math.max(maxValue, value);
+            long width = (long) rangeMax - rangeMin + 1;
+            histogram[(int) (((long) value - rangeMin) * histogram.length / width)]++;
+        }
+
+        void merge(RangeStats other) {
+            count += other.count;
+            sum += other.sum;
+            minValue = Math.min(minValue, other.minValue);
+            maxValue = Math.max(maxValue, other.maxValue);
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+        }
+
+        boolean sameAs(RangeStats other) {
+            return count == other.count && sum == other.sum && minValue == other.minValue
+                && maxValue == other.maxValue && Arrays.equals(histogram, other.histogram);
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", sum=" + sum + ", min=" + minValue + ", max=" + maxValue
+                + ", histogram=" + Arrays.toString(histogram);
+        }
+    }
+
+    /**
+     * 循序計算 [min, max] 的範圍統計，直方圖分成 buckets 個等寬區間。
+     *
+     * @param min     範圍的最小值（包含）
+     * @param max     範圍的最大值（包含）
+     * @param buckets 直方圖的區間數
+     * @return 範圍統計
+     * @throws IllegalArgumentException 如果 buckets 小於 1
+     */
+    public RangeStats rangeStats(int min, int max, int buckets) {
+        RangeStats stats = new RangeStats(min, max, buckets);
+        if (min <= max) {
+            collectStats(root, min, max, stats);
+        }
+        return stats;
+    }
+
+    // 與 rangeSumRecursive 相同的剪枝，改為累積統計
+    private static void collectStats(TreeNode node, int min, int max, RangeStats stats) {
+        while (node != null) {
+            if (node.val < min) {
+                node = node.right;
+            } else if (node.val > max) {
+                node = node.left;
+            } else {
+                collectStats(node.left, min, max, stats);
+                stats.add(node.val);
+                node = node.right;
+            }
+        }
+    }
+
+    // 這棵 BST 沒有記錄子樹大小，只能用深度估計工作量：深度小於此值的節點才分割，最多約 2^12 個子任務
+    static final int PARALLEL_DEPTH = 12;
+
+    /**
+     * 以 fork-join 計算 [min, max] 的範圍統計。
+     * 範圍內的節點把左子樹 fork 出去、自己處理右子樹，深度達 PARALLEL_DEPTH 後改用 collectStats。
+     * 樹不平衡時各子任務的工作量會不平均，由 fork-join 的工作竊取來平衡。走訪期間不可修改樹。
+     *
+     * @param min     範圍的最小值（包含）
+     * @param max     範圍的最大值（包含）
+     * @param buckets 直方圖的區間數
+     * @param pool    執行的 ForkJoinPool
+     * @return 範圍統計
+     * @throws IllegalArgumentException 如果 buckets 小於 1
+     */
+    public RangeStats rangeStatsParallel(int min, int max, int buckets, ForkJoinPool pool) {
+        if (buckets < 1) {
+            throw new IllegalArgumentException("buckets must be at least 1: " + buckets);
+        }
+        if (min > max) {
+            return new RangeStats(min, max, buckets);
+        }
+        return pool.invoke(new RangeStatsTask(root, min, max, buckets, 0));
+    }
+
+    /**
+     * 以 fork-join 計算在指定範圍 [min, max] 內所有節點值的總和，只取 rangeStatsParallel 的總和。
+     *
+     * @param min 範圍的最小值（包含）
+     * @param max 範圍的最大值（包含）
+     * @return 在範圍內所有節點值的總和
+     */
+    public long rangeSumParallel(int min, int max) {
+        return rangeStatsParallel(min, max, 1, ForkJoinPool.commonPool()).sum;
+    }
+
+    private static final class RangeStatsTask extends RecursiveTask<RangeStats> {
+        private static final long serialVersionUID = 1L;
+
+        private final TreeNode node;
+        private final int min;
+        private final int max;
+        private final int buckets;
+        private final int depth;
+
+        RangeStatsTask(TreeNode node, int min, int max, int buckets, int depth) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+            this.buckets = buckets;
+            this.depth = depth;
+        }
+
+        @Override
+        protected RangeStats compute() {
+            RangeStats stats = new RangeStats(min, max, buckets);
+            TreeNode current = node;
+            int currentDepth = depth;
+            // 範圍外的節點只會往一邊走，不分割
+            while (current != null && (current.val < min || current.val > max)) {
+                current = current.val < min ? current.right : current.left;
+                currentDepth++;
+            }
+            if (current == null) {
+                return stats;
+            }
+            if (currentDepth >= PARALLEL_DEPTH) {
+                collectStats(current, min, max, stats);
+                return stats;
+            }
+            RangeStatsTask leftTask = new RangeStatsTask(current.left, min, max, buckets, currentDepth + 1);
+            leftTask.fork();
+            RangeStats right = new RangeStatsTask(current.right, min, max, buckets, currentDepth + 1).compute();
+            stats.merge(leftTask.join());
+            stats.add(current.val);
+            stats.merge(right);
+            return stats;
+        }
+    }
+
     // --- 實作最接近查詢：找出最接近給定值的節點 ---
 
     /**
@@ -290,5 +525,73 @@ public class BSTRangeQuerySystem {
             System.out.println("空樹的最接近查詢錯誤: " + e.getMessage());
         }
         System.out.println("---");
+
+        // 平行範圍總和
+        System.out.println("平行範圍總和 [30, 70]: " + bst.rangeSumParallel(30, 70)); // 預期: 250
+        System.out.println("範圍統計 [30, 70]，2 個區間: " + bst.rangeStats(30, 70, 2));
+        try {
+            bst.rangeStats(30, 70, 0);
+        } catch (IllegalArgumentException e) {
+            System.out.println("直方圖區間數為 0 的錯誤: " + e.getMessage());
+        }
+
+        // 由陣列批次建立
+        BSTRangeQuerySystem loaded = BSTRangeQuerySystem.fromUnsorted(values);
+        System.out.print("由同一組資料批次建立，中序遍歷: ");
+        loaded.inorderTraversal(loaded.root);
+        System.out.println("\n批次建立後範圍 [30, 70] 的總和: " + loaded.rangeSum(30, 70)); // 預期: 250
+        System.out.println("---");
+        benchmarkParallelSum();
+    }
+
+    /**
+     * 一百萬個隨機值的 BST 上，以不同範圍寬度與平行度比較循序與平行範圍統計
+     */
+    private static void benchmarkParallelSum() {
+        int n = 1000000;
+        int keySpace = 4 * n;
+        BSTRangeQuerySystem bst = new BSTRangeQuerySystem();
+        Random random = new Random(3);
+        for (int i = 0; i < n; i++) {
+            bst.insert(random.nextInt(keySpace));
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        int[] parallelism = cores > 4 ? new int[]{1, 2, 4, cores} : new int[]{1, 2, 4};
+        System.out.println("--- 平行範圍統計效能（可用處理器 " + cores + "）---");
+        System.out.printf("%-8s %10s", "寬度", "循序(ms)");
+        for (int p : parallelism) {
+            System.out.printf(" %10s", "p=" + p + "(ms)");
+        }
+        System.out.println();
+
+        boolean consistent = true;
+        for (double width : new double[]{0.01, 0.1, 1.0}) {
+            int min = (int) (keySpace * (1 - width) / 2);
+            int max = (int) (min + keySpace * width) - 1;
+            RangeStats expected = null;
+            long sequentialNanos = 0;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                expected = bst.rangeStats(min, max, 16);
+                sequentialNanos = System.nanoTime() - start;
+            }
+            consistent &= expected.sum == bst.rangeSum(min, max) && expected.count == bst.rangeCount(min, max);
+            System.out.printf("%-8s %10.2f", (width * 100) + "%", sequentialNanos / 1e6);
+            for (int p : parallelism) {
+                ForkJoinPool pool = new ForkJoinPool(p);
+                long parallelNanos = 0;
+                for (int round = 0; round < 5; round++) {
+                    long start = System.nanoTime();
+                    RangeStats stats = bst.rangeStatsParallel(min, max, 16, pool);
+                    parallelNanos = System.nanoTime() - start;
+                    consistent &= stats.sameAs(expected);
+                }
+                pool.shutdown();
+                System.out.printf(" %10.2f", parallelNanos / 1e6);
+            }
+            System.out.println();
+        }
+        System.out.println("平行與循序結果（數量、總和、最小、最大、直方圖）: " + (consistent ? "一致" : "不一致"));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,242 @@
+import java.util.*;
+
+/**
+ * 不會飢餓的任務調度：優先級老化（aging）加上最早截止期限優先（EDF）通道
+ *
+ * 老化：任務每等待 agingInterval 個時間單位，有效優先級就加 1。
+ * 在時間 now 時任務的有效優先級是 priority + (now - arrival) / agingInterval，
+ * 兩個任務比較時 now 會消掉，順序只取決於 arrival - priority × agingInterval。
+ * 因此把這個值在加入時算好當成堆積的鍵（以建立排程器的時間為 epoch 的位移量），
+ * 之後時間前進也不必重新掃描或調整整個堆積，加入與取出都維持 O(log n)。
+ * 鍵相同時依序號先進先出；agingInterval = 0 時退回 TaskScheduler 的嚴格優先級。
+ *
+ * EDF 通道：有截止期限的任務另外放在依截止期限排序的堆積。
+ * 取出時若 EDF 通道最早的截止期限距離現在不到 urgencyWindow（或一般通道是空的）就先執行它，
+ * 否則從老化通道取出。urgencyWindow < 0 時不使用 EDF 通道，截止期限任務與一般任務一起排。
+ *
+ * 時間由呼叫者傳入（任意單位），方便做離散事件模擬。
+ */
+public class AgingTaskScheduler {
+    
+    static class Task {
+        final String name;
+        final int priority;
+        final long arrival;
+        final long deadline;  // 沒有截止期限時為 Long.MAX_VALUE
+        final long sequence;
+        final long rank;      // 老化通道的鍵，越小越先執行
+        
+        Task(String name, int priority, long arrival, long deadline, long sequence, long rank) {
+            this.name = name;
+            this.priority = priority;
+            this.arrival = arrival;
+            this.deadline = deadline;
+            this.sequence = sequence;
+            this.rank = rank;
+        }
+        
+        @Override
+        public String toString() {
+            return name + "(優先級:" + priority + ")";
+        }
+    }
+    
+    private final long agingInterval;
+    private final long urgencyWindow;
+    private final long epoch;
+    private final PriorityQueue<Task> agingLane;
+    private final PriorityQueue<Task> deadlineLane;
+    private long nextSequence;
+    
+    /**
+     * @param agingInterval 每等待多少時間有效優先級加 1，0 表示不老化（嚴格優先級）
+     * @param urgencyWindow 截止期限在多少時間內的任務優先執行，負數表示不使用 EDF 通道
+     * @param epoch         時間的起點，鍵以此為基準計算
+     */
+    public AgingTaskScheduler(long agingInterval, long urgencyWindow, long epoch) {
+        if (agingInterval < 0) {
+            throw new IllegalArgumentException("Aging interval must not be negative: " + agingInterval);
+        }
+        this.agingInterval = agingInterval;
+        this.urgencyWindow = urgencyWindow;
+        this.epoch = epoch;
+        agingLane = new PriorityQueue<>((a, b) -> {
+            if (a.rank != b.rank) {
+                return Long.compare(a.rank, b.rank);
+            }
+            return Long.compare(a.sequence, b.sequence);
+        });
+        deadlineLane = new PriorityQueue<>((a, b) -> {
+            if (a.deadline != b.deadline) {
+                return Long.compare(a.deadline, b.deadline);
+            }
+            return Long.compare(a.sequence, b.sequence);
+        });
+    }
+    
+    public static AgingTaskScheduler strict() {
+        return new AgingTaskScheduler(0, -1, 0);
+    }
+    
+    private long rank(int priority, long now) {
+        if (agingInterval == 0) {
+            return -(long) priority;
+        }
+        return (now - epoch) - (long) priority * agingInterval;
+    }
+    
+    public void addTask(String name, int priority, long now) {
+        agingLane.offer(new Task(name, priority, now, Long.MAX_VALUE, nextSequence++, rank(priority, now)));
+    }
+    
+    public void addTask(String name, int priority, long deadline, long now) {
+        Task task = new Task(name, priority, now, deadline, nextSequence++, rank(priority, now));
+        if (urgencyWindow >= 0) {
+            deadlineLane.offer(task);
+        } else {
+            agingLane.offer(task);
+        }
+    }
+    
+    /**
+     * 取出在時間 now 應該執行的任務，沒有任務時回傳 null
+     */
+    public Task executeNext(long now) {
+        Task urgent = deadlineLane.peek();
+        if (urgent != null && (agingLane.isEmpty() || urgent.deadline - now <= urgencyWindow)) {
+            return deadlineLane.poll();
+        }
+        return agingLane.poll();
+    }
+    
+    /**
+     * 任務在時間 now 的有效優先級（老化後）
+     */
+    public int effectivePriority(Task task, long now) {
+        if (agingInterval == 0) {
+            return task.priority;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, task.priority + (now - task.arrival) / agingInterval);
+    }
+    
+    public int size() {
+        return agingLane.size() + deadlineLane.size();
+    }
+    
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    // ---- 模擬 ----
+    
+    private static final int CLASSES = 4;
+    // 各優先級的負載（到達率 × 平均服務時間），合計 0.99，高優先級佔大部分
+    private static final double[] LOAD = {0.04, 0.08, 0.12, 0.75};
+    private static final int MEAN_SERVICE = 10;
+    private static final double DEADLINE_FRACTION = 0.5;  // 優先級 1 的任務中有截止期限的比例
+    private static final long DEADLINE = 2000;
+    
+    /**
+     * 單一伺服器的離散事件模擬：各優先級以 Poisson 過程到達，服務時間為指數分布
+     * 回報各優先級的等待時間分位數、模擬結束時仍在排隊的數量與最久的等待，以及截止期限的達成率
+     */
+    static void simulate(String label, AgingTaskScheduler scheduler, long duration, long seed) {
+        Random random = new Random(seed);
+        long[] nextArrival = new long[CLASSES];
+        double[] meanGap = new double[CLASSES];
+        for (int c = 0; c < CLASSES; c++) {
+            meanGap[c] = MEAN_SERVICE / LOAD[c];
+            nextArrival[c] = exponential(random, meanGap[c]);
+        }
+        ConcurrentTaskScheduler.LatencyHistogram[] waits = new ConcurrentTaskScheduler.LatencyHistogram[CLASSES];
+        for (int c = 0; c < CLASSES; c++) {
+            waits[c] = new ConcurrentTaskScheduler.LatencyHistogram();
+        }
+        int deadlineTasks = 0;
+        int deadlineMisses = 0;
+        long now = 0;
+        
+        while (now < duration) {
+            // 把 now 之前到達的任務都加入佇列
+            for (int c = 0; c < CLASSES; c++) {
+                while (nextArrival[c] <= now) {
+                    if (c == 1 && random.nextDouble() < DEADLINE_FRACTION) {
+                        scheduler.addTask("d", c, nextArrival[c] + DEADLINE, nextArrival[c]);
+                    } else {
+                        scheduler.addTask("t", c, nextArrival[c]);
+                    }
+                    nextArrival[c] += Math.max(1, exponential(random, meanGap[c]));
+                }
+            }
+            Task task = scheduler.executeNext(now);
+            if (task == null) {
+                // 伺服器閒置，跳到下一個到達時間
+                long next = Long.MAX_VALUE;
+                for (long t : nextArrival) next = Math.min(next, t);
+                now = next;
+                continue;
+            }
+            waits[task.priority].record(now - task.arrival);
+            if (task.deadline != Long.MAX_VALUE) {
+                deadlineTasks++;
+                if (now > task.deadline) {
+                    deadlineMisses++;
+                }
+            }
+            now += Math.max(1, exponential(random, MEAN_SERVICE));
+        }
+        
+        int[] pending = new int[CLASSES];
+        long[] oldest = new long[CLASSES];
+        for (Task task; (task = scheduler.executeNext(now)) != null; ) {
+            pending[task.priority]++;
+            oldest[task.priority] = Math.max(oldest[task.priority], now - task.arrival);
+        }
+        
+        System.out.println(label);
+        System.out.printf("  %-6s %10s %10s %10s %10s %10s %12s%n",
+            "優先級", "完成", "p50", "p99", "max", "仍在排隊", "最久等待");
+        for (int c = CLASSES - 1; c >= 0; c--) {
+            ConcurrentTaskScheduler.LatencyHistogram h = waits[c];
+            System.out.printf("  %-9d %10d %10d %10d %10d %10d %12d%n", c, h.total,
+                h.percentile(50), h.percentile(99), h.max, pending[c], oldest[c]);
+        }
+        System.out.printf("  截止期限任務 %d 個，逾期 %.1f%%%n", deadlineTasks,
+            deadlineTasks == 0 ? 0.0 : 100.0 * deadlineMisses / deadlineTasks);
+    }
+    
+    private static long exponential(Random random, double mean) {
+        return Math.round(-mean * Math.log(1 - random.nextDouble()));
+    }
+    
+    public static void main(String[] args) {
+        System.out.println("=== 老化示範：低優先級任務等久了會超過後來的高優先級任務 ===");
+        AgingTaskScheduler scheduler = new AgingTaskScheduler(100, -1, 0);
+        scheduler.addTask("日常維護", 1, 0);
+        scheduler.addTask("系統更新", 3, 150);
+        scheduler.addTask("緊急修復", 5, 250);
+        scheduler.addTask("安全掃描", 3, 260);
+        long now = 300;
+        while (!scheduler.isEmpty()) {
+            Task task = scheduler.executeNext(now);
+            System.out.println("t=" + now + " 執行: " + task + "，有效優先級 " + scheduler.effectivePriority(task, now));
+            now += 10;
+        }
+        
+        System.out.println("\n=== EDF 通道：截止期限接近時先執行 ===");
+        scheduler = new AgingTaskScheduler(100, 50, 0);
+        scheduler.addTask("產生報表", 5, 0);
+        scheduler.addTask("寄送帳單", 1, 120, 0);
+        scheduler.addTask("資料清理", 4, 0);
+        scheduler.addTask("同步訂單", 1, 500, 0);
+        for (now = 0; !scheduler.isEmpty(); now += 40) {
+            System.out.println("t=" + now + " 執行: " + scheduler.executeNext(now));
+        }
+        
+        long duration = args.length > 0 ? Long.parseLong(args[0]) : 5_000_000;
+        System.out.printf("%n=== 模擬：單一伺服器，總負載 0.99，時間長度 %d ===%n", duration);
+        simulate("嚴格優先級（TaskScheduler 的行為）", strict(), duration, 42);
+        simulate("老化（每等待 2000 提升一級）", new AgingTaskScheduler(2000, -1, 0), duration, 42);
+        simulate("老化 + EDF 通道（截止期限前 500 內優先）", new AgingTaskScheduler(2000, 500, 0), duration, 42);
+    }
+}
@@ -0,0 +1,671 @@
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * 以平行陣列儲存的快取層級，適合當作容量很大、存取成本較高的底層（L3）
+ *
+ * 每個條目不再是獨立的 CacheEntry 物件：key / value 放在 String[]，
+ * 存取次數與時間放在 long[]，索引改用開放定址（linear probing）的 int[]，
+ * 取代 HashMap 節點與 PriorityQueue / TreeSet 節點。
+ * 淘汰規則與 CacheLevel 完全相同：依存取次數分桶、桶內依 lastAccessTime 排序，
+ * 每個桶是用 int[] 串起來的雙向鏈結串列。
+ *
+ * 次數桶另外有一個以存取次數為鍵的開放定址索引，找桶不必沿著桶串列走。
+ *
+ * 命中、新增、移除：O(1)；由上層降級下來的條目帶著舊的時間戳記，
+ * 需要從串列兩端往中間找插入位置，成本與它離較近一端的距離成正比；
+ * 它的存取次數桶若還不存在且夾在兩個既有的桶之間，也要沿桶串列找位置（最多 O(桶數)）。
+ * 命中路徑（getValue / accessCount / priorityOf）不建立任何物件；
+ * get / take / peek 回傳的 CacheEntry 是複本，只在資料離開這一層或顯示時才建立。
+ */
+public class CompactCacheLevel implements MultiLevelCacheSystem.CacheTier {
+
+    private static final int NIL = -1;
+    // 索引表大小是容量兩倍以上的 2 的冪次，最多 2^30 格
+    static final int MAX_CAPACITY = 1 << 29;
+
+    private final int level;
+    private final LongSupplier clock;
+    private final int capacity;
+    private final int accessCost;
+    private int size;
+    private long totalAccessCount;
+
+    // 條目資料，索引 0 .. capacity-1
+    private final String[] keys;
+    private final String[] values;
+    private final int[] hashes;
+    private final long[] accessCounts;
+    private final long[] lastAccessTimes;
+    private final long[] insertTimes;
+    private final long[] seqs;
+    private final int[] bucketOf;
+    private final int[] prev;       // 同一個存取次數桶內，依 lastAccessTime 排序
+    private final int[] next;       // 空位也用 next 串成 free list
+    private final int[] insPrev;    // 全層依 insertTime 排序
+    private final int[] insNext;
+    private int freeEntry;
+    private int oldestInsert = NIL;
+    private int newestInsert = NIL;
+
+    // 存取次數桶，依存取次數遞增串接；非空的桶最多 capacity 個
+    private final long[] bucketFreq;
+    private final int[] bucketHead;
+    private final int[] bucketTail;
+    private final int[] bucketPrev;
+    private final int[] bucketNext;
+    private int freeBucket;
+    private int firstBucket = NIL;
+    private int lastBucket = NIL;
+
+    // 開放定址索引：table 存 entry + 1、bucketTable 存桶 + 1，0 代表空槽
+    private final int[] table;
+    private final int[] bucketTable;
+    private final int tableMask;
+    // Fibonacci 雜湊取乘積的最高 log2(tableSize) 位元，右移量為 32 - log2(tableSize)
+    private final int tableShift;
+
+    public CompactCacheLevel(int level, int capacity, int accessCost) {
+        this(level, capacity, accessCost, MultiLevelCacheSystem.SYSTEM_CLOCK);
+    }
+
+    public CompactCacheLevel(int level, int capacity, int accessCost, LongSupplier clock) {
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("容量超過上限 " + MAX_CAPACITY + ": " + capacity);
+        }
+        this.clock = clock;
+        this.level = level;
+        this.capacity = capacity;
+        this.accessCost = accessCost;
+
+        keys = new String[capacity];
+        values = new String[capacity];
+        hashes = new int[capacity];
+        accessCounts = new long[capacity];
+        lastAccessTimes = new long[capacity];
+        insertTimes = new long[capacity];
+        seqs = new long[capacity];
+        bucketOf = new int[capacity];
+        prev = new int[capacity];
+        next = new int[capacity];
+        insPrev = new int[capacity];
+        insNext = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            next[i] = i + 1 < capacity ? i + 1 : NIL;
+        }
+        freeEntry = 0;
+
+        bucketFreq = new long[capacity];
+        bucketHead = new int[capacity];
+        bucketTail = new int[capacity];
+        bucketPrev = new int[capacity];
+        bucketNext = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            bucketNext[i] = i + 1 < capacity ? i + 1 : NIL;
+        }
+        freeBucket = 0;
+
+        int tableSize = 2;
+        while (tableSize < 2L * capacity) tableSize <<= 1;
+        table = new int[tableSize];
+        bucketTable = new int[tableSize];
+        tableMask = tableSize - 1;
+        tableShift = 32 - Integer.numberOfTrailingZeros(tableSize);
+    }
+
+    public int level() {
+        return level;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int accessCost() {
+        return accessCost;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(String key) {
+        return indexOf(key) != NIL;
+    }
+
+    public MultiLevelCacheSystem.CacheEntry get(String key) {
+        int e = indexOf(key);
+        if (e == NIL) return null;
+        touch(e);
+        return materialize(e);
+    }
+
+    public String getValue(String key) {
+        int e = indexOf(key);
+        if (e == NIL) return null;
+        touch(e);
+        return values[e];
+    }
+
+    public long accessCount(String key) {
+        int e = indexOf(key);
+        return e == NIL ? 0 : accessCounts[e];
+    }
+
+    public double priorityOf(String key, long currentTime) {
+        int e = indexOf(key);
+        return e == NIL ? -1 : priority(e, currentTime);
+    }
+
+    public MultiLevelCacheSystem.CacheEntry take(String key) {
+        int e = indexOf(key);
+        if (e == NIL) return null;
+        MultiLevelCacheSystem.CacheEntry entry = materialize(e);
+        release(e);
+        return entry;
+    }
+
+    public void put(MultiLevelCacheSystem.CacheEntry entry) {
+        int e = indexOf(entry.key);
+        if (e != NIL) {
+            values[e] = entry.value;
+            touch(e);
+            return;
+        }
+        if (freeEntry == NIL) {
+            throw new IllegalStateException("L" + level + " 已滿，請先淘汰再放入");
+        }
+        e = freeEntry;
+        freeEntry = next[e];
+
+        entry.currentLevel = level;
+        keys[e] = entry.key;
+        values[e] = entry.value;
+        hashes[e] = entry.key.hashCode();
+        accessCounts[e] = entry.accessCount;
+        lastAccessTimes[e] = entry.lastAccessTime;
+        insertTimes[e] = entry.insertTime;
+        seqs[e] = entry.seq;
+        size++;
+        totalAccessCount += entry.accessCount;
+
+        addToIndex(e);
+        linkByInsertTime(e);
+        attachToBucket(findBucket(entry.accessCount), e);
+    }
+
+    public MultiLevelCacheSystem.CacheEntry evict() {
+        if (size == 0) return null;
+        int victim = lowest(clock.getAsLong());
+        MultiLevelCacheSystem.CacheEntry entry = materialize(victim);
+        release(victim);
+        return entry;
+    }
+
+    public void remove(String key) {
+        int e = indexOf(key);
+        if (e != NIL) {
+            release(e);
+        }
+    }
+
+    public MultiLevelCacheSystem.CacheEntry peekLowest() {
+        if (size == 0) return null;
+        long currentTime = clock.getAsLong();
+        MultiLevelCacheSystem.CacheEntry entry = materialize(lowest(currentTime));
+        entry.calculatePriority(level, currentTime);
+        return entry;
+    }
+
+    public MultiLevelCacheSystem.CacheEntry peekHighest() {
+        if (size == 0) return null;
+        long currentTime = clock.getAsLong();
+        MultiLevelCacheSystem.CacheEntry entry = materialize(highest(currentTime));
+        entry.calculatePriority(level, currentTime);
+        return entry;
+    }
+
+    public double averagePriority(long currentTime) {
+        if (size == 0) return 0.0;
+        double sum = 0.0;
+        for (int e = oldestInsert; e != NIL; e = insNext[e]) {
+            sum += priority(e, currentTime);
+        }
+        return sum / size;
+    }
+
+    public long totalAccessCount() {
+        return totalAccessCount;
+    }
+
+    public List<MultiLevelCacheSystem.CacheEntry> getAllEntries() {
+        List<MultiLevelCacheSystem.CacheEntry> entries = new ArrayList<>(size);
+        for (int e = oldestInsert; e != NIL; e = insNext[e]) {
+            entries.add(materialize(e));
+        }
+        return entries;
+    }
+
+    @Override
+    public String toString() {
+        long currentTime = clock.getAsLong();
+        List<MultiLevelCacheSystem.CacheEntry> sorted = getAllEntries();
+        for (MultiLevelCacheSystem.CacheEntry entry : sorted) {
+            entry.calculatePriority(level, currentTime);
+        }
+        sorted.sort((a, b) -> Double.compare(b.priority, a.priority));
+        return "L" + level + "(" + size + "/" + capacity + ", compact): " + sorted;
+    }
+
+    // ---- 淘汰：與 CacheLevel.peekLowest / peekHighest 相同的剪枝掃描 ----
+
+    private double priority(int e, long currentTime) {
+        return MultiLevelCacheSystem.CacheEntry.priorityOf(accessCounts[e], lastAccessTimes[e],
+            insertTimes[e], level, currentTime);
+    }
+
+    private int lowest(long currentTime) {
+        long frequency = bucketFreq[firstBucket];
+        long oldest = insertTimes[oldestInsert];
+        int best = NIL;
+        double bestPriority = 0.0;
+        for (int e = bucketHead[firstBucket]; e != NIL; e = next[e]) {
+            long insertFloor = frequency == 1 ? lastAccessTimes[e] : oldest;
+            double lowerBound = MultiLevelCacheSystem.CacheEntry.priorityOf(frequency, lastAccessTimes[e],
+                insertFloor, level, currentTime);
+            if (best != NIL && lowerBound >= bestPriority) break;
+            double p = priority(e, currentTime);
+            if (best == NIL || p < bestPriority) {
+                best = e;
+                bestPriority = p;
+            }
+        }
+        return best;
+    }
+
+    private int highest(long currentTime) {
+        long frequency = bucketFreq[lastBucket];
+        long newest = insertTimes[newestInsert];
+        int best = NIL;
+        double bestPriority = 0.0;
+        for (int e = bucketTail[lastBucket]; e != NIL; e = prev[e]) {
+            double upperBound = MultiLevelCacheSystem.CacheEntry.priorityOf(frequency, lastAccessTimes[e],
+                Math.min(newest, lastAccessTimes[e]), level, currentTime);
+            if (best != NIL && upperBound <= bestPriority) break;
+            double p = priority(e, currentTime);
+            if (best == NIL || p > bestPriority) {
+                best = e;
+                bestPriority = p;
+            }
+        }
+        return best;
+    }
+
+    private MultiLevelCacheSystem.CacheEntry materialize(int e) {
+        MultiLevelCacheSystem.CacheEntry entry = new MultiLevelCacheSystem.CacheEntry(keys[e], values[e],
+            accessCounts[e], lastAccessTimes[e], insertTimes[e], seqs[e]);
+        entry.currentLevel = level;
+        return entry;
+    }
+
+    // ---- 條目生命週期 ----
+
+    private void touch(int e) {
+        int from = bucketOf[e];
+        // 先建立（或找到）下一個桶，再把條目移出原本的桶，原桶才可以安全釋放
+        int to = bucketAfter(from, accessCounts[e] + 1);
+        detachFromBucket(e);
+        accessCounts[e]++;
+        totalAccessCount++;
+        lastAccessTimes[e] = clock.getAsLong();
+        attachToBucket(to, e);
+    }
+
+    private void release(int e) {
+        removeFromIndex(e);
+        unlinkByInsertTime(e);
+        detachFromBucket(e);
+        keys[e] = null;
+        values[e] = null;
+        next[e] = freeEntry;
+        freeEntry = e;
+        size--;
+        totalAccessCount -= accessCounts[e];
+    }
+
+    private boolean accessedBefore(int a, int b) {
+        return lastAccessTimes[a] < lastAccessTimes[b]
+            || (lastAccessTimes[a] == lastAccessTimes[b] && seqs[a] < seqs[b]);
+    }
+
+    private boolean insertedBefore(int a, int b) {
+        return insertTimes[a] < insertTimes[b]
+            || (insertTimes[a] == insertTimes[b] && seqs[a] < seqs[b]);
+    }
+
+    // ---- 依 insertTime 排序的串列 ----
+
+    // 從兩端同時往中間找插入位置，新資料在尾端、舊資料在頭端都能很快找到
+    private void linkByInsertTime(int e) {
+        int after = newestInsert;
+        int before = oldestInsert;
+        while (after != NIL && insertedBefore(e, after)) {
+            if (!insertedBefore(before, e)) {
+                after = insPrev[before];
+                break;
+            }
+            after = insPrev[after];
+            before = insNext[before];
+        }
+        before = after == NIL ? oldestInsert : insNext[after];
+        insPrev[e] = after;
+        insNext[e] = before;
+        if (after == NIL) oldestInsert = e; else insNext[after] = e;
+        if (before == NIL) newestInsert = e; else insPrev[before] = e;
+    }
+
+    private void unlinkByInsertTime(int e) {
+        int p = insPrev[e];
+        int n = insNext[e];
+        if (p == NIL) oldestInsert = n; else insNext[p] = n;
+        if (n == NIL) newestInsert = p; else insPrev[n] = p;
+    }
+
+    // ---- 存取次數桶 ----
+
+    // 找到或建立 frequency 的桶：已存在時由 bucketTable 直接取得，
+    // 比最小的桶小（新條目）或比最大的桶大時接在兩端，
+    // 只有夾在兩個既有的桶之間時才從最大的桶往回找
+    private int findBucket(long frequency) {
+        int b = bucketIndexOf(frequency);
+        if (b != NIL) return b;
+        if (firstBucket == NIL || frequency < bucketFreq[firstBucket]) {
+            return bucketAfter(NIL, frequency);
+        }
+        int before = lastBucket;
+        while (bucketFreq[before] > frequency) {
+            before = bucketPrev[before];
+        }
+        return bucketAfter(before, frequency);
+    }
+
+    // 回傳緊接在 before 之後、存取次數為 frequency 的桶，不存在就建立
+    private int bucketAfter(int before, long frequency) {
+        int after = before == NIL ? firstBucket : bucketNext[before];
+        if (after != NIL && bucketFreq[after] == frequency) {
+            return after;
+        }
+        int b = freeBucket;
+        freeBucket = bucketNext[b];
+        bucketFreq[b] = frequency;
+        bucketHead[b] = NIL;
+        bucketTail[b] = NIL;
+        bucketPrev[b] = before;
+        bucketNext[b] = after;
+        if (before == NIL) firstBucket = b; else bucketNext[before] = b;
+        if (after == NIL) lastBucket = b; else bucketPrev[after] = b;
+        insertSlot(bucketTable, bucketHome(frequency), b);
+        return b;
+    }
+
+    // 命中時 lastAccessTime 是目前時間，直接接在桶尾；
+    // 降級下來的舊條目通常靠近桶頭，因此同樣從兩端往中間找
+    private void attachToBucket(int b, int e) {
+        int after = bucketTail[b];
+        int before = bucketHead[b];
+        while (after != NIL && accessedBefore(e, after)) {
+            if (!accessedBefore(before, e)) {
+                after = prev[before];
+                break;
+            }
+            after = prev[after];
+            before = next[before];
+        }
+        before = after == NIL ? bucketHead[b] : next[after];
+        prev[e] = after;
+        next[e] = before;
+        if (after == NIL) bucketHead[b] = e; else next[after] = e;
+        if (before == NIL) bucketTail[b] = e; else prev[before] = e;
+        bucketOf[e] = b;
+    }
+
+    private void detachFromBucket(int e) {
+        int b = bucketOf[e];
+        int p = prev[e];
+        int n = next[e];
+        if (p == NIL) bucketHead[b] = n; else next[p] = n;
+        if (n == NIL) bucketTail[b] = p; else prev[n] = p;
+
+        if (bucketHead[b] == NIL) {
+            int i = bucketHome(bucketFreq[b]);
+            while (bucketTable[i] != b + 1) {
+                i = (i + 1) & tableMask;
+            }
+            deleteSlot(bucketTable, i);
+            int bp = bucketPrev[b];
+            int bn = bucketNext[b];
+            if (bp == NIL) firstBucket = bn; else bucketNext[bp] = bn;
+            if (bn == NIL) lastBucket = bp; else bucketPrev[bn] = bp;
+            bucketNext[b] = freeBucket;
+            freeBucket = b;
+        }
+    }
+
+    // ---- 開放定址索引 ----
+
+    private int home(int hash) {
+        return (hash * 0x9E3779B9) >>> tableShift;
+    }
+
+    private int bucketHome(long frequency) {
+        return home(Long.hashCode(frequency));
+    }
+
+    private int slotHome(int[] t, int slot) {
+        return t == table ? home(hashes[slot - 1]) : bucketHome(bucketFreq[slot - 1]);
+    }
+
+    private int indexOf(String key) {
+        int hash = key.hashCode();
+        for (int i = home(hash); ; i = (i + 1) & tableMask) {
+            int slot = table[i];
+            if (slot == 0) return NIL;
+            int e = slot - 1;
+            if (hashes[e] == hash && keys[e].equals(key)) return e;
+        }
+    }
+
+    private int bucketIndexOf(long frequency) {
+        for (int i = bucketHome(frequency); ; i = (i + 1) & tableMask) {
+            int slot = bucketTable[i];
+            if (slot == 0) return NIL;
+            if (bucketFreq[slot - 1] == frequency) return slot - 1;
+        }
+    }
+
+    private void addToIndex(int e) {
+        insertSlot(table, home(hashes[e]), e);
+    }
+
+    private void removeFromIndex(int e) {
+        int i = home(hashes[e]);
+        while (table[i] != e + 1) {
+            i = (i + 1) & tableMask;
+        }
+        deleteSlot(table, i);
+    }
+
+    private void insertSlot(int[] t, int i, int value) {
+        while (t[i] != 0) {
+            i = (i + 1) & tableMask;
+        }
+        t[i] = value + 1;
+    }
+
+    // 刪除後把同一串探測序列中後面的元素往前搬，避免留下墓碑
+    private void deleteSlot(int[] t, int i) {
+        t[i] = 0;
+        int j = i;
+        while (true) {
+            j = (j + 1) & tableMask;
+            int slot = t[j];
+            if (slot == 0) return;
+            int h = slotHome(t, slot);
+            boolean stays = i <= j ? (i < h && h <= j) : (i < h || h <= j);
+            if (!stays) {
+                t[i] = slot;
+                t[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    // ---- 示範與驗證 ----
+
+    // 用手動推進的時鐘，讓 CacheLevel 與 CompactCacheLevel 執行相同操作，
+    // 淘汰對象與最高／最低優先權再和「逐一重算整層優先權」的暴力解比對，
+    // 兩者共用的剪枝掃描若有錯也會被抓到
+    public static void testEquivalence() {
+        System.out.println("=== CompactCacheLevel vs CacheLevel vs brute force ===");
+        long[] now = {0};
+        LongSupplier manual = () -> now[0];
+
+        Random rand = new Random(11);
+        int mismatches = 0;
+        int checks = 0;
+        for (int round = 0; round < 200; round++) {
+            int lvl = 1 + rand.nextInt(3);
+            MultiLevelCacheSystem.CacheLevel reference = new MultiLevelCacheSystem.CacheLevel(lvl, 64, 1, manual);
+            CompactCacheLevel compact = new CompactCacheLevel(lvl, 64, 1, manual);
+            for (int op = 0; op < 400; op++) {
+                if (rand.nextInt(4) == 0) {
+                    now[0] += rand.nextInt(3000) * 1000000L;
+                }
+                String key = "k" + rand.nextInt(100);
+                int action = rand.nextInt(10);
+                if (action < 4) {
+                    MultiLevelCacheSystem.CacheEntry hit = reference.get(key);
+                    checks++;
+                    if (!Objects.equals(hit == null ? null : hit.value, compact.getValue(key))) mismatches++;
+                } else if (action < 7 || !reference.isFull()) {
+                    if (reference.isFull() && !reference.contains(key)) {
+                        double[] expected = bruteForceExtremes(compact, now[0]);
+                        MultiLevelCacheSystem.CacheEntry victim = compact.evict();
+                        checks += 2;
+                        if (!reference.evict().key.equals(victim.key)) mismatches++;
+                        if (priorityOf(victim, lvl, now[0]) != expected[0]) mismatches++;
+                    }
+                    // 模擬由上層降級下來、帶著舊存取紀錄的條目；
+                    // 只存取過一次的條目 insertTime 必定等於 lastAccessTime（剪枝的下界依賴這點）
+                    MultiLevelCacheSystem.CacheEntry entry = new MultiLevelCacheSystem.CacheEntry(key, "v" + op, now[0]);
+                    if (rand.nextInt(5) == 0) {
+                        entry.accessCount = 1 + rand.nextInt(6);
+                        entry.lastAccessTime = now[0] - rand.nextInt(5000) * 1000000L;
+                        entry.insertTime = entry.accessCount == 1 ? entry.lastAccessTime
+                            : entry.lastAccessTime - rand.nextInt(5000) * 1000000L;
+                    }
+                    compact.put(entry);
+                    reference.put(entry);
+                } else if (action < 9) {
+                    reference.remove(key);
+                    compact.remove(key);
+                } else {
+                    MultiLevelCacheSystem.CacheEntry expected = reference.take(key);
+                    MultiLevelCacheSystem.CacheEntry taken = compact.take(key);
+                    checks++;
+                    if ((expected == null) != (taken == null)
+                        || (expected != null && (expected.accessCount != taken.accessCount
+                            || !expected.value.equals(taken.value)))) mismatches++;
+                }
+                if (reference.size() != compact.size()) mismatches++;
+                long totalAccessCount = 0;
+                for (MultiLevelCacheSystem.CacheEntry entry : reference.getAllEntries()) {
+                    totalAccessCount += entry.accessCount;
+                }
+                if (reference.totalAccessCount() != totalAccessCount
+                    || compact.totalAccessCount() != totalAccessCount) mismatches++;
+                if (!reference.isEmpty()) {
+                    double[] expected = bruteForceExtremes(compact, now[0]);
+                    checks += 4;
+                    if (!reference.peekLowest().key.equals(compact.peekLowest().key)) mismatches++;
+                    if (!reference.peekHighest().key.equals(compact.peekHighest().key)) mismatches++;
+                    if (compact.peekLowest().priority != expected[0]) mismatches++;
+                    if (compact.peekHighest().priority != expected[1]) mismatches++;
+                }
+            }
+        }
+        System.out.printf("Checks: %d, mismatches: %d\n", checks, mismatches);
+        System.out.println();
+    }
+
+    // 逐一重算整層每個條目的優先權，回傳 {最低, 最高}
+    private static double[] bruteForceExtremes(MultiLevelCacheSystem.CacheTier tier, long currentTime) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (MultiLevelCacheSystem.CacheEntry entry : tier.getAllEntries()) {
+            double p = priorityOf(entry, tier.level(), currentTime);
+            min = Math.min(min, p);
+            max = Math.max(max, p);
+        }
+        return new double[]{min, max};
+    }
+
+    private static double priorityOf(MultiLevelCacheSystem.CacheEntry entry, int level, long currentTime) {
+        return MultiLevelCacheSystem.CacheEntry.priorityOf(entry.accessCount, entry.lastAccessTime,
+            entry.insertTime, level, currentTime);
+    }
+
+    // 以 CompactCacheLevel 當作大容量 L3，與全部使用 CacheLevel 的快取比較記憶體與時間
+    public static void testLargeL3(int l3Capacity) {
+        System.out.println("=== Large L3 (" + l3Capacity + " entries) ===");
+        for (boolean compact : new boolean[]{false, true}) {
+            MultiLevelCacheSystem.MultiLevelCache.Builder builder = MultiLevelCacheSystem.MultiLevelCache.builder()
+                .level(64, 1)
+                .level(1024, 3);
+            if (compact) {
+                builder.level(l3Capacity, 10, CompactCacheLevel::new);
+            } else {
+                builder.level(l3Capacity, 10);
+            }
+
+            System.gc();
+            long before = usedMemory();
+            long startTime = System.nanoTime();
+            MultiLevelCacheSystem.MultiLevelCache cache = builder.build();
+            for (int i = 0; i < l3Capacity; i++) {
+                cache.put("key" + i, "value" + i);
+            }
+            long fillTime = System.nanoTime() - startTime;
+            System.gc();
+            long used = usedMemory() - before;
+
+            Random rand = new Random(3);
+            startTime = System.nanoTime();
+            for (int i = 0; i < 200000; i++) {
+                int k = rand.nextInt(l3Capacity * 2);
+                if (rand.nextInt(5) == 0) {
+                    cache.put("key" + k, "value" + i);
+                } else {
+                    cache.get("key" + k);
+                }
+            }
+            long mixedTime = System.nanoTime() - startTime;
+
+            System.out.printf("%-12s fill: %8.1f ms, 200000 mixed ops: %8.1f ms, heap: %6.1f MB (%d bytes/entry)\n",
+                compact ? "Compact L3" : "CacheLevel", fillTime / 1e6, mixedTime / 1e6,
+                used / 1024.0 / 1024.0, used / l3Capacity);
+            System.out.println("  " + cache.metrics().toString().replace("\n", "\n  "));
+        }
+        System.out.println();
+    }
+
+    private static long usedMemory() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    public static void main(String[] args) {
+        testEquivalence();
+        testLargeL3(args.length > 0 ? Integer.parseInt(args[0]) : 500000);
+    }
+}
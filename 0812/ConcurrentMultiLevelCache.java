@@ -0,0 +1,321 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 可在多執行緒間共用的多層快取
+ *
+ * 依 key 的 hash 把資料分到多個 stripe，每個 stripe 是一個獨立的 MultiLevelCache，
+ * 同一個 key 的升級、降級與交換都在該 stripe 的鎖內完成，因此不會出現在兩個層級。
+ * L1 命中走無鎖路徑：讀取已發佈的 L1 快照，命中當下就計入 servedHits，
+ * 再把這次存取放進緩衝區，等下一次持有鎖時再補記到 L1 的存取次數（只影響淘汰順序）。
+ */
+public class ConcurrentMultiLevelCache {
+
+    private static final int DRAIN_THRESHOLD = 64;
+
+    static class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final MultiLevelCacheSystem.MultiLevelCache cache;
+        // 只在持鎖時整份替換，讀者看到的永遠是某個完整版本
+        volatile Map<String, String> l1View = Collections.emptyMap();
+        final ConcurrentLinkedQueue<String> pendingHits = new ConcurrentLinkedQueue<>();
+        final AtomicInteger pendingCount = new AtomicInteger();
+        // 無鎖路徑已服務、還沒併入統計的命中數；key 在補記前被移出 L1 也照樣計入
+        final LongAdder servedHits = new LongAdder();
+
+        Stripe(int l1Capacity, int l2Capacity, int l3Capacity) {
+            cache = new MultiLevelCacheSystem.MultiLevelCache(l1Capacity, l2Capacity, l3Capacity);
+        }
+
+        // 需持有 lock
+        void drainHits() {
+            long served = servedHits.sumThenReset();
+            if (served > 0) {
+                cache.recordL1Hits(served);
+            }
+            String key;
+            while ((key = pendingHits.poll()) != null) {
+                pendingCount.decrementAndGet();
+                // 記錄期間已被移出 L1 的 key 不必再補記存取次數
+                cache.touchL1(key);
+            }
+        }
+
+        // 需持有 lock
+        void publishL1() {
+            l1View = cache.l1Snapshot();
+        }
+    }
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    /**
+     * @param stripeCount stripe 數量，會向上取到 2 的次方
+     * 各層容量為全部 stripe 的總和，平均分給每個 stripe（每層至少 1）
+     */
+    public ConcurrentMultiLevelCache(int stripeCount, int l1Capacity, int l2Capacity, int l3Capacity) {
+        int n = 1;
+        while (n < stripeCount) n <<= 1;
+        stripes = new Stripe[n];
+        mask = n - 1;
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new Stripe(Math.max(1, l1Capacity / n),
+                                    Math.max(1, l2Capacity / n),
+                                    Math.max(1, l3Capacity / n));
+        }
+    }
+
+    int stripeIndex(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public String get(String key) {
+        Stripe stripe = stripes[stripeIndex(key)];
+
+        String value = stripe.l1View.get(key);
+        if (value != null) {
+            stripe.servedHits.increment();
+            stripe.pendingHits.offer(key);
+            if (stripe.pendingCount.incrementAndGet() >= DRAIN_THRESHOLD && stripe.lock.tryLock()) {
+                try {
+                    stripe.drainHits();
+                } finally {
+                    stripe.lock.unlock();
+                }
+            }
+            return value;
+        }
+
+        stripe.lock.lock();
+        try {
+            stripe.drainHits();
+            String result = stripe.cache.get(key);
+            // 命中 L2 / L3 可能觸發升級或交換，L1 內容因此改變
+            if (result != null) {
+                stripe.publishL1();
+            }
+            return result;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void put(String key, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value 不可為 null");
+        }
+        Stripe stripe = stripes[stripeIndex(key)];
+        stripe.lock.lock();
+        try {
+            stripe.drainHits();
+            stripe.cache.put(key, value);
+            stripe.publishL1();
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // 各 stripe 的統計加總
+    MultiLevelCacheSystem.CacheMetrics metrics() {
+        MultiLevelCacheSystem.CacheMetrics total = null;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.drainHits();
+                if (total == null) {
+                    total = stripe.cache.metrics();
+                } else {
+                    total.add(stripe.cache.metrics());
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return total;
+    }
+
+    int stripeCapacity(int index) {
+        return stripes[index].cache.totalCapacity();
+    }
+
+    int stripeCount() {
+        return stripes.length;
+    }
+
+    // 逐一鎖住每個 stripe 取出所有 key，並確認發佈的 L1 快照與實際內容一致
+    List<String> allKeys() {
+        List<String> keys = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.drainHits();
+                if (!stripe.l1View.equals(stripe.cache.l1Snapshot())) {
+                    throw new IllegalStateException("L1 快照與實際內容不一致");
+                }
+                keys.addAll(stripe.cache.allKeys());
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return keys;
+    }
+
+    // 挑出不會讓任何 stripe 超出容量的 key，確保測試期間不會有正常淘汰
+    static List<String> keysWithinCapacity(ConcurrentMultiLevelCache cache, int wanted) {
+        int[] used = new int[cache.stripeCount()];
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; keys.size() < wanted && i < wanted * 100; i++) {
+            String key = "key" + i;
+            int s = cache.stripeIndex(key);
+            if (used[s] < cache.stripeCapacity(s)) {
+                used[s]++;
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    // 偏斜的存取分布：少數熱門 key 佔多數存取，才會有穩定的 L1 命中
+    static int skewedIndex(ThreadLocalRandom rand, int n) {
+        double r = rand.nextDouble();
+        return (int) (n * r * r * r);
+    }
+
+    public static void testStress(int threads) throws InterruptedException {
+        System.out.println("=== Stress Test (" + threads + " threads) ===");
+        ConcurrentMultiLevelCache cache = new ConcurrentMultiLevelCache(16, 64, 320, 1600);
+        List<String> keys = keysWithinCapacity(cache, 1500);
+        for (String key : keys) {
+            cache.put(key, "init");
+        }
+
+        AtomicLong missing = new AtomicLong();
+        AtomicLong reads = new AtomicLong();
+        long accessesBefore = cache.metrics().totalAccesses;
+        int opsPerThread = 200000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                for (int i = 0; i < opsPerThread; i++) {
+                    String key = keys.get(skewedIndex(rand, keys.size()));
+                    if (rand.nextInt(10) < 8) {
+                        // 容量足夠不會淘汰，所以已放入的 key 一定要讀得到
+                        if (cache.get(key) == null) missing.incrementAndGet();
+                        reads.incrementAndGet();
+                    } else {
+                        cache.put(key, "T" + id + "-" + i);
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.MINUTES);
+
+        List<String> all = cache.allKeys();
+        Set<String> seen = new HashSet<>();
+        int duplicated = 0;
+        for (String key : all) {
+            if (!seen.add(key)) duplicated++;
+        }
+        int lost = 0;
+        for (String key : keys) {
+            if (!seen.contains(key)) lost++;
+        }
+        // 每次 get 都必須計入統計，包括無鎖命中後 key 才被移出 L1 的情況
+        MultiLevelCacheSystem.CacheMetrics metrics = cache.metrics();
+        long uncounted = reads.get() - (metrics.totalAccesses - accessesBefore);
+        System.out.printf("Keys: %d, found: %d, lost: %d, duplicated: %d, missed reads: %d, uncounted reads: %d\n",
+            keys.size(), seen.size(), lost, duplicated, missing.get(), uncounted);
+        System.out.println(lost == 0 && duplicated == 0 && missing.get() == 0 && uncounted == 0 ? "PASS" : "FAIL");
+        System.out.println(metrics);
+        System.out.println();
+    }
+
+    // 用一把全域鎖包住單一 MultiLevelCache，作為吞吐量比較基準
+    static class GloballyLockedCache {
+        private final MultiLevelCacheSystem.MultiLevelCache cache;
+
+        GloballyLockedCache(int l1Capacity, int l2Capacity, int l3Capacity) {
+            cache = new MultiLevelCacheSystem.MultiLevelCache(l1Capacity, l2Capacity, l3Capacity);
+        }
+
+        synchronized String get(String key) {
+            return cache.get(key);
+        }
+
+        synchronized void put(String key, String value) {
+            cache.put(key, value);
+        }
+    }
+
+    static double measureThroughput(int threads, boolean striped) throws InterruptedException {
+        ConcurrentMultiLevelCache concurrent = new ConcurrentMultiLevelCache(64, 1024, 4096, 16384);
+        GloballyLockedCache locked = new GloballyLockedCache(1024, 4096, 16384);
+        int keySpace = 20000;
+        int opsPerThread = 100000;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                for (int i = 0; i < opsPerThread; i++) {
+                    String key = "key" + skewedIndex(rand, keySpace);
+                    boolean read = rand.nextInt(10) < 9;
+                    if (striped) {
+                        if (read) concurrent.get(key); else concurrent.put(key, "v");
+                    } else {
+                        if (read) locked.get(key); else locked.put(key, "v");
+                    }
+                }
+                return null;
+            }));
+        }
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        long elapsed = System.nanoTime() - startTime;
+        pool.shutdown();
+        return (double) threads * opsPerThread / (elapsed / 1e9);
+    }
+
+    public static void testThroughput(int maxThreads) throws InterruptedException {
+        System.out.println("=== Throughput (90% GET / 10% PUT) ===");
+        // 先跑一輪讓 JIT 編譯熱路徑
+        measureThroughput(2, true);
+        measureThroughput(2, false);
+        System.out.printf("%-8s %18s %18s\n", "Threads", "Striped (ops/s)", "Global lock (ops/s)");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double striped = measureThroughput(threads, true);
+            double global = measureThroughput(threads, false);
+            System.out.printf("%-8d %18.0f %18.0f\n", threads, striped, global);
+        }
+        System.out.println();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, cores);
+        testStress(1);
+        testStress(maxThreads);
+        testThroughput(maxThreads);
+    }
+}
@@ -0,0 +1,412 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 多生產者、多工作執行緒的優先級任務執行器（TaskScheduler 的多執行緒版本）
+ *
+ * 排序規則同 TaskScheduler：優先級高的先執行，相同優先級先進先出。
+ * 先進先出改用全域遞增的序號而不是 System.nanoTime()，多個生產者同時提交也不會相同。
+ *
+ * 預設（stripeCount = 1）只有一個加鎖的 PriorityQueue，取出順序嚴格依優先級、同優先級先進先出。
+ *
+ * stripeCount > 1 是另外選用的 relaxed priority queue（MultiQueue），用順序換取較少的鎖競爭：
+ *   - 佇列分成多個 stripe，每個 stripe 是一個加鎖的 PriorityQueue
+ *   - 生產者隨機挑一個 stripe，tryLock 失敗就換一個，不會全部卡在同一把鎖
+ *   - 工作執行緒隨機看兩個 stripe 的堆頂，從較優先的那個取出（power of two choices）
+ * 這個模式「不保證」優先級順序，也不保證先進先出：只有同一個 stripe 內依優先級與序號，
+ * 跨 stripe 的取出順序可能相差很多（main 的相鄰順序錯誤數就是在量這件事），
+ * 只保證任務不會被無限期略過。只有在單一鎖確實成為瓶頸、且可以接受近似順序時才使用。
+ *
+ * 待執行任務數以 Semaphore 計數，沒有任務時工作執行緒會阻塞而不是忙等。
+ * 工作執行緒由 ThreadFactory 建立；Java 21 以上可傳入 Thread.ofVirtual().factory() 改用虛擬執行緒。
+ * 每個工作執行緒自己記錄排隊等待時間的直方圖，shutdown 後合併，量測本身不會增加共用的競爭。
+ */
+public class ConcurrentTaskScheduler {
+    
+    static class ScheduledTask {
+        final String name;
+        final int priority;
+        final long sequence;
+        final long submitNanos;
+        final Runnable action;
+        
+        ScheduledTask(String name, int priority, long sequence, Runnable action) {
+            this.name = name;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.submitNanos = System.nanoTime();
+            this.action = action;
+        }
+        
+        @Override
+        public String toString() {
+            return name + "(優先級:" + priority + ")";
+        }
+    }
+    
+    // 優先級高的在前，相同優先級序號小的在前
+    static final Comparator<ScheduledTask> ORDER = (a, b) -> {
+        if (a.priority != b.priority) {
+            return Integer.compare(b.priority, a.priority);
+        }
+        return Long.compare(a.sequence, b.sequence);
+    };
+    
+    static class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final PriorityQueue<ScheduledTask> queue = new PriorityQueue<>(ORDER);
+        // 只在持鎖時更新，工作執行緒不加鎖讀取，用來挑兩個 stripe 中較優先的一個
+        volatile ScheduledTask top;
+    }
+    
+    /**
+     * 排隊等待時間直方圖：每個 2 的次方區間再切成 8 格，誤差約 12.5%
+     */
+    static class LatencyHistogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        
+        final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+        long total;
+        long max;
+        
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) Math.max(0, value);
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+        
+        // 區間的上界
+        static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            long sub = bucket % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+        }
+        
+        void record(long value) {
+            counts[bucket(value)]++;
+            total++;
+            max = Math.max(max, value);
+        }
+        
+        void merge(LatencyHistogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            total += other.total;
+            max = Math.max(max, other.max);
+        }
+        
+        long percentile(double p) {
+            long rank = (long) Math.ceil(total * p / 100);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+    
+    private final Stripe[] stripes;
+    private final Thread[] workers;
+    private final LatencyHistogram[] histograms;
+    private final Semaphore available = new Semaphore(0);
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong submitted = new AtomicLong();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile boolean accepting = true;
+    private volatile boolean stopping;
+    
+    /**
+     * 單一鎖、精確順序的執行器
+     */
+    public ConcurrentTaskScheduler(int workerCount) {
+        this(workerCount, 1);
+    }
+    
+    /**
+     * @param stripeCount 1 為精確順序；大於 1 時為近似順序的 relaxed 模式，見類別說明
+     */
+    public ConcurrentTaskScheduler(int workerCount, int stripeCount) {
+        this(workerCount, stripeCount, Executors.defaultThreadFactory());
+    }
+    
+    public ConcurrentTaskScheduler(int workerCount, int stripeCount, ThreadFactory threadFactory) {
+        if (workerCount < 1 || stripeCount < 1) {
+            throw new IllegalArgumentException("Worker and stripe counts must be positive");
+        }
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        workers = new Thread[workerCount];
+        histograms = new LatencyHistogram[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histograms[i] = histogram;
+            workers[i] = threadFactory.newThread(() -> runWorker(histogram));
+            workers[i].start();
+        }
+    }
+    
+    /**
+     * 提交任務，可由任意執行緒呼叫；shutdown 之後提交會丟出 RejectedExecutionException
+     */
+    public void submit(String name, int priority, Runnable action) {
+        // 先計數再檢查，shutdown 一定會看到計數或者這裡一定會看到 accepting = false
+        submitted.incrementAndGet();
+        if (!accepting) {
+            submitted.decrementAndGet();
+            throw new RejectedExecutionException("Scheduler is shut down");
+        }
+        ScheduledTask task = new ScheduledTask(name, priority, sequence.getAndIncrement(), action);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Stripe stripe = stripes[random.nextInt(stripes.length)];
+        for (int attempt = 1; !stripe.lock.tryLock(); attempt++) {
+            if (attempt >= stripes.length) {
+                stripe.lock.lock();
+                break;
+            }
+            stripe = stripes[random.nextInt(stripes.length)];
+        }
+        try {
+            stripe.queue.offer(task);
+            stripe.top = stripe.queue.peek();
+        } finally {
+            stripe.lock.unlock();
+        }
+        available.release();
+    }
+    
+    // 呼叫前已取得一個 permit，因此某個 stripe 裡一定有一個屬於自己的任務，找到為止
+    // shutdown 放出的停止 permit 找不到任務，回傳 null
+    private ScheduledTask take() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int n = stripes.length;
+        while (true) {
+            Stripe a = stripes[random.nextInt(n)];
+            Stripe b = stripes[random.nextInt(n)];
+            ScheduledTask topA = a.top;
+            ScheduledTask topB = b.top;
+            Stripe chosen;
+            if (topA == null && topB == null) {
+                chosen = null;
+                int start = random.nextInt(n);
+                for (int i = 0; i < n && chosen == null; i++) {
+                    Stripe s = stripes[(start + i) % n];
+                    if (s.top != null) {
+                        chosen = s;
+                    }
+                }
+                if (chosen == null) {
+                    if (stopping) {
+                        return null;
+                    }
+                    // 生產者已釋放 permit，但 top 的寫入還沒被看到
+                    Thread.onSpinWait();
+                    continue;
+                }
+            } else if (topA == null) {
+                chosen = b;
+            } else if (topB == null) {
+                chosen = a;
+            } else {
+                chosen = ORDER.compare(topA, topB) <= 0 ? a : b;
+            }
+            chosen.lock.lock();
+            try {
+                ScheduledTask task = chosen.queue.poll();
+                if (task != null) {
+                    chosen.top = chosen.queue.peek();
+                    return task;
+                }
+            } finally {
+                chosen.lock.unlock();
+            }
+        }
+    }
+    
+    private void runWorker(LatencyHistogram histogram) {
+        while (true) {
+            // 不以中斷旗標決定何時結束：任務可能自己留下中斷旗標（例如捕捉 InterruptedException 後重設）
+            available.acquireUninterruptibly();
+            ScheduledTask task = take();
+            if (task == null) {
+                return;
+            }
+            histogram.record(System.nanoTime() - task.submitNanos);
+            try {
+                task.action.run();
+            } catch (Throwable t) {
+                failed.increment();
+            } finally {
+                // 清掉任務留下的中斷旗標，不讓它影響下一個任務
+                Thread.interrupted();
+                completed.increment();
+            }
+        }
+    }
+    
+    /**
+     * 停止接受新任務，等已提交的任務全部執行完後結束工作執行緒
+     */
+    public void shutdown() throws InterruptedException {
+        accepting = false;
+        while (completed.sum() < submitted.get()) {
+            LockSupport.parkNanos(100_000);
+        }
+        // 佇列已空，每個工作執行緒拿到一個停止 permit 後 take 回傳 null 而結束
+        stopping = true;
+        available.release(workers.length);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+    
+    public long completedCount() {
+        return completed.sum();
+    }
+    
+    public long failedCount() {
+        return failed.sum();
+    }
+    
+    /**
+     * 合併所有工作執行緒的等待時間直方圖（shutdown 之後呼叫）
+     */
+    LatencyHistogram waitHistogram() {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (LatencyHistogram histogram : histograms) {
+            merged.merge(histogram);
+        }
+        return merged;
+    }
+    
+    // ---- 示範與效能測試 ----
+    
+    /**
+     * 單一工作執行緒先被第一個任務擋住，其餘任務排好隊後再放行，檢查取出順序
+     * 回傳順序錯誤（前一個應該排在後一個之後）的次數
+     */
+    static int orderingDemo(int stripeCount, boolean print) throws InterruptedException {
+        ConcurrentTaskScheduler scheduler = new ConcurrentTaskScheduler(1, stripeCount);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        List<ScheduledTask> executed = Collections.synchronizedList(new ArrayList<>());
+        scheduler.submit("閘門", Integer.MAX_VALUE, () -> {
+            started.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        // 等閘門任務開始執行，之後的任務才會全部排在佇列裡
+        started.await();
+        String[] names = {"系統備份", "緊急修復", "資料清理", "系統更新", "日常維護", "安全掃描"};
+        int[] priorities = {1, 5, 2, 4, 1, 3};
+        Random random = new Random(stripeCount);
+        int count = print ? names.length : 2000;
+        for (int i = 0; i < count; i++) {
+            String name = print ? names[i] : "task-" + i;
+            int priority = print ? priorities[i] : random.nextInt(8);
+            // 只有這個執行緒在提交，下一個序號就是這個任務的序號
+            long seq = scheduler.sequence.get();
+            scheduler.submit(name, priority, () -> executed.add(new ScheduledTask(name, priority, seq, null)));
+        }
+        gate.countDown();
+        scheduler.shutdown();
+        
+        int inversions = 0;
+        for (int i = 1; i < executed.size(); i++) {
+            if (ORDER.compare(executed.get(i - 1), executed.get(i)) > 0) {
+                inversions++;
+            }
+        }
+        if (print) {
+            System.out.println("執行順序: " + executed);
+        }
+        return inversions;
+    }
+    
+    /**
+     * producers 個執行緒盡快提交共 totalTasks 個空任務，量到全部執行完為止
+     * 這是飽和測試：生產速度大於消化速度時佇列會堆積，等待時間主要反映堆積的長度
+     */
+    static void benchmark(int producers, int workerCount, int stripeCount, int totalTasks, boolean print)
+            throws InterruptedException {
+        ConcurrentTaskScheduler scheduler = new ConcurrentTaskScheduler(workerCount, stripeCount);
+        Runnable work = () -> { };
+        int perProducer = totalTasks / producers;
+        Thread[] threads = new Thread[producers];
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    scheduler.submit("task", random.nextInt(8), work);
+                }
+            });
+            threads[p].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        scheduler.shutdown();
+        long elapsed = System.nanoTime() - begin;
+        
+        if (!print) {
+            return;
+        }
+        LatencyHistogram h = scheduler.waitHistogram();
+        System.out.printf("%-9d %-8d %12.2f %10.1f %10.1f %10.1f %10.1f%n", producers, stripeCount,
+            scheduler.completedCount() / (elapsed / 1e9) / 1e6,
+            h.percentile(50) / 1e3, h.percentile(99) / 1e3, h.percentile(99.9) / 1e3, h.max / 1e3);
+    }
+    
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== 多執行緒任務調度示範（預設單一 stripe，精確順序）===");
+        orderingDemo(1, true);
+        
+        System.out.println("\n2000 個隨機優先級任務、單一工作執行緒的相鄰順序錯誤次數:");
+        for (int stripeCount : new int[]{1, 4, 16}) {
+            System.out.printf("stripe %2d: %d%s%n", stripeCount, orderingDemo(stripeCount, false),
+                stripeCount == 1 ? "（預設，精確順序）" : "（relaxed 模式，不保證順序）");
+        }
+        
+        int cores = Runtime.getRuntime().availableProcessors();
+        int workerCount = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(2, cores);
+        int totalTasks = args.length > 1 ? Integer.parseInt(args[1]) : 400000;
+        // relaxed 模式只拿來對照單一鎖的吞吐量
+        int stripeCount = Math.max(4, 2 * workerCount);
+        System.out.printf("%n=== 吞吐量與排隊等待時間：%d 個工作執行緒、%d 個任務 ===%n", workerCount, totalTasks);
+        System.out.printf("%-9s %-8s %12s %10s %10s %10s %10s%n",
+            "Producers", "Stripes", "Mtasks/s", "p50 (us)", "p99 (us)", "p99.9 (us)", "max (us)");
+        // 暖身
+        benchmark(4, workerCount, stripeCount, totalTasks, false);
+        for (int producers = 1; producers <= 64; producers *= 2) {
+            benchmark(producers, workerCount, 1, totalTasks, true);
+            benchmark(producers, workerCount, stripeCount, totalTasks, true);
+        }
+    }
+}
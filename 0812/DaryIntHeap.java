@@ -0,0 +1,217 @@
+import java.util.*;
+
+/**
+ * 以 int[] 儲存的 d 叉 min heap（d 為 2、4、8 或 16）
+ *
+ * 二元堆積在下濾時每層都跳到相距約 2 倍的位置，堆積大過 L2 後幾乎每層都是一次快取失誤。
+ * d 叉堆積的高度只有 log_d n，每層要比較的 d 個子節點又是連續的：
+ * 失誤次數約減為 log2(d) 分之一，代價是每層多做 d - 1 次比較（都在同一條快取線內）。
+ *
+ * cacheAligned 時在陣列前面墊幾個空位，讓每組兄弟節點都從 min(4d, 64) 位元組的邊界開始，
+ * 一組兄弟節點就不會跨兩條快取線（d = 16 時剛好一組佔滿一條 64 位元組的快取線）。
+ * JVM 只保證物件 8 位元組對齊，這裡假設 int[] 的標頭是 16 位元組（64 位元 HotSpot、壓縮類別指標），
+ * 陣列大到成為 G1 的 humongous 物件（至少半個 region）時會從 region 開頭配置，對齊才真的成立；
+ * 其他 GC 或較小的陣列只保證 8 位元組對齊，墊的空位只是位移。
+ * 擴充容量時 Arrays.copyOf 換成新陣列，新陣列不是 humongous 就失去對齊，需要對齊時請以 capacity 預先配置。
+ * 小陣列本來就放得進快取，對不對齊影響不大。
+ *
+ * 上濾與下濾同 IntHeap 以空洞移動；addAll 在加入數量不少於現有元素時用 Floyd 建堆。
+ */
+public class DaryIntHeap {
+    // int[] 資料開始於物件開頭後 16 位元組
+    private static final int ARRAY_HEADER_BYTES = 16;
+    
+    private int[] heap;
+    private int size;
+    private final int arity;
+    private final int shift;   // log2(arity)
+    private final int offset;  // 邏輯索引 k 存在 heap[k + offset]
+    
+    public DaryIntHeap(int arity, boolean cacheAligned) {
+        this(arity, cacheAligned, 16);
+    }
+    
+    public DaryIntHeap(int arity, boolean cacheAligned, int capacity) {
+        if (arity < 2 || arity > 16 || Integer.bitCount(arity) != 1) {
+            throw new IllegalArgumentException("Arity must be 2, 4, 8 or 16: " + arity);
+        }
+        this.arity = arity;
+        this.shift = Integer.numberOfTrailingZeros(arity);
+        // 節點 k 的第一個子節點在邏輯索引 d*k + 1，要讓它的位元組位置
+        // (d*k + 1 + offset) * 4 + 16 對齊 4d，化簡得 offset ≡ -(1 + 16/4) (mod d)
+        this.offset = cacheAligned ? Math.floorMod(-(1 + ARRAY_HEADER_BYTES / 4), arity) : 0;
+        this.heap = new int[offset + Math.max(1, capacity)];
+    }
+    
+    public int arity() {
+        return arity;
+    }
+    
+    public boolean isCacheAligned() {
+        return offset != 0;
+    }
+    
+    private void ensureCapacity(int needed) {
+        if (offset + needed > heap.length) {
+            heap = Arrays.copyOf(heap, Math.max(offset + needed, heap.length + (heap.length >> 1)));
+        }
+    }
+    
+    public void insert(int value) {
+        ensureCapacity(size + 1);
+        siftUp(size++, value);
+    }
+    
+    public void addAll(int[] values) {
+        int count = values.length;
+        ensureCapacity(size + count);
+        if (count >= size) {
+            System.arraycopy(values, 0, heap, offset + size, count);
+            size += count;
+            // 最後一個非葉節點是最後一個元素的父節點
+            for (int k = (size - 2) >> shift; k >= 0; k--) {
+                siftDown(k, heap[offset + k]);
+            }
+        } else {
+            for (int value : values) {
+                siftUp(size++, value);
+            }
+        }
+    }
+    
+    public int extract() {
+        if (size == 0) {
+            throw new NoSuchElementException("Heap is empty");
+        }
+        int top = heap[offset];
+        int last = heap[offset + --size];
+        if (size > 0) {
+            siftDown(0, last);
+        }
+        return top;
+    }
+    
+    public int peek() {
+        if (size == 0) {
+            throw new NoSuchElementException("Heap is empty");
+        }
+        return heap[offset];
+    }
+    
+    /**
+     * 取出堆頂並放入新值，等同 extract 後 insert，但只做一次下濾
+     */
+    public int replaceTop(int value) {
+        if (size == 0) {
+            throw new NoSuchElementException("Heap is empty");
+        }
+        int top = heap[offset];
+        siftDown(0, value);
+        return top;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public void clear() {
+        size = 0;
+    }
+    
+    private void siftUp(int k, int value) {
+        int[] h = heap;
+        int off = offset;
+        while (k > 0) {
+            int parent = (k - 1) >> shift;
+            int p = h[off + parent];
+            if (value >= p) {
+                break;
+            }
+            h[off + k] = p;
+            k = parent;
+        }
+        h[off + k] = value;
+    }
+    
+    // 每層在連續的 d 個子節點中找最小值，比 value 小才往上搬
+    private void siftDown(int k, int value) {
+        int[] h = heap;
+        int off = offset;
+        int n = size;
+        while (true) {
+            int first = (k << shift) + 1;
+            if (first >= n) {
+                break;
+            }
+            int last = Math.min(first + arity, n);
+            int best = first;
+            int min = h[off + first];
+            for (int c = first + 1; c < last; c++) {
+                int v = h[off + c];
+                if (v < min) {
+                    min = v;
+                    best = c;
+                }
+            }
+            if (min >= value) {
+                break;
+            }
+            h[off + k] = min;
+            k = best;
+        }
+        h[off + k] = value;
+    }
+    
+    /**
+     * 驗證堆積性質（測試用）
+     */
+    public boolean isValidHeap() {
+        for (int k = 1; k < size; k++) {
+            if (heap[offset + k] < heap[offset + ((k - 1) >> shift)]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public static void main(String[] args) {
+        System.out.println("=== d 叉堆積 ===");
+        for (int arity : new int[]{2, 4, 8, 16}) {
+            for (boolean aligned : new boolean[]{false, true}) {
+                DaryIntHeap heap = new DaryIntHeap(arity, aligned);
+                Random random = new Random(arity);
+                PriorityQueue<Integer> reference = new PriorityQueue<>();
+                boolean ok = true;
+                for (int i = 0; i < 200000 && ok; i++) {
+                    int op = random.nextInt(10);
+                    if (op < 5 || reference.isEmpty()) {
+                        int v = random.nextInt(1000);
+                        heap.insert(v);
+                        reference.add(v);
+                    } else if (op < 9) {
+                        ok = heap.extract() == reference.poll();
+                    } else {
+                        int[] batch = random.ints(random.nextInt(64), 0, 1000).toArray();
+                        heap.addAll(batch);
+                        for (int v : batch) reference.add(v);
+                        ok = heap.isValidHeap();
+                    }
+                }
+                System.out.printf("%2d 叉%s（墊 %2d 格）: 與 PriorityQueue 隨機比對 %s%n", arity,
+                    aligned ? "、對齊" : "      ", heap.offset, ok && heap.size() == reference.size() ? "一致" : "錯誤");
+            }
+        }
+        
+        DaryIntHeap heap = new DaryIntHeap(4, true);
+        heap.addAll(new int[]{42, 7, 19, 3, 25, 11, 30, 1, 16});
+        System.out.print("4 叉堆積依序取出: ");
+        while (!heap.isEmpty()) {
+            System.out.print(heap.extract() + " ");
+        }
+        System.out.println();
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.*;
+
+/**
+ * 延遲與週期任務：時間輪保管還沒到期的任務，到期後才放進優先佇列依優先級執行
+ *
+ * 還沒到期的任務不佔優先佇列的位置，排程與取消都是時間輪的 O(1)；
+ * advanceTo 把時間推進到 now，所有到期的任務以 addTask 放進 PriorityQueueWithHeap，
+ * executeNext 再依優先級（同優先級先進先出）取出。
+ * 週期任務到期時若上一次還沒被執行，addTask 會把它留在佇列裡（重新蓋時間戳），不會重複排兩份。
+ */
+public class DelayedTaskScheduler {
+    
+    private final HierarchicalTimingWheel wheel;
+    private final PriorityQueueWithHeap ready = new PriorityQueueWithHeap();
+    private final Map<String, Long> handles = new HashMap<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();   // 附帶值 → 任務名稱
+    private final List<Integer> priorities = new ArrayList<>();
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+    private final Set<Integer> periodicIds = new HashSet<>();
+    
+    public DelayedTaskScheduler(long startTick) {
+        wheel = new HierarchicalTimingWheel(startTick);
+    }
+    
+    /**
+     * delay 個 tick 後執行一次；同名任務的計時器還在等待時先取消舊的，
+     * 已到期、正在優先佇列等待執行的那一次不受影響（要一併移除請先呼叫 cancel）
+     */
+    public void schedule(String name, int priority, long delay) {
+        int id = register(name, priority);
+        handles.put(name, wheel.schedule(wheel.currentTick() + delay, id));
+    }
+    
+    /**
+     * initialDelay 個 tick 後第一次執行，之後每 period 個 tick 執行一次，直到 cancel；同名任務的處理同 schedule
+     */
+    public void scheduleAtFixedRate(String name, int priority, long initialDelay, long period) {
+        int id = register(name, priority);
+        periodicIds.add(id);
+        handles.put(name, wheel.scheduleAtFixedRate(wheel.currentTick() + initialDelay, period, id));
+    }
+    
+    /**
+     * 取消還沒到期的任務（週期任務停止之後的週期）；已進入優先佇列的那一次也一併移除
+     */
+    public boolean cancel(String name) {
+        boolean removed = ready.remove(name);
+        return cancelTimer(name) || removed;
+    }
+    
+    // 只取消時間輪上的計時器，不動優先佇列
+    private boolean cancelTimer(String name) {
+        Long handle = handles.remove(name);
+        if (handle == null) {
+            return false;
+        }
+        boolean cancelled = wheel.cancel(handle);
+        release(ids.remove(name));
+        return cancelled;
+    }
+    
+    /**
+     * 把時間推進到 now，到期的任務移到優先佇列，回傳目前可執行的任務數
+     */
+    public int advanceTo(long now) {
+        wheel.advance(now, id -> {
+            String name = names.get(id);
+            ready.addTask(name, priorities.get(id));
+            if (!periodicIds.contains(id)) {
+                handles.remove(name);
+                ids.remove(name);
+                release(id);
+            }
+        });
+        return ready.size();
+    }
+    
+    public String executeNext() {
+        return ready.executeNext();
+    }
+    
+    public int pendingCount() {
+        return wheel.size();
+    }
+    
+    private int register(String name, int priority) {
+        cancelTimer(name);
+        Integer id = freeIds.poll();
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            priorities.add(priority);
+        } else {
+            names.set(id, name);
+            priorities.set(id, priority);
+        }
+        ids.put(name, id);
+        return id;
+    }
+    
+    private void release(int id) {
+        names.set(id, null);
+        periodicIds.remove(id);
+        freeIds.push(id);
+    }
+    
+    public static void main(String[] args) {
+        // 1 tick = 1 秒
+        DelayedTaskScheduler scheduler = new DelayedTaskScheduler(0);
+        scheduler.schedule("寄送提醒", 2, 30);
+        scheduler.scheduleAtFixedRate("同步訂單", 3, 300, 300);
+        scheduler.schedule("產生報表", 1, 600);
+        scheduler.schedule("清理暫存", 1, 900);
+        scheduler.schedule("緊急修復", 5, 600);
+        scheduler.cancel("清理暫存");
+        System.out.println("=== 延遲與週期任務（1 tick = 1 秒）===");
+        System.out.println("等待中的計時器: " + scheduler.pendingCount());
+        
+        for (long now = 0; now <= 1200; now += 300) {
+            int runnable = scheduler.advanceTo(now);
+            List<String> executed = new ArrayList<>();
+            for (String name; (name = scheduler.executeNext()) != null; ) {
+                executed.add(name);
+            }
+            System.out.println("t=" + now + " 可執行 " + runnable + " 個: " + executed);
+        }
+        scheduler.cancel("同步訂單");
+        System.out.println("取消週期同步後等待中的計時器: " + scheduler.pendingCount());
+    }
+}
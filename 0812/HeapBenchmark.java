@@ -0,0 +1,287 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * 堆積實作的吞吐量與記憶體配置比較
+ *
+ * 比較對象：MinHeap、MaxHeap、BasicMinHeapPractice（ArrayList<Integer>）、java.util.PriorityQueue<Integer>、
+ * IntHeap（min / max）與 LongIntHeap。
+ * 每個實作跑同一個工作負載：先插入 n 個元素，接著做 n 次「取出堆頂再插入」的穩態操作，最後全部取出。
+ * 做法同 MultiLevelCacheBenchmark：先暖身再量測數輪，回傳值累加到 sink；
+ * 記憶體配置以 HotSpot 的 per-thread 配置計數量測（每次操作平均配置的位元組數）。
+ * 最後另外比較 IntHeap 的 addAll（Floyd 建堆）與逐一 insert 建堆。
+ *
+ * arity 模式比較 DaryIntHeap 的 堆積大小 × 分支數 × 是否對齊快取線：
+ * 先以 addAll 建好 n 個元素的堆積（不計時），再量測固定次數的「取出堆頂再插入」，
+ * 每次操作的成本與 n 無關地比較，可以看出堆積超過 L2 / L3 後各分支數的差異。
+ * 對齊只在 G1 的 humongous 陣列成立，輸出最後一欄標出每個 n 的對齊是否真的成立。
+ *
+ * 用法：java HeapBenchmark [n ...]，預設 n = 1000、100000、1000000
+ *       java HeapBenchmark arity [n ...]，預設 n = 1000、100000、1000000、10000000
+ */
+public class HeapBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURE_ITERATIONS = 5;
+
+    private static final String[] ENGINES = {
+        "MinHeap", "MaxHeap", "BasicMinHeap", "PriorityQueue", "IntHeap.min", "IntHeap.max", "LongIntHeap"
+    };
+
+    private static long sink;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // ---- 各實作的工作負載：插入 n 個、n 次取出再插入、全部取出 ----
+
+    static long runMinHeap(int[] data) {
+        long checksum = 0;
+        MinHeap heap = new MinHeap();
+        for (int v : data) heap.insert(v);
+        for (int v : data) {
+            checksum += heap.extractMin();
+            heap.insert(v ^ 0x5bd1e995);
+        }
+        while (!heap.isEmpty()) checksum += heap.extractMin();
+        return checksum;
+    }
+
+    static long runMaxHeap(int[] data) {
+        long checksum = 0;
+        MaxHeap heap = new MaxHeap();
+        for (int v : data) heap.insert(v);
+        for (int v : data) {
+            checksum += heap.extractMax();
+            heap.insert(v ^ 0x5bd1e995);
+        }
+        while (!heap.isEmpty()) checksum += heap.extractMax();
+        return checksum;
+    }
+
+    static long runBasicMinHeap(int[] data) {
+        long checksum = 0;
+        BasicMinHeapPractice heap = new BasicMinHeapPractice();
+        for (int v : data) heap.insert(v);
+        for (int v : data) {
+            checksum += heap.extractMin();
+            heap.insert(v ^ 0x5bd1e995);
+        }
+        while (!heap.isEmpty()) checksum += heap.extractMin();
+        return checksum;
+    }
+
+    static long runPriorityQueue(int[] data) {
+        long checksum = 0;
+        PriorityQueue<Integer> heap = new PriorityQueue<>();
+        for (int v : data) heap.add(v);
+        for (int v : data) {
+            checksum += heap.poll();
+            heap.add(v ^ 0x5bd1e995);
+        }
+        while (!heap.isEmpty()) checksum += heap.poll();
+        return checksum;
+    }
+
+    static long runIntHeap(int[] data, boolean max) {
+        long checksum = 0;
+        IntHeap heap = max ? IntHeap.maxHeap() : IntHeap.minHeap();
+        for (int v : data) heap.insert(v);
+        for (int v : data) {
+            checksum += heap.extract();
+            heap.insert(v ^ 0x5bd1e995);
+        }
+        while (!heap.isEmpty()) checksum += heap.extract();
+        return checksum;
+    }
+
+    static long runLongIntHeap(int[] data) {
+        long checksum = 0;
+        LongIntHeap heap = new LongIntHeap();
+        for (int i = 0; i < data.length; i++) heap.insert((long) data[i] << 16, i);
+        for (int i = 0; i < data.length; i++) {
+            checksum += heap.poll();
+            heap.insert((long) (data[i] ^ 0x5bd1e995) << 16, i);
+        }
+        while (!heap.isEmpty()) checksum += heap.poll();
+        return checksum;
+    }
+
+    static long run(int engine, int[] data) {
+        switch (engine) {
+            case 0: return runMinHeap(data);
+            case 1: return runMaxHeap(data);
+            case 2: return runBasicMinHeap(data);
+            case 3: return runPriorityQueue(data);
+            case 4: return runIntHeap(data, false);
+            case 5: return runIntHeap(data, true);
+            default: return runLongIntHeap(data);
+        }
+    }
+
+    // ---- 量測 ----
+
+    static void measure(int engine, int[] data) {
+        // 每次 run 共 4n 次操作：n 次插入、n 次取出再插入、n 次取出；n 小時一輪重複多次，讓每輪至少約 4M 次操作
+        int repeats = Math.max(1, 1000000 / data.length);
+        long ops = 4L * data.length * repeats;
+        for (int w = 0; w < WARMUP_ITERATIONS; w++) {
+            for (int r = 0; r < repeats; r++) {
+                sink += run(engine, data);
+            }
+        }
+        double[] nsPerOp = new double[MEASURE_ITERATIONS];
+        long allocated = 0;
+        for (int m = 0; m < MEASURE_ITERATIONS; m++) {
+            long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int r = 0; r < repeats; r++) {
+                sink += run(engine, data);
+            }
+            nsPerOp[m] = (double) (System.nanoTime() - start) / ops;
+            allocated += THREADS.getCurrentThreadAllocatedBytes() - bytesBefore;
+        }
+        double mean = 0;
+        for (double v : nsPerOp) mean += v;
+        mean /= nsPerOp.length;
+        double var = 0;
+        for (double v : nsPerOp) var += (v - mean) * (v - mean);
+        double stddev = Math.sqrt(var / (nsPerOp.length - 1));
+        System.out.printf("%-9d %-14s %10.1f ± %-8.1f %12.1f %12.2f%n", data.length, ENGINES[engine],
+            mean, stddev, 1000 / mean, (double) allocated / MEASURE_ITERATIONS / ops);
+    }
+
+    // IntHeap 建堆：逐一 insert 對比 addAll（Floyd）
+    static void measureBuild(int[] data) {
+        for (int mode = 0; mode < 2; mode++) {
+            double best = Double.MAX_VALUE;
+            for (int i = 0; i < WARMUP_ITERATIONS + MEASURE_ITERATIONS; i++) {
+                long start = System.nanoTime();
+                IntHeap heap = IntHeap.minHeap(data.length);
+                if (mode == 0) {
+                    for (int v : data) heap.insert(v);
+                } else {
+                    heap.addAll(data);
+                }
+                long elapsed = System.nanoTime() - start;
+                sink += heap.peek();
+                if (i >= WARMUP_ITERATIONS) best = Math.min(best, elapsed / 1e6);
+            }
+            System.out.printf("%-9d %-22s %10.2f ms%n", data.length, mode == 0 ? "IntHeap 逐一 insert" : "IntHeap.addAll (Floyd)", best);
+        }
+    }
+
+    // ---- 分支數矩陣 ----
+
+    private static final int ARITY_OPS = 2000000;
+
+    // 穩態：取出堆頂再插入一個新值，堆積大小維持 n
+    static long steadyState(DaryIntHeap heap, int[] stream) {
+        long checksum = 0;
+        for (int i = 0; i < ARITY_OPS; i++) {
+            checksum += heap.extract();
+            heap.insert(stream[i]);
+        }
+        return checksum;
+    }
+
+    static long steadyState(IntHeap heap, int[] stream) {
+        long checksum = 0;
+        for (int i = 0; i < ARITY_OPS; i++) {
+            checksum += heap.extract();
+            heap.insert(stream[i]);
+        }
+        return checksum;
+    }
+
+    // arity = 0 代表以 IntHeap（二元堆積）做對照
+    static void measureArity(int n, int[] data, int[] stream, int arity, boolean aligned) {
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < WARMUP_ITERATIONS + MEASURE_ITERATIONS; i++) {
+            long elapsed;
+            if (arity == 0) {
+                IntHeap heap = IntHeap.minHeap(n + 1);
+                heap.addAll(data);
+                long start = System.nanoTime();
+                sink += steadyState(heap, stream);
+                elapsed = System.nanoTime() - start;
+            } else {
+                DaryIntHeap heap = new DaryIntHeap(arity, aligned, n + 1);
+                heap.addAll(data);
+                long start = System.nanoTime();
+                sink += steadyState(heap, stream);
+                elapsed = System.nanoTime() - start;
+            }
+            if (i >= WARMUP_ITERATIONS) best = Math.min(best, (double) elapsed / (2 * ARITY_OPS));
+        }
+        System.out.printf(" %9.1f", best);
+    }
+
+    // G1 的 humongous 門檻（region 大小的一半）；不是 G1 時回傳 -1，任何陣列都不保證從 region 開頭配置
+    static long humongousThresholdBytes() {
+        com.sun.management.HotSpotDiagnosticMXBean vm =
+            ManagementFactory.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+        if (!Boolean.parseBoolean(vm.getVMOption("UseG1GC").getValue())) {
+            return -1;
+        }
+        return Long.parseLong(vm.getVMOption("G1HeapRegionSize").getValue()) / 2;
+    }
+
+    static void arityMatrix(int[] sizes) {
+        System.out.println("取出堆頂再插入的穩態成本（ns/op，取最佳一輪）");
+        // /al 的位移假設陣列從 64 位元組邊界開始，只有 G1 的 humongous 陣列（從 region 開頭配置）才成立；
+        // 堆積已預先配置 n + 1 的容量，量測中不會因擴充換成非 humongous 的新陣列
+        long threshold = humongousThresholdBytes();
+        if (threshold < 0) {
+            System.out.println("目前不是 G1，陣列只保證 8 位元組對齊，/al 欄位只是位移、不保證對齊快取線");
+        } else {
+            System.out.printf("G1 humongous 門檻 %d KB：int[] 小於此大小時 /al 欄位只是位移、不保證對齊快取線%n", threshold / 1024);
+        }
+        System.out.printf("%-10s %9s", "n", "IntHeap");
+        int[] arities = {2, 4, 8, 16};
+        for (int arity : arities) {
+            System.out.printf(" %9s %9s", "d=" + arity, "d=" + arity + "/al");
+        }
+        System.out.printf("  %s%n", "/al 對齊成立");
+        for (int n : sizes) {
+            int[] data = new Random(n).ints(n).toArray();
+            // 新插入的值和堆積內的值同分布，穩態下會下濾到底層附近，與一般優先佇列的工作量相近
+            int[] stream = new Random(n + 1).ints(ARITY_OPS).toArray();
+            System.out.printf("%-10d", n);
+            measureArity(n, data, stream, 0, false);
+            for (int arity : arities) {
+                measureArity(n, data, stream, arity, false);
+                measureArity(n, data, stream, arity, true);
+            }
+            // 陣列長度為 offset + n + 1（offset < 16），加上 16 位元組標頭
+            long arrayBytes = 16 + 4L * (n + 1);
+            System.out.printf("  %s%n", threshold >= 0 && arrayBytes >= threshold ? "是" : "否");
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("arity")) {
+            int[] sizes = args.length == 1 ? new int[]{1000, 100000, 1000000, 10000000}
+                : Arrays.stream(args).skip(1).mapToInt(Integer::parseInt).toArray();
+            arityMatrix(sizes);
+            System.out.println("(sink " + sink + ")");
+            return;
+        }
+        int[] sizes = args.length == 0 ? new int[]{1000, 100000, 1000000}
+            : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        System.out.printf("%-9s %-14s %10s   %-8s %12s %12s%n", "n", "Engine", "ns/op", "stddev", "Mops/s", "B/op");
+        for (int n : sizes) {
+            int[] data = new Random(n).ints(n).toArray();
+            for (int engine = 0; engine < ENGINES.length; engine++) {
+                measure(engine, data);
+            }
+        }
+
+        System.out.println();
+        for (int n : sizes) {
+            measureBuild(new Random(n).ints(n).toArray());
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+}
@@ -0,0 +1,483 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * 階層式時間輪：大量延遲／週期計時器的 O(1) 排程與取消
+ *
+ * 時間以整數 tick 表示，每層 64 格，第 L 層每格涵蓋 64^L 個 tick，共 11 層可涵蓋整個 long 範圍。
+ * 計時器依「到期 tick 與目前 tick 最高的不同位元」決定放在哪一層，格子則取到期 tick 在該層的那 6 個位元；
+ * 目前 tick 跨過第 L 層的邊界時，把第 L 層對應格子裡的計時器重新放到較低層（cascade），
+ * 最後在第 0 層的格子裡到期。排程與取消都是 O(1)，每個計時器最多被搬 層數 次。
+ *
+ * 計時器不建立物件：到期時間、週期、附帶值與雙向鏈結都存在 int[] / long[] 裡，釋放的位置放進空閒串列重複使用，
+ * 因此上百萬個計時器也不會產生 GC 壓力。handle 是 (世代 << 32) | 位置，位置被重複使用後舊的 handle 會失效。
+ * 到期時呼叫 IntConsumer 並傳入附帶值（通常是任務編號），由呼叫者把任務放進優先佇列。
+ */
+public class HierarchicalTimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = (Long.SIZE + SLOT_BITS - 1) / SLOT_BITS;
+    private static final int NONE = -1;
+    private static final int FIRING = -2;  // 所在格子：已從格子取下、正在呼叫到期處理
+    
+    // 每個計時器在 links 佔 4 個 int、在 times 佔 2 個 long，取消時只會碰到自己與前後鄰居的幾條快取線
+    private static final int NEXT = 0;
+    private static final int PREV = 1;
+    private static final int SLOT = 2;        // 層 × 64 + 格，空閒時為 NONE
+    private static final int GENERATION = 3;
+    private static final int LINK_STRIDE = 4;
+    private static final int DEADLINE = 0;
+    private static final int PERIOD = 1;
+    private static final int TIME_STRIDE = 2;
+    
+    private final int[] heads = new int[LEVELS * SLOTS];
+    private final long[] occupied = new long[LEVELS];  // 每層哪些格子不是空的，推進時用來跳過空的 tick
+    private int[] links;
+    private long[] times;
+    private int[] payloads;
+    private int freeHead = NONE;
+    private int allocated;
+    private int size;
+    private long currentTick;
+    
+    public HierarchicalTimingWheel(long startTick) {
+        this(startTick, 16);
+    }
+    
+    public HierarchicalTimingWheel(long startTick, int capacity) {
+        if (startTick < 0) {
+            throw new IllegalArgumentException("Start tick must not be negative: " + startTick);
+        }
+        Arrays.fill(heads, NONE);
+        currentTick = startTick;
+        capacity = Math.max(1, capacity);
+        links = new int[capacity * LINK_STRIDE];
+        times = new long[capacity * TIME_STRIDE];
+        payloads = new int[capacity];
+    }
+    
+    /**
+     * 排程在 deadline 到期的一次性計時器；deadline 不晚於目前 tick 時在下一個 tick 到期
+     */
+    public long schedule(long deadline, int payload) {
+        return schedule(deadline, 0, payload);
+    }
+    
+    /**
+     * 排程第一次在 firstDeadline 到期、之後每 period 個 tick 到期一次的計時器，直到被取消
+     */
+    public long scheduleAtFixedRate(long firstDeadline, long period, int payload) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+        return schedule(firstDeadline, period, payload);
+    }
+    
+    private long schedule(long deadline, long period, int payload) {
+        int node = allocate();
+        times[node * TIME_STRIDE + DEADLINE] = Math.max(deadline, currentTick + 1);
+        times[node * TIME_STRIDE + PERIOD] = period;
+        payloads[node] = payload;
+        link(node);
+        size++;
+        return ((long) links[node * LINK_STRIDE + GENERATION] << 32) | node;
+    }
+    
+    /**
+     * 取消計時器，O(1)；回傳是否真的取消了還沒到期的計時器
+     * 週期計時器在自己的到期處理中取消時，會停止之後的週期
+     */
+    public boolean cancel(long handle) {
+        int node = (int) handle;
+        if (node < 0 || node >= allocated || links[node * LINK_STRIDE + GENERATION] != (int) (handle >>> 32)) {
+            return false;
+        }
+        int slot = links[node * LINK_STRIDE + SLOT];
+        if (slot >= 0) {
+            unlink(node);
+            release(node);
+            return true;
+        }
+        if (slot == FIRING && times[node * TIME_STRIDE + PERIOD] > 0) {
+            times[node * TIME_STRIDE + PERIOD] = 0;
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * 把時間推進到 now，依到期順序對每個到期的計時器呼叫 expired
+     * 中間沒有任何格子要處理的 tick 直接跳過，閒置很久之後推進也不必逐一走過
+     */
+    public void advance(long now, IntConsumer expired) {
+        while (currentTick < now) {
+            long tick = nextEventTick();
+            if (tick > now) {
+                currentTick = now;
+                return;
+            }
+            currentTick = tick;
+            // 跨過第 L 層的邊界時（低 6L 位元全為 0），把該層目前這一格往下搬，高層先搬
+            int crossed = Math.min(Long.numberOfTrailingZeros(tick) / SLOT_BITS, LEVELS - 1);
+            for (int level = crossed; level >= 1; level--) {
+                cascade(level, (int) (tick >>> (level * SLOT_BITS)) & (SLOTS - 1));
+            }
+            fire((int) tick & (SLOTS - 1), expired);
+        }
+    }
+    
+    // 下一個有格子要處理的 tick：從最低層找目前位數之後第一個不是空的格子
+    // 第 L 層（L ≥ 1）目前位數那一格一定是空的，第 0 層目前那一格已經處理過
+    private long nextEventTick() {
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = level * SLOT_BITS;
+            int digit = (int) (currentTick >>> shift) & (SLOTS - 1);
+            long ahead = digit == SLOTS - 1 ? 0 : occupied[level] & (-1L << (digit + 1));
+            if (ahead != 0) {
+                int blockShift = shift + SLOT_BITS;
+                long block = blockShift >= Long.SIZE ? 0 : (currentTick >>> blockShift) << blockShift;
+                return block | ((long) Long.numberOfTrailingZeros(ahead) << shift);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public long currentTick() {
+        return currentTick;
+    }
+    
+    private void cascade(int level, int index) {
+        int slot = level * SLOTS + index;
+        int node = heads[slot];
+        heads[slot] = NONE;
+        occupied[level] &= ~(1L << index);
+        while (node != NONE) {
+            int following = links[node * LINK_STRIDE + NEXT];
+            link(node);
+            node = following;
+        }
+    }
+    
+    // 一次只取下一個，到期處理中取消同一格的其他計時器也能正確移除
+    private void fire(int slot, IntConsumer expired) {
+        int node;
+        while ((node = heads[slot]) != NONE) {
+            unlink(node);
+            links[node * LINK_STRIDE + SLOT] = FIRING;
+            expired.accept(payloads[node]);
+            // 到期處理可能排程新的計時器而換掉陣列，這裡重新讀欄位
+            long period = times[node * TIME_STRIDE + PERIOD];
+            if (period > 0) {
+                times[node * TIME_STRIDE + DEADLINE] += period;
+                link(node);
+            } else {
+                release(node);
+            }
+        }
+    }
+    
+    private void link(int node) {
+        long deadline = times[node * TIME_STRIDE + DEADLINE];
+        int level = (63 - Long.numberOfLeadingZeros(deadline ^ currentTick)) / SLOT_BITS;
+        int index = (int) (deadline >>> (level * SLOT_BITS)) & (SLOTS - 1);
+        int slot = level * SLOTS + index;
+        int head = heads[slot];
+        int base = node * LINK_STRIDE;
+        links[base + NEXT] = head;
+        links[base + PREV] = NONE;
+        links[base + SLOT] = slot;
+        if (head != NONE) {
+            links[head * LINK_STRIDE + PREV] = node;
+        }
+        heads[slot] = node;
+        occupied[level] |= 1L << index;
+    }
+    
+    private void unlink(int node) {
+        int base = node * LINK_STRIDE;
+        int p = links[base + PREV];
+        int n = links[base + NEXT];
+        if (p != NONE) {
+            links[p * LINK_STRIDE + NEXT] = n;
+        } else {
+            int slot = links[base + SLOT];
+            heads[slot] = n;
+            if (n == NONE) {
+                occupied[slot / SLOTS] &= ~(1L << (slot % SLOTS));
+            }
+        }
+        if (n != NONE) {
+            links[n * LINK_STRIDE + PREV] = p;
+        }
+    }
+    
+    private int allocate() {
+        if (freeHead != NONE) {
+            int node = freeHead;
+            freeHead = links[node * LINK_STRIDE + NEXT];
+            return node;
+        }
+        if (allocated == payloads.length) {
+            int capacity = allocated + (allocated >> 1) + 1;
+            links = Arrays.copyOf(links, capacity * LINK_STRIDE);
+            times = Arrays.copyOf(times, capacity * TIME_STRIDE);
+            payloads = Arrays.copyOf(payloads, capacity);
+        }
+        return allocated++;
+    }
+    
+    private void release(int node) {
+        int base = node * LINK_STRIDE;
+        links[base + SLOT] = NONE;
+        links[base + GENERATION]++;
+        links[base + NEXT] = freeHead;
+        freeHead = node;
+        size--;
+    }
+    
+    // ---- 效能比較 ----
+    
+    // 對照組：PriorityQueue 依到期時間排序，取消只設旗標，到期時略過（O(n) 的 remove 不實用）
+    static class Deadline {
+        final long at;
+        final int payload;
+        boolean cancelled;
+        
+        Deadline(long at, int payload) {
+            this.at = at;
+            this.payload = payload;
+        }
+    }
+    
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    
+    private static long sink;
+    
+    private static void report(String label, long nanos, long bytes, int ops) {
+        System.out.printf("  %-28s %8.1f ns/op %8.1f B/op%n", label, (double) nanos / ops, (double) bytes / ops);
+    }
+    
+    /**
+     * n 個同時存在的計時器，到期時間平均分布在 horizon 個 tick 內：
+     * 全部排程、取消其中一成、一個 tick 一個 tick 推進到全部到期；
+     * 再量測逾時計時器常見的「排程一個新的、取消一個舊的」穩態
+     */
+    static void benchmark(int n, long horizon, boolean print) {
+        Random random = new Random(n);
+        long[] at = new long[n];
+        for (int i = 0; i < n; i++) {
+            at[i] = 1 + (long) (random.nextDouble() * horizon);
+        }
+        int cancels = n / 10;
+        int[] cancelTargets = random.ints(cancels, 0, n).toArray();
+        int churn = n;
+        int[] churnTargets = random.ints(churn, 0, n).toArray();
+        
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(0, n);
+        long[] handles = new long[n];
+        long b0 = THREADS.getCurrentThreadAllocatedBytes();
+        long t0 = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            handles[i] = wheel.schedule(at[i], i);
+        }
+        long t1 = System.nanoTime();
+        long b1 = THREADS.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < churn; i++) {
+            int victim = churnTargets[i];
+            wheel.cancel(handles[victim]);
+            handles[victim] = wheel.schedule(wheel.currentTick() + at[i], victim);
+        }
+        long t2 = System.nanoTime();
+        long b2 = THREADS.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < cancels; i++) {
+            wheel.cancel(handles[cancelTargets[i]]);
+        }
+        long t3 = System.nanoTime();
+        long[] fired = new long[1];
+        IntConsumer onExpired = payload -> fired[0] += payload;
+        for (long tick = 1; tick <= horizon; tick++) {
+            wheel.advance(tick, onExpired);
+        }
+        long t4 = System.nanoTime();
+        long b4 = THREADS.getCurrentThreadAllocatedBytes();
+        sink += fired[0];
+        
+        PriorityQueue<Deadline> queue = new PriorityQueue<>(n, (a, b) -> Long.compare(a.at, b.at));
+        Deadline[] entries = new Deadline[n];
+        long c0 = THREADS.getCurrentThreadAllocatedBytes();
+        long s0 = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            entries[i] = new Deadline(at[i], i);
+            queue.offer(entries[i]);
+        }
+        long s1 = System.nanoTime();
+        long c1 = THREADS.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < churn; i++) {
+            int victim = churnTargets[i];
+            entries[victim].cancelled = true;
+            entries[victim] = new Deadline(at[i], victim);
+            queue.offer(entries[victim]);
+        }
+        long s2 = System.nanoTime();
+        long c2 = THREADS.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < cancels; i++) {
+            entries[cancelTargets[i]].cancelled = true;
+        }
+        long s3 = System.nanoTime();
+        long sum = 0;
+        for (long tick = 1; tick <= horizon; tick++) {
+            Deadline head;
+            while ((head = queue.peek()) != null && head.at <= tick) {
+                queue.poll();
+                if (!head.cancelled) {
+                    sum += head.payload;
+                }
+            }
+        }
+        long s4 = System.nanoTime();
+        long c4 = THREADS.getCurrentThreadAllocatedBytes();
+        sink += sum;
+        
+        if (!print) {
+            return;
+        }
+        System.out.printf("%d 個計時器，到期時間分布在 %d 個 tick 內%n", n, horizon);
+        System.out.println(" 時間輪");
+        report("schedule", t1 - t0, b1 - b0, n);
+        report("cancel 舊的 + schedule 新的", t2 - t1, b2 - b1, churn);
+        report("cancel", t3 - t2, 0, cancels);
+        report("advance（每個計時器）", t4 - t3, b4 - b2, n);
+        System.out.println(" PriorityQueue<Deadline>（取消設旗標）");
+        report("offer", s1 - s0, c1 - c0, n);
+        report("cancel 舊的 + offer 新的", s2 - s1, c2 - c1, churn);
+        report("cancel", s3 - s2, 0, cancels);
+        report("poll 到期（每個計時器）", s4 - s3, c4 - c2, n);
+        System.out.println("  到期總和一致: " + (fired[0] == sum));
+    }
+    
+    /**
+     * 與 PriorityQueue 隨機比對：一次性與週期計時器、外部取消，到期處理中也會取消（包含自己）與排程新的計時器
+     * 參考模型在每次到期處理中同步更新：到期的計時器必須是參考模型中最早到期的、到期 tick 必須正確，
+     * cancel 的回傳值必須符合參考模型，推進結束後參考模型中不能還有已到期的計時器
+     */
+    static boolean randomizedCheck(Random random, int steps) {
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(0);
+        // {到期 tick, 編號, 週期}
+        PriorityQueue<long[]> reference = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        Map<Integer, long[]> live = new HashMap<>();
+        Map<Integer, Long> handles = new HashMap<>();
+        boolean[] ok = {true};
+        int[] nextId = {0};
+        long[] now = {0};
+        
+        for (int step = 0; step < steps && ok[0]; step++) {
+            int op = random.nextInt(10);
+            if (op < 6) {
+                scheduleRandom(random, wheel, reference, live, handles, nextId, now[0]);
+            } else if (op < 8) {
+                int id = random.nextInt(nextId[0] + 1);
+                ok[0] = cancelAndCheck(wheel, reference, live, handles, id);
+            } else {
+                now[0] += (long) Math.pow(2, random.nextDouble() * 24);
+                wheel.advance(now[0], id -> {
+                    long tick = wheel.currentTick();
+                    long[] entry = live.remove(id);
+                    // 同一個 tick 到期的計時器之間不保證順序
+                    if (entry == null || entry[0] != tick || reference.peek()[0] != tick) {
+                        ok[0] = false;
+                        return;
+                    }
+                    reference.remove(entry);
+                    boolean stopped = false;
+                    int action = random.nextInt(8);
+                    if (action == 0) {
+                        // 取消自己：週期計時器停止之後的週期，一次性計時器已經到期所以回傳 false
+                        ok[0] &= wheel.cancel(handles.get(id)) == (entry[2] > 0);
+                        stopped = true;
+                    } else if (action == 1) {
+                        // 取消其他計時器，可能剛好在同一個 tick 到期、還沒輪到，也可能已經到期
+                        int other = random.nextInt(nextId[0] + 1);
+                        if (other != id) {
+                            ok[0] &= cancelAndCheck(wheel, reference, live, handles, other);
+                        }
+                    } else if (action == 2) {
+                        // 到期處理中排程，可能已經到期（應該在下一個 tick 到期）
+                        scheduleRandom(random, wheel, reference, live, handles, nextId, tick - random.nextInt(3));
+                    }
+                    if (entry[2] > 0 && !stopped) {
+                        entry[0] += entry[2];
+                        live.put(id, entry);
+                        reference.add(entry);
+                    } else {
+                        handles.remove(id);
+                    }
+                });
+                ok[0] &= reference.isEmpty() || reference.peek()[0] > now[0];
+            }
+            ok[0] &= wheel.size() == reference.size();
+        }
+        return ok[0];
+    }
+    
+    private static void scheduleRandom(Random random, HierarchicalTimingWheel wheel, PriorityQueue<long[]> reference,
+                                       Map<Integer, long[]> live, Map<Integer, Long> handles, int[] nextId, long from) {
+        // 到期時間跨越多個數量級，涵蓋各層
+        long delay = (long) Math.pow(2, random.nextDouble() * 30);
+        long period = random.nextInt(8) == 0 ? 1 + (long) Math.pow(2, 10 + random.nextDouble() * 20) : 0;
+        int id = nextId[0]++;
+        long[] entry = {Math.max(from + delay, wheel.currentTick() + 1), id, period};
+        handles.put(id, period > 0 ? wheel.scheduleAtFixedRate(from + delay, period, id) : wheel.schedule(from + delay, id));
+        live.put(id, entry);
+        reference.add(entry);
+    }
+    
+    private static boolean cancelAndCheck(HierarchicalTimingWheel wheel, PriorityQueue<long[]> reference,
+                                          Map<Integer, long[]> live, Map<Integer, Long> handles, int id) {
+        long[] entry = live.remove(id);
+        Long handle = handles.get(id);
+        if (entry == null) {
+            // 已到期或已取消，舊的 handle 必須失效
+            return handle == null || !wheel.cancel(handle);
+        }
+        handles.remove(id);
+        reference.remove(entry);
+        return wheel.cancel(handle);
+    }
+    
+    public static void main(String[] args) {
+        System.out.println("=== 時間輪示範（1 tick = 1 秒）===");
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(0);
+        String[] names = {"30 秒後寄信", "每 5 分鐘同步", "1 小時後備份", "10 秒後逾時（會被取消）"};
+        wheel.schedule(30, 0);
+        long sync = wheel.scheduleAtFixedRate(300, 300, 1);
+        wheel.schedule(3600, 2);
+        long timeout = wheel.schedule(10, 3);
+        System.out.println("取消逾時計時器: " + wheel.cancel(timeout));
+        for (long now : new long[]{60, 600, 1200, 3600}) {
+            List<String> due = new ArrayList<>();
+            wheel.advance(now, payload -> due.add(names[payload]));
+            System.out.println("推進到 " + now + " 秒: " + due);
+        }
+        System.out.println("停止週期同步: " + wheel.cancel(sync) + "，剩餘計時器 " + wheel.size());
+        
+        System.out.println("\n與 PriorityQueue 隨機比對 2 萬次操作（含週期計時器、到期處理中取消與排程）: "
+            + (randomizedCheck(new Random(7), 20000) ? "一致" : "錯誤"));
+        
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        long horizon = args.length > 1 ? Long.parseLong(args[1]) : 60000;
+        System.out.println("\n=== 效能比較 ===");
+        benchmark(n, horizon, false);
+        benchmark(n, horizon, true);
+        System.out.println("(sink " + sink + ")");
+    }
+}
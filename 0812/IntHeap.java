@@ -0,0 +1,233 @@
+import java.util.*;
+
+/**
+ * 以 int[] 儲存的二元堆積，可當 min heap 或 max heap 使用
+ *
+ * 與 MinHeap / MaxHeap 的差別：
+ *   - 元素直接存在可成長的 int[]，插入不裝箱、比較不拆箱
+ *   - 上濾與下濾用「空洞」移動：先把要放的值拿在手上，沿路把父／子節點往空洞搬，
+ *     最後才寫入一次，每層只有一次寫入而不是 swap 的三次
+ *   - addAll 一次加入多個元素時，若加入的數量不少於現有元素，改用 Floyd 由下而上建堆，O(n)
+ */
+public class IntHeap {
+    private static final int DEFAULT_CAPACITY = 16;
+    
+    private int[] heap;
+    private int size;
+    private final boolean maxHeap;
+    
+    private IntHeap(int capacity, boolean maxHeap) {
+        this.heap = new int[Math.max(1, capacity)];
+        this.maxHeap = maxHeap;
+    }
+    
+    public static IntHeap minHeap() {
+        return new IntHeap(DEFAULT_CAPACITY, false);
+    }
+    
+    public static IntHeap maxHeap() {
+        return new IntHeap(DEFAULT_CAPACITY, true);
+    }
+    
+    public static IntHeap minHeap(int capacity) {
+        return new IntHeap(capacity, false);
+    }
+    
+    public static IntHeap maxHeap(int capacity) {
+        return new IntHeap(capacity, true);
+    }
+    
+    // a 是否應該排在 b 之前（min heap 為 a < b）
+    private boolean before(int a, int b) {
+        return maxHeap ? a > b : a < b;
+    }
+    
+    private void ensureCapacity(int needed) {
+        if (needed > heap.length) {
+            heap = Arrays.copyOf(heap, Math.max(needed, heap.length + (heap.length >> 1)));
+        }
+    }
+    
+    public void insert(int value) {
+        ensureCapacity(size + 1);
+        siftUp(size++, value);
+    }
+    
+    /**
+     * 一次加入多個元素
+     * 加入的數量不少於現有元素時整個陣列用 Floyd 建堆 O(n + k)，否則逐一上濾 O(k log n)
+     */
+    public void addAll(int[] values) {
+        addAll(values, 0, values.length);
+    }
+    
+    public void addAll(int[] values, int from, int to) {
+        int count = to - from;
+        ensureCapacity(size + count);
+        if (count >= size) {
+            System.arraycopy(values, from, heap, size, count);
+            size += count;
+            heapify();
+        } else {
+            for (int i = from; i < to; i++) {
+                siftUp(size++, values[i]);
+            }
+        }
+    }
+    
+    // Floyd：從最後一個非葉節點往前逐一下濾
+    private void heapify() {
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i, heap[i]);
+        }
+    }
+    
+    /**
+     * 取出並移除堆頂（min heap 為最小值，max heap 為最大值）
+     */
+    public int extract() {
+        if (size == 0) {
+            throw new NoSuchElementException("Heap is empty");
+        }
+        int top = heap[0];
+        int last = heap[--size];
+        if (size > 0) {
+            siftDown(0, last);
+        }
+        return top;
+    }
+    
+    public int peek() {
+        if (size == 0) {
+            throw new NoSuchElementException("Heap is empty");
+        }
+        return heap[0];
+    }
+    
+    /**
+     * 取出堆頂並放入新值，等同 extract 後 insert，但只做一次下濾
+     */
+    public int replaceTop(int value) {
+        if (size == 0) {
+            throw new NoSuchElementException("Heap is empty");
+        }
+        int top = heap[0];
+        siftDown(0, value);
+        return top;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public void clear() {
+        size = 0;
+    }
+    
+    // 把 value 從 pos 的空洞往上移，比它後面的父節點往下搬
+    private void siftUp(int pos, int value) {
+        int[] h = heap;
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            int p = h[parent];
+            if (!before(value, p)) {
+                break;
+            }
+            h[pos] = p;
+            pos = parent;
+        }
+        h[pos] = value;
+    }
+    
+    // 把 value 從 pos 的空洞往下移，較前面的子節點往上搬
+    private void siftDown(int pos, int value) {
+        int[] h = heap;
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int c = h[child];
+            int right = child + 1;
+            if (right < size && before(h[right], c)) {
+                child = right;
+                c = h[right];
+            }
+            if (!before(c, value)) {
+                break;
+            }
+            h[pos] = c;
+            pos = child;
+        }
+        h[pos] = value;
+    }
+    
+    /**
+     * 驗證堆積性質（測試用）
+     */
+    public boolean isValidHeap() {
+        for (int i = 1; i < size; i++) {
+            if (before(heap[i], heap[(i - 1) >>> 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public void display() {
+        System.out.println("Heap 內容: " + Arrays.toString(Arrays.copyOf(heap, size)));
+    }
+    
+    public static void main(String[] args) {
+        IntHeap minHeap = IntHeap.minHeap();
+        
+        System.out.println("=== IntHeap 操作示範 ===");
+        int[] values = {40, 30, 15, 20, 10};
+        for (int value : values) {
+            minHeap.insert(value);
+            System.out.print("插入 " + value + " 後: ");
+            minHeap.display();
+        }
+        
+        System.out.println("\n依序取出最小值:");
+        while (!minHeap.isEmpty()) {
+            System.out.print(minHeap.extract() + " ");
+        }
+        System.out.println();
+        
+        IntHeap maxHeap = IntHeap.maxHeap();
+        maxHeap.addAll(new int[]{3, 9, 2, 7, 5, 8, 1});
+        System.out.print("\nFloyd 建立 max heap: ");
+        maxHeap.display();
+        System.out.print("依序取出最大值: ");
+        while (!maxHeap.isEmpty()) {
+            System.out.print(maxHeap.extract() + " ");
+        }
+        System.out.println();
+        
+        // 與 PriorityQueue 隨機比對
+        Random random = new Random(1);
+        IntHeap heap = IntHeap.minHeap();
+        PriorityQueue<Integer> reference = new PriorityQueue<>();
+        boolean ok = true;
+        for (int i = 0; i < 200000 && ok; i++) {
+            int op = random.nextInt(10);
+            if (op < 5 || reference.isEmpty()) {
+                int v = random.nextInt(1000);
+                heap.insert(v);
+                reference.add(v);
+            } else if (op < 9) {
+                ok = heap.extract() == reference.poll();
+            } else {
+                // 堆積小時批次會大於現有元素而走 Floyd，堆積大時走逐一上濾
+                int[] batch = random.ints(random.nextInt(64), 0, 1000).toArray();
+                heap.addAll(batch);
+                for (int v : batch) reference.add(v);
+                ok = heap.isValidHeap();
+            }
+        }
+        System.out.println("\n與 PriorityQueue 隨機比對 20 萬次操作: " + (ok && heap.size() == reference.size() ? "一致" : "錯誤"));
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.*;
+
+/**
+ * 以 long 為鍵、int 為附帶值的 min heap
+ *
+ * 鍵與值放在兩個平行的陣列，移動時一起搬；不建立任何節點物件。
+ * 常見用法是鍵放時間戳或優先權（可把多個欄位組合進一個 long），值放陣列索引或任務編號。
+ * 上濾與下濾同 IntHeap 以空洞移動，addAll 在加入數量不少於現有元素時用 Floyd 建堆。
+ */
+public class LongIntHeap {
+    private static final int DEFAULT_CAPACITY = 16;
+    
+    private long[] keys;
+    private int[] values;
+    private int size;
+    
+    public LongIntHeap() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    public LongIntHeap(int capacity) {
+        keys = new long[Math.max(1, capacity)];
+        values = new int[keys.length];
+    }
+    
+    private void ensureCapacity(int needed) {
+        if (needed > keys.length) {
+            int capacity = Math.max(needed, keys.length + (keys.length >> 1));
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+    
+    public void insert(long key, int value) {
+        ensureCapacity(size + 1);
+        siftUp(size++, key, value);
+    }
+    
+    /**
+     * 一次加入 count 組鍵值，keys[i] 對應 values[i]
+     */
+    public void addAll(long[] newKeys, int[] newValues, int count) {
+        ensureCapacity(size + count);
+        if (count >= size) {
+            System.arraycopy(newKeys, 0, keys, size, count);
+            System.arraycopy(newValues, 0, values, size, count);
+            size += count;
+            for (int i = (size >>> 1) - 1; i >= 0; i--) {
+                siftDown(i, keys[i], values[i]);
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                siftUp(size++, newKeys[i], newValues[i]);
+            }
+        }
+    }
+    
+    public long peekKey() {
+        checkNotEmpty();
+        return keys[0];
+    }
+    
+    public int peekValue() {
+        checkNotEmpty();
+        return values[0];
+    }
+    
+    /**
+     * 移除最小鍵的元素並回傳它的值；需要鍵時先呼叫 peekKey
+     */
+    public int poll() {
+        checkNotEmpty();
+        int top = values[0];
+        int last = --size;
+        if (size > 0) {
+            siftDown(0, keys[last], values[last]);
+        }
+        return top;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public void clear() {
+        size = 0;
+    }
+    
+    private void checkNotEmpty() {
+        if (size == 0) {
+            throw new NoSuchElementException("Heap is empty");
+        }
+    }
+    
+    private void siftUp(int pos, long key, int value) {
+        long[] k = keys;
+        int[] v = values;
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            long p = k[parent];
+            if (key >= p) {
+                break;
+            }
+            k[pos] = p;
+            v[pos] = v[parent];
+            pos = parent;
+        }
+        k[pos] = key;
+        v[pos] = value;
+    }
+    
+    private void siftDown(int pos, long key, int value) {
+        long[] k = keys;
+        int[] v = values;
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            long c = k[child];
+            int right = child + 1;
+            if (right < size && k[right] < c) {
+                child = right;
+                c = k[right];
+            }
+            if (key <= c) {
+                break;
+            }
+            k[pos] = c;
+            v[pos] = v[child];
+            pos = child;
+        }
+        k[pos] = key;
+        v[pos] = value;
+    }
+    
+    public static void main(String[] args) {
+        LongIntHeap heap = new LongIntHeap();
+        String[] tasks = {"備份", "寄信", "清理暫存", "產生報表"};
+        long[] deadlines = {1_700_000_300_000L, 1_700_000_100_000L, 1_700_000_900_000L, 1_700_000_200_000L};
+        for (int i = 0; i < tasks.length; i++) {
+            heap.insert(deadlines[i], i);
+        }
+        System.out.println("=== LongIntHeap：依截止時間取出任務 ===");
+        while (!heap.isEmpty()) {
+            long deadline = heap.peekKey();
+            System.out.println(deadline + " -> " + tasks[heap.poll()]);
+        }
+        
+        // 與 PriorityQueue 隨機比對（鍵相同時只比對鍵）
+        Random random = new Random(2);
+        PriorityQueue<Long> reference = new PriorityQueue<>();
+        boolean ok = true;
+        for (int i = 0; i < 200000 && ok; i++) {
+            if (random.nextInt(3) > 0 || reference.isEmpty()) {
+                long key = random.nextLong() >> 20;
+                heap.insert(key, (int) key);
+                reference.add(key);
+            } else {
+                long key = heap.peekKey();
+                ok = key == reference.poll() && heap.poll() == (int) key;
+            }
+        }
+        System.out.println("與 PriorityQueue 隨機比對 20 萬次操作: " + (ok ? "一致" : "錯誤"));
+    }
+}
@@ -0,0 +1,389 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * 以記憶體映射檔案實作的 SpillStore，作為 MultiLevelCache 最底下的持久化層
+ *
+ * 檔案格式（只追加不覆寫）：
+ *   header：int MAGIC, int VERSION, long 資料結尾位置
+ *   record：byte 類型, int keyLength, int valueLength, long accessCount, key, value（UTF-8）
+ * 同一個 key 以最後寫入的記錄為準。
+ *
+ * 索引只保存 key 的雜湊值與記錄位置（int[] + int[]），比對 key 時直接讀映射區的位元組，
+ * heap 上不保留 key 字串。重新開啟時從頭到尾循序掃描一次即可重建索引。
+ * 映射空間用完時，若過期記錄超過一半就壓縮成新檔，否則加倍映射大小。
+ */
+public class MappedSpillStore implements MultiLevelCacheSystem.SpillStore, Closeable {
+
+    private static final int MAGIC = 0x4D4C4353;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int END_OFFSET = 8;
+    private static final byte RECORD_PUT = 1;
+    private static final int RECORD_HEADER = 1 + 4 + 4 + 8;
+    private static final int MAX_MAPPED_SIZE = Integer.MAX_VALUE;
+
+    private final Path path;
+    private final int initialSize;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int end;
+    private long liveBytes;
+
+    // 開放定址索引：offsets 為 0 代表空槽（記錄一定在 header 之後）
+    private int[] hashes;
+    private int[] offsets;
+    private int count;
+
+    private MappedSpillStore(Path path, int initialSize) {
+        this.path = path;
+        this.initialSize = Math.max(initialSize, 4096);
+        this.hashes = new int[1024];
+        this.offsets = new int[1024];
+    }
+
+    /**
+     * 開啟（或建立）儲存檔，並循序掃描一次重建索引
+     */
+    public static MappedSpillStore open(Path path, int initialSize) throws IOException {
+        MappedSpillStore store = new MappedSpillStore(path, initialSize);
+        store.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long fileSize = store.channel.size();
+        if (fileSize > MAX_MAPPED_SIZE) {
+            throw new IOException("檔案超過可映射大小: " + fileSize);
+        }
+        store.buffer = store.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+            Math.max(fileSize, store.initialSize));
+
+        if (fileSize == 0) {
+            store.buffer.putInt(0, MAGIC);
+            store.buffer.putInt(4, VERSION);
+            store.end = HEADER_SIZE;
+            store.buffer.putLong(END_OFFSET, store.end);
+        } else {
+            if (store.buffer.getInt(0) != MAGIC || store.buffer.getInt(4) != VERSION) {
+                store.channel.close();
+                throw new IOException("不是 MappedSpillStore 檔案: " + path);
+            }
+            store.scan();
+        }
+        return store;
+    }
+
+    // 從 header 之後逐筆讀到記錄的結尾位置；遇到不完整的記錄就停止
+    private void scan() {
+        long storedEnd = Math.min(buffer.getLong(END_OFFSET), buffer.capacity());
+        int pos = HEADER_SIZE;
+        while (pos + RECORD_HEADER <= storedEnd && buffer.get(pos) == RECORD_PUT) {
+            int keyLength = buffer.getInt(pos + 1);
+            int valueLength = buffer.getInt(pos + 5);
+            int length = RECORD_HEADER + keyLength + valueLength;
+            if (keyLength < 0 || valueLength < 0 || pos + (long) length > storedEnd) break;
+            index(hashBytes(pos + RECORD_HEADER, keyLength), pos, length);
+            pos += length;
+        }
+        end = pos;
+        buffer.putLong(END_OFFSET, end);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long fileBytes() {
+        return end;
+    }
+
+    @Override
+    public void spill(MultiLevelCacheSystem.CacheEntry entry) {
+        byte[] key = entry.key.getBytes(StandardCharsets.UTF_8);
+        byte[] value = entry.value.getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_HEADER + key.length + value.length;
+        ensureCapacity(length);
+
+        int pos = end;
+        buffer.put(pos, RECORD_PUT);
+        buffer.putInt(pos + 1, key.length);
+        buffer.putInt(pos + 5, value.length);
+        buffer.putLong(pos + 9, entry.accessCount);
+        buffer.put(pos + RECORD_HEADER, key);
+        buffer.put(pos + RECORD_HEADER + key.length, value);
+        end = pos + length;
+        buffer.putLong(END_OFFSET, end);
+
+        index(hashBytes(key), pos, length);
+    }
+
+    @Override
+    public MultiLevelCacheSystem.CacheEntry load(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int slot = findSlot(hashBytes(bytes), bytes);
+        return offsets[slot] == 0 ? null : decode(offsets[slot]);
+    }
+
+    @Override
+    public List<MultiLevelCacheSystem.CacheEntry> hottest(int limit) {
+        // 保留 accessCount 最大的 limit 筆：最小堆積，堆頂是目前門檻
+        PriorityQueue<long[]> top = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        for (int slot = 0; slot < offsets.length && limit > 0; slot++) {
+            if (offsets[slot] == 0) continue;
+            long accessCount = buffer.getLong(offsets[slot] + 9);
+            if (top.size() < limit) {
+                top.offer(new long[]{accessCount, offsets[slot]});
+            } else if (accessCount > top.peek()[0]) {
+                top.poll();
+                top.offer(new long[]{accessCount, offsets[slot]});
+            }
+        }
+        List<MultiLevelCacheSystem.CacheEntry> result = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            result.add(decode((int) top.poll()[1]));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    // 將映射內容寫回磁碟
+    public void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private MultiLevelCacheSystem.CacheEntry decode(int pos) {
+        int keyLength = buffer.getInt(pos + 1);
+        int valueLength = buffer.getInt(pos + 5);
+        byte[] key = new byte[keyLength];
+        byte[] value = new byte[valueLength];
+        buffer.get(pos + RECORD_HEADER, key);
+        buffer.get(pos + RECORD_HEADER + keyLength, value);
+        // 時間戳記跨行程沒有意義，不寫入檔案；這裡先以系統時鐘計時，放回快取時再依快取的時鐘重新計時
+        MultiLevelCacheSystem.CacheEntry entry = new MultiLevelCacheSystem.CacheEntry(
+            new String(key, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8),
+            MultiLevelCacheSystem.SYSTEM_CLOCK.getAsLong());
+        entry.accessCount = buffer.getLong(pos + 9);
+        return entry;
+    }
+
+    // ---- 空間管理 ----
+
+    private void ensureCapacity(int length) {
+        if ((long) end + length <= buffer.capacity()) return;
+        long garbage = end - HEADER_SIZE - liveBytes;
+        if (garbage > liveBytes) {
+            compact(length);
+        }
+        long required = (long) end + length;
+        if (required > buffer.capacity()) {
+            if (required > MAX_MAPPED_SIZE) {
+                throw new IllegalStateException("MappedSpillStore 超過 2GB 上限");
+            }
+            // 倍增但不超過上限，接近 2GB 時仍可用完剩下的空間
+            remap(Math.min(MAX_MAPPED_SIZE, Math.max((long) buffer.capacity() * 2, required)));
+        }
+    }
+
+    private void remap(long newSize) {
+        try {
+            buffer.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // 只把每個 key 的最新記錄複製到新檔，再以新檔取代舊檔
+    private void compact(int pending) {
+        Path tmp = path.resolveSibling(path.getFileName() + ".compact");
+        try {
+            FileChannel newChannel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = Math.max(initialSize, (HEADER_SIZE + liveBytes + pending) * 2);
+            MappedByteBuffer target = newChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                Math.min(size, MAX_MAPPED_SIZE));
+            target.putInt(0, MAGIC);
+            target.putInt(4, VERSION);
+
+            int pos = HEADER_SIZE;
+            byte[] copy = new byte[256];
+            for (int slot = 0; slot < offsets.length; slot++) {
+                int from = offsets[slot];
+                if (from == 0) continue;
+                int length = RECORD_HEADER + buffer.getInt(from + 1) + buffer.getInt(from + 5);
+                if (copy.length < length) copy = new byte[length * 2];
+                buffer.get(from, copy, 0, length);
+                target.put(pos, copy, 0, length);
+                offsets[slot] = pos;
+                pos += length;
+            }
+            target.putLong(END_OFFSET, pos);
+            target.force();
+
+            channel.close();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(path.toAbsolutePath().getParent());
+            channel = newChannel;
+            buffer = target;
+            end = pos;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 改名只修改目錄項目，新檔的 force 不包含它；要 fsync 目錄，當機後才保證看得到壓縮後的檔案
+     * Windows 無法以 FileChannel 開啟目錄（NTFS 的中繼資料由檔案系統日誌保護），略過
+     */
+    private static void syncDirectory(Path dir) throws IOException {
+        try (FileChannel dirChannel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            dirChannel.force(true);
+        } catch (AccessDeniedException e) {
+            if (!System.getProperty("os.name").startsWith("Windows")) {
+                throw e;
+            }
+        }
+    }
+
+    // ---- 索引 ----
+
+    // FNV-1a，直接對 UTF-8 位元組計算，掃描檔案時不需要建立字串
+    private static int hashBytes(byte[] bytes) {
+        int h = 0x811C9DC5;
+        for (byte b : bytes) {
+            h = (h ^ (b & 0xFF)) * 0x01000193;
+        }
+        return h;
+    }
+
+    private int hashBytes(int pos, int length) {
+        int h = 0x811C9DC5;
+        for (int i = 0; i < length; i++) {
+            h = (h ^ (buffer.get(pos + i) & 0xFF)) * 0x01000193;
+        }
+        return h;
+    }
+
+    private int home(int hash) {
+        return (hash ^ (hash >>> 16)) & (offsets.length - 1);
+    }
+
+    private int findSlot(int hash, byte[] key) {
+        int mask = offsets.length - 1;
+        for (int i = home(hash); ; i = (i + 1) & mask) {
+            if (offsets[i] == 0) return i;
+            if (hashes[i] == hash && keyEquals(offsets[i], key)) return i;
+        }
+    }
+
+    // 新增或取代 key 的位置；用既有記錄裡的 key 位元組來比對
+    private void index(int hash, int pos, int length) {
+        int keyLength = buffer.getInt(pos + 1);
+        byte[] key = new byte[keyLength];
+        buffer.get(pos + RECORD_HEADER, key);
+        int slot = findSlot(hash, key);
+        if (offsets[slot] == 0) {
+            count++;
+        } else {
+            int old = offsets[slot];
+            liveBytes -= RECORD_HEADER + buffer.getInt(old + 1) + buffer.getInt(old + 5);
+        }
+        hashes[slot] = hash;
+        offsets[slot] = pos;
+        liveBytes += length;
+        if (count * 2 > offsets.length) {
+            resize();
+        }
+    }
+
+    private boolean keyEquals(int pos, byte[] key) {
+        if (buffer.getInt(pos + 1) != key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(pos + RECORD_HEADER + i) != key[i]) return false;
+        }
+        return true;
+    }
+
+    private void resize() {
+        int[] oldHashes = hashes;
+        int[] oldOffsets = offsets;
+        hashes = new int[oldOffsets.length * 2];
+        offsets = new int[oldOffsets.length * 2];
+        int mask = offsets.length - 1;
+        for (int i = 0; i < oldOffsets.length; i++) {
+            if (oldOffsets[i] == 0) continue;
+            int slot = home(oldHashes[i]);
+            while (offsets[slot] != 0) slot = (slot + 1) & mask;
+            hashes[slot] = oldHashes[i];
+            offsets[slot] = oldOffsets[i];
+        }
+    }
+
+    // ---- 示範 ----
+
+    static MultiLevelCacheSystem.MultiLevelCache newCache(MappedSpillStore store) {
+        return MultiLevelCacheSystem.MultiLevelCache.builder()
+            .level(64, 1)
+            .level(256, 3)
+            .level(1024, 10)
+            .spillTo(store, 50)
+            .build();
+    }
+
+    static void readWorkload(MultiLevelCacheSystem.MultiLevelCache cache, int keySpace, int operations, long seed) {
+        Random rand = new Random(seed);
+        for (int i = 0; i < operations; i++) {
+            cache.get("key" + (int) (keySpace * Math.pow(rand.nextDouble(), 3)));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("multilevel-cache", ".store");
+        int keySpace = 50000;
+        try {
+            System.out.println("=== Run 1: fill and spill ===");
+            try (MappedSpillStore store = open(file, 1 << 20)) {
+                MultiLevelCacheSystem.MultiLevelCache cache = newCache(store);
+                for (int i = 0; i < keySpace; i++) {
+                    cache.put("key" + i, "value" + i);
+                }
+                readWorkload(cache, keySpace, 200000, 1);
+                cache.checkpoint();
+                System.out.println(cache.metrics());
+                System.out.printf("Store: %d keys, %d bytes\n", store.size(), store.fileBytes());
+            }
+            System.out.println();
+
+            System.out.println("=== Run 2: restart from file ===");
+            long startTime = System.nanoTime();
+            try (MappedSpillStore store = open(file, 1 << 20)) {
+                long openTime = System.nanoTime() - startTime;
+                startTime = System.nanoTime();
+                MultiLevelCacheSystem.MultiLevelCache cache = newCache(store);
+                long warmTime = System.nanoTime() - startTime;
+                System.out.printf("Scan %d keys: %.2f ms, warm-up: %.2f ms\n",
+                    store.size(), openTime / 1e6, warmTime / 1e6);
+
+                readWorkload(cache, keySpace, 20000, 2);
+                System.out.println(cache.metrics());
+            }
+            System.out.println();
+
+            System.out.println("=== Same reads on a cold cache (no store) ===");
+            MultiLevelCacheSystem.MultiLevelCache cold = MultiLevelCacheSystem.MultiLevelCache.builder()
+                .level(64, 1).level(256, 3).level(1024, 10).build();
+            readWorkload(cold, keySpace, 20000, 2);
+            System.out.println(cold.metrics());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
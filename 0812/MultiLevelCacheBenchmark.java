@@ -0,0 +1,328 @@
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * MultiLevelCache 效能基準測試
+ *
+ * 仿照 JMH 的做法：每組設定先做數輪暖身讓 JIT 編譯完成，再做數輪固定時間的量測，
+ * 回傳值累加到 sink 避免被 JIT 消除；吞吐量與延遲分開量測，延遲逐筆計時後取 p50 / p99。
+ *
+ * 量測矩陣：
+ *   key 分布：Zipfian（θ=0.99）、Uniform、Scan（大範圍循序掃描混合少量熱門 key）
+ *   層級大小：small 2/5/10、medium 64/256/1024、large 1024/4096/16384
+ *   操作：GET、PUT、MIXED（90% GET / 10% PUT）
+ *   淘汰引擎：bucket（目前的 CacheLevel）與 rebuild（每次操作重算整個 priority heap 的舊做法）
+ *
+ * 用法：java MultiLevelCacheBenchmark [分布] [大小] [操作] [引擎]，參數可省略或用 all
+ */
+public class MultiLevelCacheBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURE_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 200_000_000L;
+    private static final int LATENCY_SAMPLES = 20000;
+    private static final int KEY_SPACE = 50000;
+    private static final int STREAM_LENGTH = 1 << 20;
+
+    private static long sink;
+
+    // ---- key 分布 ----
+
+    // YCSB 的 Zipfian 產生器，熱門 key 打散到整個 key 空間，避免熱門 key 都是小號
+    static int[] zipfianStream(int n, double theta, long seed) {
+        Random rand = new Random(seed);
+        double zetan = 0;
+        for (int i = 1; i <= n; i++) zetan += 1.0 / Math.pow(i, theta);
+        double zeta2 = 1 + 1.0 / Math.pow(2, theta);
+        double alpha = 1.0 / (1 - theta);
+        double eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / zetan);
+
+        int[] stream = new int[STREAM_LENGTH];
+        for (int i = 0; i < stream.length; i++) {
+            double u = rand.nextDouble();
+            double uz = u * zetan;
+            long rank;
+            if (uz < 1) rank = 0;
+            else if (uz < zeta2) rank = 1;
+            else rank = (long) (n * Math.pow(eta * u - eta + 1, alpha));
+            stream[i] = (int) Math.floorMod(rank * 0x9E3779B97F4A7C15L, (long) n);
+        }
+        return stream;
+    }
+
+    static int[] uniformStream(int n, long seed) {
+        Random rand = new Random(seed);
+        int[] stream = new int[STREAM_LENGTH];
+        for (int i = 0; i < stream.length; i++) stream[i] = rand.nextInt(n);
+        return stream;
+    }
+
+    // 80% 依序掃過整個 key 空間（不斷把快取洗掉），20% 存取 64 個熱門 key
+    static int[] scanStream(int n, long seed) {
+        Random rand = new Random(seed);
+        int[] stream = new int[STREAM_LENGTH];
+        int cursor = 0;
+        for (int i = 0; i < stream.length; i++) {
+            if (rand.nextInt(5) == 0) {
+                stream[i] = rand.nextInt(64);
+            } else {
+                stream[i] = cursor;
+                cursor = (cursor + 1) % n;
+            }
+        }
+        return stream;
+    }
+
+    // ---- 舊版淘汰引擎：每次操作都清空並重建 priority heap ----
+
+    static class RebuildingCacheLevel implements MultiLevelCacheSystem.CacheTier {
+        final int level;
+        final int capacity;
+        final int accessCost;
+        final LongSupplier clock;
+        final Map<String, MultiLevelCacheSystem.CacheEntry> cache = new HashMap<>();
+        final PriorityQueue<MultiLevelCacheSystem.CacheEntry> priorityHeap =
+            new PriorityQueue<>((a, b) -> Double.compare(a.priority, b.priority));
+
+        RebuildingCacheLevel(int level, int capacity, int accessCost, LongSupplier clock) {
+            this.clock = clock;
+            this.level = level;
+            this.capacity = capacity;
+            this.accessCost = accessCost;
+        }
+
+        public int level() { return level; }
+        public int capacity() { return capacity; }
+        public int accessCost() { return accessCost; }
+        public int size() { return cache.size(); }
+
+        public boolean contains(String key) {
+            return cache.containsKey(key);
+        }
+
+        public MultiLevelCacheSystem.CacheEntry get(String key) {
+            MultiLevelCacheSystem.CacheEntry entry = cache.get(key);
+            if (entry != null) {
+                entry.updateAccess(clock.getAsLong());
+                updatePriorityHeap();
+            }
+            return entry;
+        }
+
+        public String getValue(String key) {
+            MultiLevelCacheSystem.CacheEntry entry = get(key);
+            return entry == null ? null : entry.value;
+        }
+
+        public long accessCount(String key) {
+            MultiLevelCacheSystem.CacheEntry entry = cache.get(key);
+            return entry == null ? 0 : entry.accessCount;
+        }
+
+        public double priorityOf(String key, long currentTime) {
+            MultiLevelCacheSystem.CacheEntry entry = cache.get(key);
+            if (entry == null) return -1;
+            entry.calculatePriority(level, currentTime);
+            return entry.priority;
+        }
+
+        public MultiLevelCacheSystem.CacheEntry take(String key) {
+            MultiLevelCacheSystem.CacheEntry entry = cache.remove(key);
+            updatePriorityHeap();
+            return entry;
+        }
+
+        public void put(MultiLevelCacheSystem.CacheEntry entry) {
+            MultiLevelCacheSystem.CacheEntry existing = cache.get(entry.key);
+            if (existing != null) {
+                existing.value = entry.value;
+                existing.updateAccess(clock.getAsLong());
+            } else {
+                entry.currentLevel = level;
+                cache.put(entry.key, entry);
+            }
+            updatePriorityHeap();
+        }
+
+        public MultiLevelCacheSystem.CacheEntry evict() {
+            updatePriorityHeap();
+            MultiLevelCacheSystem.CacheEntry toEvict = priorityHeap.poll();
+            if (toEvict != null) cache.remove(toEvict.key);
+            return toEvict;
+        }
+
+        public void remove(String key) {
+            cache.remove(key);
+            updatePriorityHeap();
+        }
+
+        public MultiLevelCacheSystem.CacheEntry peekLowest() {
+            updatePriorityHeap();
+            return priorityHeap.peek();
+        }
+
+        public MultiLevelCacheSystem.CacheEntry peekHighest() {
+            updatePriorityHeap();
+            MultiLevelCacheSystem.CacheEntry best = null;
+            for (MultiLevelCacheSystem.CacheEntry entry : priorityHeap) {
+                if (best == null || entry.priority > best.priority) best = entry;
+            }
+            return best;
+        }
+
+        public double averagePriority(long currentTime) {
+            if (cache.isEmpty()) return 0.0;
+            double sum = 0.0;
+            for (MultiLevelCacheSystem.CacheEntry entry : cache.values()) {
+                entry.calculatePriority(level, currentTime);
+                sum += entry.priority;
+            }
+            return sum / cache.size();
+        }
+
+        public long totalAccessCount() {
+            long total = 0;
+            for (MultiLevelCacheSystem.CacheEntry entry : cache.values()) total += entry.accessCount;
+            return total;
+        }
+
+        public List<MultiLevelCacheSystem.CacheEntry> getAllEntries() {
+            return new ArrayList<>(cache.values());
+        }
+
+        void updatePriorityHeap() {
+            priorityHeap.clear();
+            long currentTime = clock.getAsLong();
+            for (MultiLevelCacheSystem.CacheEntry entry : cache.values()) {
+                entry.calculatePriority(level, currentTime);
+                priorityHeap.offer(entry);
+            }
+        }
+    }
+
+    // ---- 量測 ----
+
+    static final String[] KEYS = new String[KEY_SPACE];
+    static {
+        for (int i = 0; i < KEY_SPACE; i++) KEYS[i] = "key" + i;
+    }
+
+    static MultiLevelCacheSystem.MultiLevelCache newCache(int[] sizes, boolean rebuild) {
+        MultiLevelCacheSystem.MultiLevelCache.Builder builder = MultiLevelCacheSystem.MultiLevelCache.builder();
+        int[] costs = {1, 3, 10};
+        for (int i = 0; i < sizes.length; i++) {
+            if (rebuild) {
+                builder.level(sizes[i], costs[i], RebuildingCacheLevel::new);
+            } else {
+                builder.level(sizes[i], costs[i]);
+            }
+        }
+        MultiLevelCacheSystem.MultiLevelCache cache = builder.build();
+        // 先放滿，GET 量測時才有命中
+        int total = sizes[0] + sizes[1] + sizes[2];
+        for (int i = 0; i < total; i++) cache.put(KEYS[i], "value");
+        return cache;
+    }
+
+    // 執行一次操作；op: 0 = GET、1 = PUT、2 = MIXED
+    static void operate(MultiLevelCacheSystem.MultiLevelCache cache, int op, int key, int i) {
+        boolean put = op == 1 || (op == 2 && i % 10 == 0);
+        if (put) {
+            cache.put(KEYS[key], "value");
+        } else {
+            String v = cache.get(KEYS[key]);
+            if (v != null) sink += v.length();
+        }
+    }
+
+    // 一輪固定時間的量測，回傳 ops/s
+    static double iteration(MultiLevelCacheSystem.MultiLevelCache cache, int[] stream, int op, int[] cursor) {
+        long ops = 0;
+        long start = System.nanoTime();
+        long deadline = start + ITERATION_NANOS;
+        long now;
+        do {
+            // 每 64 次操作才檢查一次時間，降低計時本身的成本
+            for (int j = 0; j < 64; j++) {
+                int i = cursor[0]++ & (STREAM_LENGTH - 1);
+                operate(cache, op, stream[i], i);
+            }
+            ops += 64;
+            now = System.nanoTime();
+        } while (now < deadline);
+        return ops / ((now - start) / 1e9);
+    }
+
+    static long[] latencies(MultiLevelCacheSystem.MultiLevelCache cache, int[] stream, int op, int[] cursor) {
+        long[] samples = new long[LATENCY_SAMPLES];
+        long deadline = System.nanoTime() + ITERATION_NANOS * 2;
+        int n = 0;
+        while (n < samples.length && System.nanoTime() < deadline) {
+            int i = cursor[0]++ & (STREAM_LENGTH - 1);
+            long t0 = System.nanoTime();
+            operate(cache, op, stream[i], i);
+            samples[n++] = System.nanoTime() - t0;
+        }
+        long[] result = Arrays.copyOf(samples, n);
+        Arrays.sort(result);
+        return result;
+    }
+
+    static void run(String distribution, int[] stream, String sizeName, int[] sizes,
+                    String opName, int op, boolean rebuild) {
+        MultiLevelCacheSystem.MultiLevelCache cache = newCache(sizes, rebuild);
+        int[] cursor = {0};
+        for (int w = 0; w < WARMUP_ITERATIONS; w++) {
+            iteration(cache, stream, op, cursor);
+        }
+        double[] scores = new double[MEASURE_ITERATIONS];
+        for (int m = 0; m < MEASURE_ITERATIONS; m++) {
+            scores[m] = iteration(cache, stream, op, cursor);
+        }
+        long[] lat = latencies(cache, stream, op, cursor);
+
+        double mean = 0;
+        for (double s : scores) mean += s;
+        mean /= scores.length;
+        double var = 0;
+        for (double s : scores) var += (s - mean) * (s - mean);
+        double stddev = Math.sqrt(var / (scores.length - 1));
+
+        System.out.printf("%-8s %-7s %-6s %-8s %14.0f ± %-10.0f %10d %10d %8.2f\n",
+            distribution, sizeName, opName, rebuild ? "rebuild" : "bucket", mean, stddev,
+            lat[lat.length / 2], lat[(int) (lat.length * 0.99)], cache.metrics().averageCost());
+    }
+
+    static boolean selected(String[] args, int index, String value) {
+        return args.length <= index || args[index].equalsIgnoreCase("all") || args[index].equalsIgnoreCase(value);
+    }
+
+    public static void main(String[] args) {
+        String[] distributions = {"zipfian", "uniform", "scan"};
+        int[][] streams = {
+            zipfianStream(KEY_SPACE, 0.99, 1),
+            uniformStream(KEY_SPACE, 2),
+            scanStream(KEY_SPACE, 3)
+        };
+        String[] sizeNames = {"small", "medium", "large"};
+        int[][] sizes = {{2, 5, 10}, {64, 256, 1024}, {1024, 4096, 16384}};
+        String[] opNames = {"get", "put", "mixed"};
+
+        System.out.printf("%-8s %-7s %-6s %-8s %14s   %-10s %10s %10s %8s\n",
+            "Dist", "Size", "Op", "Engine", "ops/s", "stddev", "p50 ns", "p99 ns", "avgCost");
+        for (int d = 0; d < distributions.length; d++) {
+            if (!selected(args, 0, distributions[d])) continue;
+            for (int s = 0; s < sizes.length; s++) {
+                if (!selected(args, 1, sizeNames[s])) continue;
+                for (int o = 0; o < opNames.length; o++) {
+                    if (!selected(args, 2, opNames[o])) continue;
+                    for (boolean rebuild : new boolean[]{false, true}) {
+                        if (!selected(args, 3, rebuild ? "rebuild" : "bucket")) continue;
+                        run(distributions[d], streams[d], sizeNames[s], sizes[s], opNames[o], o, rebuild);
+                    }
+                }
+            }
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+}
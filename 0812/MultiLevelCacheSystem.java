@@ -1,7 +1,13 @@
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 public class MultiLevelCacheSystem {
     
+    // 預設時間來源；測試時以 Builder.clock 或層級的建構子傳入手動推進的時鐘，只影響那一個快取
+    static final LongSupplier SYSTEM_CLOCK = System::nanoTime;
+    private static final AtomicLong nextSeq = new AtomicLong();
+    
     static class CacheEntry {
         String key;
         String value;
@@ -10,32 +16,54 @@ public class MultiLevelCacheSystem {
         long insertTime;
         int currentLevel;
         double priority;
+        final long seq;
         
-        CacheEntry(String key, String value) {
+        // now 為建立時間，由所屬快取的時鐘提供
+        CacheEntry(String key, String value, long now) {
             this.key = key;
             this.value = value;
             this.accessCount = 1;
-            this.lastAccessTime = System.nanoTime();
-            this.insertTime = System.nanoTime();
+            this.lastAccessTime = now;
+            this.insertTime = this.lastAccessTime;
             this.currentLevel = 1;
             this.priority = 0.0;
+            this.seq = nextSeq.getAndIncrement();
         }
         
-        void updateAccess() {
+        // 由其他層級的資料還原條目，保留原本的存取紀錄與建立順序
+        CacheEntry(String key, String value, long accessCount, long lastAccessTime,
+                   long insertTime, long seq) {
+            this.key = key;
+            this.value = value;
+            this.accessCount = accessCount;
+            this.lastAccessTime = lastAccessTime;
+            this.insertTime = insertTime;
+            this.currentLevel = 1;
+            this.priority = 0.0;
+            this.seq = seq;
+        }
+        
+        void updateAccess(long now) {
             this.accessCount++;
-            this.lastAccessTime = System.nanoTime();
+            this.lastAccessTime = now;
         }
         
         void calculatePriority(int level, long currentTime) {
+            this.priority = priorityOf(accessCount, lastAccessTime, insertTime, level, currentTime);
+        }
+        
+        static double priorityOf(long accessCount, long lastAccessTime, long insertTime,
+                                 int level, long currentTime) {
             double frequency = (double) accessCount;
             double recency = 1.0 / Math.max(1, (currentTime - lastAccessTime) / 1000000000.0);
             double age = 1.0 / Math.max(1, (currentTime - insertTime) / 1000000000.0);
             
-            this.priority = frequency * 0.5 + recency * 0.3 + age * 0.2;
+            double priority = frequency * 0.5 + recency * 0.3 + age * 0.2;
             
             if (level > 1) {
-                this.priority *= 0.8;
+                priority *= 0.8;
             }
+            return priority;
         }
         
         @Override
@@ -45,139 +73,573 @@ public class MultiLevelCacheSystem {
         }
     }
     
-    static class CacheLevel {
+    // 同一存取次數內依 lastAccessTime 排序，相同時間再以建立順序區分
+    static final Comparator<CacheEntry> BY_LAST_ACCESS =
+        Comparator.<CacheEntry>comparingLong(e -> e.lastAccessTime).thenComparingLong(e -> e.seq);
+    static final Comparator<CacheEntry> BY_INSERT_TIME =
+        Comparator.<CacheEntry>comparingLong(e -> e.insertTime).thenComparingLong(e -> e.seq);
+    
+    /**
+     * MultiLevelCache 中單一層級需要提供的操作。
+     * get / take / peekLowest / peekHighest 回傳的條目可能是層內資料的複本，
+     * 要寫回時必須再呼叫 put；命中路徑只用 getValue / accessCount / priorityOf，不需要建立條目。
+     */
+    interface CacheTier {
+        int level();
+        int capacity();
+        int accessCost();
+        int size();
+        boolean contains(String key);
+        CacheEntry get(String key);
+        
+        // 記錄一次存取並回傳值，不在這一層時回傳 null
+        String getValue(String key);
+        
+        // 不在這一層時回傳 0
+        long accessCount(String key);
+        
+        // 條目在 currentTime 的優先權，不在這一層時回傳 -1
+        double priorityOf(String key, long currentTime);
+        
+        // 移出並回傳條目，不在這一層時回傳 null
+        CacheEntry take(String key);
+        void put(CacheEntry entry);
+        CacheEntry evict();
+        void remove(String key);
+        CacheEntry peekLowest();
+        CacheEntry peekHighest();
+        double averagePriority(long currentTime);
+        
+        // 層內所有條目的存取次數總和，用來在 O(1) 內夾出平均優先權的範圍
+        long totalAccessCount();
+        List<CacheEntry> getAllEntries();
+        
+        default boolean isFull() {
+            return size() >= capacity();
+        }
+        
+        default boolean isEmpty() {
+            return size() == 0;
+        }
+    }
+    
+    interface TierFactory {
+        CacheTier create(int level, int capacity, int accessCost, LongSupplier clock);
+    }
+    
+    /**
+     * 最後一層之下的持久化儲存：接收被淘汰的條目，快取未命中時再從這裡讀回。
+     * 存放的是條目的最新寫回版本；同一個 key 若仍在快取中，以快取內容為準。
+     */
+    interface SpillStore {
+        void spill(CacheEntry entry);
+        
+        // 找不到時回傳 null
+        CacheEntry load(String key);
+        
+        // 依 accessCount 由高到低回傳最多 limit 筆，用於啟動時預熱
+        List<CacheEntry> hottest(int limit);
+    }
+    
+    /**
+     * 以存取次數分桶的淘汰引擎。
+     *
+     * priority = frequency*0.5 + recency*0.3 + age*0.2，其中 recency 與 age 都落在 (0, 1]，
+     * 因此存取次數較少的條目優先權必定較低，淘汰對象一定在最小的次數桶中。
+     * 桶內依 lastAccessTime 由舊到新掃描，並用「最舊插入時間」算出的下界提早停止，
+     * 不再需要每次操作都重建整個 heap。
+     *
+     * get / put / remove：O(log K)；evict：O(log K + 掃描到的條目數)。
+     * 優先權相同時淘汰最久未使用的條目。
+     */
+    static class CacheLevel implements CacheTier {
         int level;
         int capacity;
         int accessCost;
         Map<String, CacheEntry> cache;
-        PriorityQueue<CacheEntry> priorityHeap;
+        TreeMap<Long, TreeSet<CacheEntry>> frequencyBuckets;
+        TreeSet<CacheEntry> byInsertTime;
+        final LongSupplier clock;
+        long totalAccessCount;
         
         CacheLevel(int level, int capacity, int accessCost) {
+            this(level, capacity, accessCost, SYSTEM_CLOCK);
+        }
+        
+        CacheLevel(int level, int capacity, int accessCost, LongSupplier clock) {
+            this.clock = clock;
             this.level = level;
             this.capacity = capacity;
             this.accessCost = accessCost;
             this.cache = new HashMap<>();
-            this.priorityHeap = new PriorityQueue<>((a, b) -> Double.compare(a.priority, b.priority));
+            this.frequencyBuckets = new TreeMap<>();
+            this.byInsertTime = new TreeSet<>(BY_INSERT_TIME);
+        }
+        
+        public int level() {
+            return level;
+        }
+        
+        public int capacity() {
+            return capacity;
         }
         
-        boolean contains(String key) {
+        public int accessCost() {
+            return accessCost;
+        }
+        
+        public int size() {
+            return cache.size();
+        }
+        
+        public boolean contains(String key) {
             return cache.containsKey(key);
         }
         
-        CacheEntry get(String key) {
+        public CacheEntry get(String key) {
             CacheEntry entry = cache.get(key);
             if (entry != null) {
-                entry.updateAccess();
-                updatePriorityHeap();
+                touch(entry);
+            }
+            return entry;
+        }
+        
+        public String getValue(String key) {
+            CacheEntry entry = get(key);
+            return entry == null ? null : entry.value;
+        }
+        
+        public long accessCount(String key) {
+            CacheEntry entry = cache.get(key);
+            return entry == null ? 0 : entry.accessCount;
+        }
+        
+        public double priorityOf(String key, long currentTime) {
+            CacheEntry entry = cache.get(key);
+            if (entry == null) return -1;
+            entry.calculatePriority(level, currentTime);
+            return entry.priority;
+        }
+        
+        public CacheEntry take(String key) {
+            CacheEntry entry = cache.remove(key);
+            if (entry != null) {
+                unlink(entry);
             }
             return entry;
         }
         
-        void put(CacheEntry entry) {
-            if (cache.containsKey(entry.key)) {
-                cache.get(entry.key).value = entry.value;
-                cache.get(entry.key).updateAccess();
+        public void put(CacheEntry entry) {
+            CacheEntry existing = cache.get(entry.key);
+            if (existing != null) {
+                existing.value = entry.value;
+                touch(existing);
             } else {
                 entry.currentLevel = level;
                 cache.put(entry.key, entry);
+                link(entry);
             }
-            updatePriorityHeap();
         }
         
-        CacheEntry evict() {
-            updatePriorityHeap();
-            if (!priorityHeap.isEmpty()) {
-                CacheEntry toEvict = priorityHeap.poll();
+        public CacheEntry evict() {
+            CacheEntry toEvict = peekLowest();
+            if (toEvict != null) {
                 cache.remove(toEvict.key);
-                return toEvict;
+                unlink(toEvict);
+            }
+            return toEvict;
+        }
+        
+        // 存取會改變排序鍵，必須先移出再放回對應的桶
+        private void touch(CacheEntry entry) {
+            removeFromBucket(entry);
+            entry.updateAccess(clock.getAsLong());
+            totalAccessCount++;
+            frequencyBuckets.computeIfAbsent(entry.accessCount, c -> new TreeSet<>(BY_LAST_ACCESS)).add(entry);
+        }
+        
+        private void link(CacheEntry entry) {
+            frequencyBuckets.computeIfAbsent(entry.accessCount, c -> new TreeSet<>(BY_LAST_ACCESS)).add(entry);
+            byInsertTime.add(entry);
+            totalAccessCount += entry.accessCount;
+        }
+        
+        private void unlink(CacheEntry entry) {
+            removeFromBucket(entry);
+            byInsertTime.remove(entry);
+            totalAccessCount -= entry.accessCount;
+        }
+        
+        private void removeFromBucket(CacheEntry entry) {
+            TreeSet<CacheEntry> bucket = frequencyBuckets.get(entry.accessCount);
+            bucket.remove(entry);
+            if (bucket.isEmpty()) {
+                frequencyBuckets.remove(entry.accessCount);
             }
-            return null;
         }
         
-        boolean isFull() {
-            return cache.size() >= capacity;
+        // 找出目前優先權最低的條目（即下一個被淘汰者），並更新其 priority 欄位
+        public CacheEntry peekLowest() {
+            if (cache.isEmpty()) return null;
+            long currentTime = clock.getAsLong();
+            long oldestInsert = byInsertTime.first().insertTime;
+            Map.Entry<Long, TreeSet<CacheEntry>> bucket = frequencyBuckets.firstEntry();
+            long frequency = bucket.getKey();
+            
+            CacheEntry best = null;
+            for (CacheEntry entry : bucket.getValue()) {
+                // 之後的條目 lastAccessTime 只會更新，age 不會低於最舊插入者；
+                // 只存取過一次的條目 insertTime 等於 lastAccessTime，下界可以更緊
+                long insertFloor = frequency == 1 ? entry.lastAccessTime : oldestInsert;
+                double lowerBound = CacheEntry.priorityOf(frequency, entry.lastAccessTime, insertFloor,
+                                                          level, currentTime);
+                if (best != null && lowerBound >= best.priority) break;
+                entry.calculatePriority(level, currentTime);
+                if (best == null || entry.priority < best.priority) {
+                    best = entry;
+                }
+            }
+            return best;
         }
         
-        void updatePriorityHeap() {
-            priorityHeap.clear();
-            long currentTime = System.nanoTime();
+        // 找出目前優先權最高的條目，並更新其 priority 欄位
+        public CacheEntry peekHighest() {
+            if (cache.isEmpty()) return null;
+            long currentTime = clock.getAsLong();
+            long newestInsert = byInsertTime.last().insertTime;
+            Map.Entry<Long, TreeSet<CacheEntry>> bucket = frequencyBuckets.lastEntry();
+            long frequency = bucket.getKey();
+            
+            CacheEntry best = null;
+            for (CacheEntry entry : bucket.getValue().descendingSet()) {
+                double upperBound = CacheEntry.priorityOf(frequency, entry.lastAccessTime,
+                                                          Math.min(newestInsert, entry.lastAccessTime),
+                                                          level, currentTime);
+                if (best != null && upperBound <= best.priority) break;
+                entry.calculatePriority(level, currentTime);
+                if (best == null || entry.priority > best.priority) {
+                    best = entry;
+                }
+            }
+            return best;
+        }
+        
+        // 重新計算所有條目的 priority，只供顯示與統計使用
+        void refreshPriorities() {
+            long currentTime = clock.getAsLong();
             for (CacheEntry entry : cache.values()) {
                 entry.calculatePriority(level, currentTime);
-                priorityHeap.offer(entry);
             }
         }
         
-        List<CacheEntry> getAllEntries() {
+        // 掃描整層 O(K)，只供統計使用；不改寫條目的 priority 欄位
+        public double averagePriority(long currentTime) {
+            if (cache.isEmpty()) return 0.0;
+            double sum = 0.0;
+            for (CacheEntry entry : cache.values()) {
+                sum += CacheEntry.priorityOf(entry.accessCount, entry.lastAccessTime, entry.insertTime,
+                                             level, currentTime);
+            }
+            return sum / cache.size();
+        }
+        
+        public long totalAccessCount() {
+            return totalAccessCount;
+        }
+        
+        public List<CacheEntry> getAllEntries() {
             return new ArrayList<>(cache.values());
         }
         
-        void remove(String key) {
-            cache.remove(key);
-            updatePriorityHeap();
+        public void remove(String key) {
+            CacheEntry entry = cache.remove(key);
+            if (entry != null) {
+                unlink(entry);
+            }
         }
         
         @Override
         public String toString() {
-            updatePriorityHeap();
+            refreshPriorities();
             List<CacheEntry> sorted = new ArrayList<>(cache.values());
             sorted.sort((a, b) -> Double.compare(b.priority, a.priority));
             return "L" + level + "(" + cache.size() + "/" + capacity + "): " + sorted;
         }
     }
     
+    /**
+     * 快取統計：只在各操作中累加計數器，讀取時複製一份，不會影響存取路徑。
+     * promotions / demotions 以「移入 / 移出」該層計算，evictions 為被移出整個快取的條目數。
+     */
+    static class CacheMetrics {
+        final long[] hits;
+        final long[] misses;
+        final long[] promotions;
+        final long[] demotions;
+        final long[] evictions;
+        final int[] accessCosts;
+        long totalAccesses;
+        long totalCost;
+        long notFound;
+        long storeHits;
+        long spills;
+        long warmed;
+        
+        CacheMetrics(int[] accessCosts) {
+            int n = accessCosts.length;
+            this.accessCosts = accessCosts.clone();
+            hits = new long[n];
+            misses = new long[n];
+            promotions = new long[n];
+            demotions = new long[n];
+            evictions = new long[n];
+        }
+        
+        CacheMetrics copy() {
+            CacheMetrics c = new CacheMetrics(accessCosts);
+            c.add(this);
+            return c;
+        }
+        
+        // 合併另一份相同層數的統計（例如多個 stripe 加總）
+        void add(CacheMetrics other) {
+            for (int i = 0; i < hits.length; i++) {
+                hits[i] += other.hits[i];
+                misses[i] += other.misses[i];
+                promotions[i] += other.promotions[i];
+                demotions[i] += other.demotions[i];
+                evictions[i] += other.evictions[i];
+            }
+            totalAccesses += other.totalAccesses;
+            totalCost += other.totalCost;
+            notFound += other.notFound;
+            storeHits += other.storeHits;
+            spills += other.spills;
+            warmed += other.warmed;
+        }
+        
+        int levelCount() {
+            return hits.length;
+        }
+        
+        // 第 level 層（從 1 開始）的命中率：在該層命中 / 查詢到達該層的次數
+        double hitRatio(int level) {
+            long lookups = hits[level - 1] + misses[level - 1];
+            return lookups > 0 ? (double) hits[level - 1] / lookups : 0.0;
+        }
+        
+        double overallHitRatio() {
+            return totalAccesses > 0 ? (double) (totalAccesses - notFound) / totalAccesses : 0.0;
+        }
+        
+        double averageCost() {
+            return totalAccesses > 0 ? (double) totalCost / totalAccesses : 0.0;
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < hits.length; i++) {
+                sb.append(String.format("L%d (cost %d): hits=%d, misses=%d, hitRatio=%.2f, " +
+                    "promotions=%d, demotions=%d, evictions=%d\n",
+                    i + 1, accessCosts[i], hits[i], misses[i], hitRatio(i + 1),
+                    promotions[i], demotions[i], evictions[i]));
+            }
+            if (storeHits + spills + warmed > 0) {
+                sb.append(String.format("Store: hits=%d, spills=%d, warmed=%d\n", storeHits, spills, warmed));
+            }
+            sb.append(String.format("Accesses=%d, notFound=%d, overallHitRatio=%.2f, avgCost=%.2f",
+                totalAccesses, notFound, overallHitRatio(), averageCost()));
+            return sb.toString();
+        }
+    }
+    
     static class MultiLevelCache {
-        private CacheLevel[] levels;
-        private long totalAccesses;
-        private long totalCost;
+        private CacheTier[] levels;
+        private final LongSupplier clock;
+        private CacheMetrics metrics;
+        private SpillStore store;
+        private int storeCost;
+        
+        /**
+         * 設定任意層數的快取，依加入順序為 L1、L2、...
+         * 例：MultiLevelCache.builder().level(2, 1).level(5, 3).level(10, 10).build()
+         */
+        static class Builder {
+            private final List<int[]> specs = new ArrayList<>();
+            private final List<TierFactory> factories = new ArrayList<>();
+            private SpillStore store;
+            private int storeCost;
+            private LongSupplier clock = SYSTEM_CLOCK;
+            
+            // 這個快取（含各層）使用的時間來源
+            Builder clock(LongSupplier clock) {
+                this.clock = Objects.requireNonNull(clock);
+                return this;
+            }
+            
+            Builder level(int capacity, int accessCost) {
+                return level(capacity, accessCost, CacheLevel::new);
+            }
+            
+            // 以自訂的層級實作建立這一層，例如容量很大的底層
+            Builder level(int capacity, int accessCost, TierFactory factory) {
+                if (capacity <= 0) {
+                    throw new IllegalArgumentException("容量必須為正數: " + capacity);
+                }
+                if (accessCost < 0) {
+                    throw new IllegalArgumentException("存取成本不可為負數: " + accessCost);
+                }
+                specs.add(new int[]{capacity, accessCost});
+                factories.add(factory);
+                return this;
+            }
+            
+            // 最後一層淘汰的條目寫入 store；建立時會先用 store 中最常存取的條目預熱各層
+            Builder spillTo(SpillStore store, int accessCost) {
+                this.store = store;
+                this.storeCost = accessCost;
+                return this;
+            }
+            
+            MultiLevelCache build() {
+                MultiLevelCache cache = new MultiLevelCache(buildLevels(), clock);
+                if (store != null) {
+                    cache.store = store;
+                    cache.storeCost = storeCost;
+                    cache.warmUp(store.hottest(cache.totalCapacity()));
+                }
+                return cache;
+            }
+            
+            private CacheTier[] buildLevels() {
+                if (specs.isEmpty()) {
+                    throw new IllegalStateException("至少需要一個層級");
+                }
+                CacheTier[] levels = new CacheTier[specs.size()];
+                for (int i = 0; i < levels.length; i++) {
+                    levels[i] = factories.get(i).create(i + 1, specs.get(i)[0], specs.get(i)[1], clock);
+                }
+                return levels;
+            }
+        }
+        
+        static Builder builder() {
+            return new Builder();
+        }
         
         public MultiLevelCache() {
-            levels = new CacheLevel[3];
-            levels[0] = new CacheLevel(1, 2, 1);
-            levels[1] = new CacheLevel(2, 5, 3);
-            levels[2] = new CacheLevel(3, 10, 10);
-            totalAccesses = 0;
-            totalCost = 0;
+            this(2, 5, 10);
+        }
+        
+        MultiLevelCache(int l1Capacity, int l2Capacity, int l3Capacity) {
+            this(builder().level(l1Capacity, 1).level(l2Capacity, 3).level(l3Capacity, 10).buildLevels(), SYSTEM_CLOCK);
+        }
+        
+        private MultiLevelCache(CacheTier[] levels, LongSupplier clock) {
+            this.levels = levels;
+            this.clock = clock;
+            int[] costs = new int[levels.length];
+            for (int i = 0; i < levels.length; i++) {
+                costs[i] = levels[i].accessCost();
+            }
+            this.metrics = new CacheMetrics(costs);
         }
         
         public String get(String key) {
-            totalAccesses++;
+            metrics.totalAccesses++;
             
-            for (CacheLevel level : levels) {
+            for (int i = 0; i < levels.length; i++) {
+                CacheTier level = levels[i];
                 if (level.contains(key)) {
-                    totalCost += level.accessCost;
-                    CacheEntry entry = level.get(key);
-                    
-                    promoteIfNeeded(entry);
+                    metrics.hits[i]++;
+                    metrics.totalCost += level.accessCost();
+                    String value = level.getValue(key);
                     
-                    System.out.printf("GET %s from L%d (cost: %d) -> %s\n", 
-                        key, level.level, level.accessCost, entry.value);
-                    return entry.value;
+                    promoteIfNeeded(i, key);
+                    return value;
                 }
+                metrics.misses[i]++;
             }
             
-            System.out.printf("GET %s -> NOT FOUND\n", key);
+            if (store != null) {
+                CacheEntry stored = store.load(key);
+                if (stored != null) {
+                    metrics.storeHits++;
+                    metrics.totalCost += storeCost;
+                    restamp(stored);
+                    stored.updateAccess(clock.getAsLong());
+                    insertNewEntry(stored);
+                    return stored.value;
+                }
+            }
+            
+            metrics.notFound++;
             return null;
         }
         
+        // 依 accessCount 由高到低依序填滿 L1、L2、...
+        private void warmUp(List<CacheEntry> entries) {
+            int i = 0;
+            for (CacheTier level : levels) {
+                while (i < entries.size() && !level.isFull()) {
+                    CacheEntry entry = entries.get(i++);
+                    if (contains(entry.key)) continue;
+                    restamp(entry);
+                    level.put(entry);
+                    metrics.warmed++;
+                }
+            }
+        }
+        
+        // store 讀回的條目不帶有意義的時間戳記，改以這個快取的時鐘重新計時
+        private void restamp(CacheEntry entry) {
+            entry.lastAccessTime = clock.getAsLong();
+            entry.insertTime = entry.lastAccessTime;
+        }
+        
+        private boolean contains(String key) {
+            for (CacheTier level : levels) {
+                if (level.contains(key)) return true;
+            }
+            return false;
+        }
+        
+        // 把所有層級的條目寫回 store（例如關閉前），快取內容不變
+        void checkpoint() {
+            if (store == null) return;
+            for (CacheTier level : levels) {
+                for (CacheEntry entry : level.getAllEntries()) {
+                    store.spill(entry);
+                }
+            }
+        }
+        
+        // 回傳目前統計的複本，成本為 O(層數)
+        CacheMetrics metrics() {
+            return metrics.copy();
+        }
+        
+        int levelCount() {
+            return levels.length;
+        }
+        
         public void put(String key, String value) {
-            CacheEntry newEntry = new CacheEntry(key, value);
+            CacheEntry newEntry = new CacheEntry(key, value, clock.getAsLong());
             
-            for (CacheLevel level : levels) {
+            for (CacheTier level : levels) {
                 if (level.contains(key)) {
                     level.put(newEntry);
-                    System.out.printf("PUT %s:%s updated in L%d\n", key, value, level.level);
                     return;
                 }
             }
             
             insertNewEntry(newEntry);
             rebalanceLevels();
-            
-            System.out.printf("PUT %s:%s inserted\n", key, value);
         }
         
         private void insertNewEntry(CacheEntry entry) {
-            CacheLevel targetLevel = levels[0];
+            CacheTier targetLevel = levels[0];
             
             if (!targetLevel.isFull()) {
                 targetLevel.put(entry);
@@ -186,7 +648,7 @@ public class MultiLevelCacheSystem {
             
             for (int i = 1; i < levels.length; i++) {
                 if (!levels[i].isFull()) {
-                    entry.currentLevel = levels[i].level;
+                    entry.currentLevel = levels[i].level();
                     levels[i].put(entry);
                     return;
                 }
@@ -194,122 +656,160 @@ public class MultiLevelCacheSystem {
             
             CacheEntry evicted = levels[levels.length - 1].evict();
             if (evicted != null) {
-                System.out.printf("Evicted %s from L%d\n", evicted.key, levels.length);
+                metrics.evictions[levels.length - 1]++;
+                if (store != null) {
+                    store.spill(evicted);
+                    metrics.spills++;
+                }
             }
             
-            entry.currentLevel = levels[levels.length - 1].level;
+            entry.currentLevel = levels[levels.length - 1].level();
             levels[levels.length - 1].put(entry);
         }
         
-        private void promoteIfNeeded(CacheEntry entry) {
-            int currentLevelIndex = entry.currentLevel - 1;
-            
+        // 命中後檢查是否要升到上一層；只在真的搬移時才從層內取出條目
+        // 規則同基準版：存取至少 3 次且優先權高於上一層的平均優先權才升級，
+        // 上一層已滿時再與其中優先權最低的條目比較，較高才交換
+        private void promoteIfNeeded(int currentLevelIndex, String key) {
             if (currentLevelIndex == 0) return;
             
-            long currentTime = System.nanoTime();
-            entry.calculatePriority(entry.currentLevel, currentTime);
+            CacheTier currentLevel = levels[currentLevelIndex];
+            if (currentLevel.accessCount(key) < 3) return;
+            
+            long currentTime = clock.getAsLong();
+            double priority = currentLevel.priorityOf(key, currentTime);
             
-            boolean shouldPromote = entry.accessCount >= 3 && 
-                                  (entry.priority > getAveragePriority(currentLevelIndex - 1));
+            CacheTier upperLevel = levels[currentLevelIndex - 1];
+            if (!aboveAveragePriority(upperLevel, priority, currentTime)) return;
             
-            if (shouldPromote && !levels[currentLevelIndex - 1].isFull()) {
-                levels[currentLevelIndex].remove(entry.key);
+            if (!upperLevel.isFull()) {
+                CacheEntry entry = currentLevel.take(key);
                 entry.currentLevel--;
-                levels[currentLevelIndex - 1].put(entry);
-                
-                System.out.printf("Promoted %s from L%d to L%d\n", 
-                    entry.key, currentLevelIndex + 1, currentLevelIndex);
-            } else if (shouldPromote && levels[currentLevelIndex - 1].isFull()) {
-                CacheLevel upperLevel = levels[currentLevelIndex - 1];
-                CacheEntry victim = getLowestPriorityEntry(upperLevel);
-                
-                if (victim != null && entry.priority > victim.priority) {
-                    levels[currentLevelIndex].remove(entry.key);
-                    upperLevel.remove(victim.key);
-                    
-                    entry.currentLevel--;
-                    victim.currentLevel++;
-                    
-                    levels[currentLevelIndex - 1].put(entry);
-                    levels[currentLevelIndex].put(victim);
-                    
-                    System.out.printf("Swapped %s(L%d) with %s(L%d)\n", 
-                        entry.key, currentLevelIndex, victim.key, currentLevelIndex + 1);
-                }
+                upperLevel.put(entry);
+                metrics.promotions[currentLevelIndex - 1]++;
+                return;
             }
+            
+            CacheEntry victim = getLowestPriorityEntry(upperLevel);
+            if (victim == null || priority <= victim.priority) return;
+            
+            CacheEntry entry = currentLevel.take(key);
+            upperLevel.remove(victim.key);
+            entry.currentLevel--;
+            victim.currentLevel++;
+            
+            upperLevel.put(entry);
+            currentLevel.put(victim);
+            metrics.promotions[currentLevelIndex - 1]++;
+            metrics.demotions[currentLevelIndex - 1]++;
         }
         
-        private double getAveragePriority(int levelIndex) {
-            CacheLevel level = levels[levelIndex];
-            if (level.cache.isEmpty()) return 0.0;
-            
-            long currentTime = System.nanoTime();
-            double sum = 0.0;
-            for (CacheEntry entry : level.cache.values()) {
-                entry.calculatePriority(level.level, currentTime);
-                sum += entry.priority;
-            }
-            return sum / level.cache.size();
+        /**
+         * priority 是否高於 level 的平均優先權
+         * recency 與 age 都落在 (0, 1]，平均優先權介於 係數 × 0.5 × 平均次數 與 係數 × (0.5 × 平均次數 + 0.5) 之間，
+         * 由存取次數總和 O(1) 就能判斷大多數情況；落在這個範圍內才掃描整層算出平均，結果與每次都掃描相同
+         */
+        private static boolean aboveAveragePriority(CacheTier level, double priority, long currentTime) {
+            int n = level.size();
+            if (n == 0) return priority > 0.0;
+            double factor = level.level() > 1 ? 0.8 : 1.0;
+            double base = 0.5 * level.totalAccessCount() / n;
+            // 預留浮點誤差，邊界附近一律交給精確計算
+            double slack = 1e-9 * (base + 1);
+            if (priority > factor * (base + 0.5) + slack) return true;
+            if (priority < factor * base - slack) return false;
+            return priority > level.averagePriority(currentTime);
         }
         
-        private CacheEntry getLowestPriorityEntry(CacheLevel level) {
-            level.updatePriorityHeap();
-            return level.priorityHeap.isEmpty() ? null : level.priorityHeap.peek();
+        private CacheEntry getLowestPriorityEntry(CacheTier level) {
+            return level.peekLowest();
         }
         
         private void rebalanceLevels() {
             for (int i = 1; i < levels.length; i++) {
-                CacheLevel currentLevel = levels[i];
-                CacheLevel upperLevel = levels[i - 1];
+                CacheTier currentLevel = levels[i];
+                CacheTier upperLevel = levels[i - 1];
                 
-                if (currentLevel.cache.isEmpty() || upperLevel.isFull()) continue;
+                if (currentLevel.isEmpty() || upperLevel.isFull()) continue;
                 
-                currentLevel.updatePriorityHeap();
-                if (currentLevel.priorityHeap.isEmpty()) continue;
+                // 優先權由存取次數主導，最高優先權者若存取不足 2 次，其他條目也不會符合
+                CacheEntry candidate = currentLevel.peekHighest();
+                if (candidate == null || candidate.accessCount < 2) continue;
                 
-                List<CacheEntry> candidates = new ArrayList<>();
-                for (CacheEntry entry : currentLevel.priorityHeap) {
-                    candidates.add(entry);
-                }
-                candidates.sort((a, b) -> Double.compare(b.priority, a.priority));
-                
-                for (CacheEntry candidate : candidates) {
-                    if (upperLevel.isFull()) break;
-                    if (candidate.accessCount >= 2) {
-                        currentLevel.remove(candidate.key);
-                        candidate.currentLevel--;
-                        upperLevel.put(candidate);
-                        
-                        System.out.printf("Rebalanced: moved %s from L%d to L%d\n", 
-                            candidate.key, i + 1, i);
-                        break;
-                    }
+                currentLevel.remove(candidate.key);
+                candidate.currentLevel--;
+                upperLevel.put(candidate);
+                metrics.promotions[i - 1]++;
+            }
+        }
+        
+        // 在鎖外已經服務的 L1 命中：只計入統計，不論 key 現在是否還在 L1
+        void recordL1Hits(long count) {
+            metrics.totalAccesses += count;
+            metrics.hits[0] += count;
+            metrics.totalCost += count * levels[0].accessCost();
+        }
+        
+        // 補記 L1 命中的存取次數與時間（供淘汰判斷），不計入統計；key 已不在 L1 時回傳 false
+        boolean touchL1(String key) {
+            CacheTier top = levels[0];
+            if (!top.contains(key)) return false;
+            top.getValue(key);
+            return true;
+        }
+        
+        Map<String, String> l1Snapshot() {
+            Map<String, String> snapshot = new HashMap<>();
+            for (CacheEntry entry : levels[0].getAllEntries()) {
+                snapshot.put(entry.key, entry.value);
+            }
+            return snapshot;
+        }
+        
+        // 依層級順序列出所有 key，同一個 key 出現兩次代表層級搬移出錯
+        List<String> allKeys() {
+            List<String> keys = new ArrayList<>();
+            for (CacheTier level : levels) {
+                for (CacheEntry entry : level.getAllEntries()) {
+                    keys.add(entry.key);
                 }
             }
+            return keys;
+        }
+        
+        int totalCapacity() {
+            int sum = 0;
+            for (CacheTier level : levels) sum += level.capacity();
+            return sum;
         }
         
         public void printStatus() {
             System.out.println("\n=== Cache Status ===");
-            for (CacheLevel level : levels) {
+            for (CacheTier level : levels) {
                 System.out.println(level);
             }
             System.out.printf("Total Accesses: %d, Total Cost: %d, Avg Cost: %.2f\n", 
-                totalAccesses, totalCost, totalAccesses > 0 ? (double)totalCost/totalAccesses : 0.0);
+                metrics.totalAccesses, metrics.totalCost, metrics.averageCost());
             System.out.println();
         }
         
         public void printStatistics() {
             System.out.println("\n=== Detailed Statistics ===");
             for (int i = 0; i < levels.length; i++) {
-                CacheLevel level = levels[i];
+                CacheTier level = levels[i];
                 System.out.printf("Level %d: %d/%d entries, Cost per access: %d\n", 
-                    i + 1, level.cache.size(), level.capacity, level.accessCost);
+                    i + 1, level.size(), level.capacity(), level.accessCost());
                 
-                if (!level.cache.isEmpty()) {
-                    level.updatePriorityHeap();
-                    System.out.println("  Entries: " + level.getAllEntries());
+                if (!level.isEmpty()) {
+                    List<CacheEntry> entries = level.getAllEntries();
+                    long currentTime = clock.getAsLong();
+                    for (CacheEntry entry : entries) {
+                        entry.calculatePriority(level.level(), currentTime);
+                    }
+                    System.out.println("  Entries: " + entries);
                 }
             }
+            System.out.println(metrics);
             System.out.println();
         }
     }
@@ -353,6 +853,31 @@ public class MultiLevelCacheSystem {
             cache.get("7");
         }
         cache.printStatus();
+        System.out.println(cache.metrics());
+        System.out.println();
+    }
+    
+    public static void testCustomTopology() {
+        System.out.println("=== Custom Topology Test ===");
+        MultiLevelCache cache = MultiLevelCache.builder()
+            .level(4, 1)
+            .level(16, 2)
+            .level(64, 5)
+            .level(256, 20)
+            .build();
+        
+        Random rand = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            // 偏斜分布：小號 key 較常被存取
+            int k = (int) (300 * Math.pow(rand.nextDouble(), 3));
+            if (rand.nextInt(4) == 0) {
+                cache.put("key" + k, "value" + i);
+            } else {
+                cache.get("key" + k);
+            }
+        }
+        System.out.println(cache.metrics());
+        System.out.println();
     }
     
     public static void testPerformanceComparison() {
@@ -395,6 +920,245 @@ public class MultiLevelCacheSystem {
         multiCache.printStatistics();
     }
     
+    // 以手動推進的時鐘比對新淘汰引擎與「全部重算 priority 取最小值」的結果
+    public static void testEvictionEquivalence() {
+        System.out.println("=== Eviction Equivalence Test ===");
+        long[] now = {0};
+        LongSupplier manual = () -> now[0];
+        
+        Random rand = new Random(7);
+        int mismatches = 0;
+        int evictions = 0;
+        for (int round = 0; round < 200; round++) {
+            CacheLevel level = new CacheLevel(1 + rand.nextInt(3), 64, 1, manual);
+            for (int op = 0; op < 400; op++) {
+                // 時鐘有時停住、有時前進數秒，讓 recency / age 兩項都會影響結果
+                if (rand.nextInt(4) == 0) {
+                    now[0] += rand.nextInt(3000) * 1000000L;
+                }
+                String key = "k" + rand.nextInt(100);
+                int action = rand.nextInt(10);
+                if (action < 4) {
+                    level.get(key);
+                } else if (action < 7 || !level.isFull()) {
+                    if (level.isFull() && !level.contains(key)) {
+                        CacheEntry expected = referenceVictim(level);
+                        CacheEntry actual = level.evict();
+                        evictions++;
+                        if (expected != actual) mismatches++;
+                    }
+                    level.put(new CacheEntry(key, "v" + op, now[0]));
+                } else {
+                    level.remove(key);
+                }
+            }
+        }
+        System.out.printf("Evictions checked: %d, mismatches: %d\n", evictions, mismatches);
+        
+        for (int capacity : new int[]{1000, 10000, 100000}) {
+            CacheLevel level = new CacheLevel(2, capacity, 1);
+            for (int i = 0; i < capacity; i++) {
+                level.put(new CacheEntry("key" + i, "value" + i, System.nanoTime()));
+            }
+            long startTime = System.nanoTime();
+            for (int i = 0; i < 100000; i++) {
+                level.get("key" + rand.nextInt(capacity));
+                if (i % 10 == 0) {
+                    level.evict();
+                    level.put(new CacheEntry("new" + i, "value" + i, System.nanoTime()));
+                }
+            }
+            long elapsed = System.nanoTime() - startTime;
+            System.out.printf("Capacity %d: 100000 hits + 10000 evictions in %.2f ms\n",
+                capacity, elapsed / 1000000.0);
+        }
+        System.out.println();
+    }
+    
+    private static CacheEntry referenceVictim(CacheLevel level) {
+        level.refreshPriorities();
+        CacheEntry best = null;
+        for (CacheEntry entry : level.cache.values()) {
+            if (best == null || entry.priority < best.priority
+                    || (entry.priority == best.priority && BY_LAST_ACCESS.compare(entry, best) < 0)) {
+                best = entry;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * 基準版 MultiLevelCache 的規則：每次判斷都逐一重算整層優先權（O(K)）。
+     * 只用來和 MultiLevelCache 逐步比對各層內容，優先權相同時採用與 CacheLevel 相同的決勝規則
+     * （淘汰最久未使用、升級最近使用），各層 HashMap 的放入／移除順序也與 CacheLevel 相同，
+     * 平均優先權的加總順序一致，浮點結果才會完全相同。
+     */
+    static class BaselineCache {
+        final List<Map<String, CacheEntry>> levels = new ArrayList<>();
+        final int[] capacities;
+        final LongSupplier clock;
+        long nextSeq;
+        
+        BaselineCache(LongSupplier clock, int... capacities) {
+            this.clock = clock;
+            this.capacities = capacities.clone();
+            for (int i = 0; i < capacities.length; i++) {
+                levels.add(new HashMap<>());
+            }
+        }
+        
+        String get(String key) {
+            for (int i = 0; i < levels.size(); i++) {
+                CacheEntry entry = levels.get(i).get(key);
+                if (entry != null) {
+                    entry.updateAccess(clock.getAsLong());
+                    promoteIfNeeded(i, entry);
+                    return entry.value;
+                }
+            }
+            return null;
+        }
+        
+        void put(String key, String value) {
+            long now = clock.getAsLong();
+            for (Map<String, CacheEntry> level : levels) {
+                CacheEntry existing = level.get(key);
+                if (existing != null) {
+                    existing.value = value;
+                    existing.updateAccess(now);
+                    return;
+                }
+            }
+            int target = 0;
+            while (target < levels.size() && isFull(target)) target++;
+            if (target == levels.size()) {
+                target--;
+                levels.get(target).remove(extreme(target, false).key);
+            }
+            levels.get(target).put(key, new CacheEntry(key, value, 1, now, now, nextSeq++));
+            
+            for (int i = 1; i < levels.size(); i++) {
+                if (levels.get(i).isEmpty() || isFull(i - 1)) continue;
+                CacheEntry candidate = extreme(i, true);
+                if (candidate.accessCount < 2) continue;
+                levels.get(i).remove(candidate.key);
+                levels.get(i - 1).put(candidate.key, candidate);
+            }
+        }
+        
+        private void promoteIfNeeded(int i, CacheEntry entry) {
+            if (i == 0 || entry.accessCount < 3) return;
+            long now = clock.getAsLong();
+            double priority = priority(entry, i, now);
+            Map<String, CacheEntry> upper = levels.get(i - 1);
+            double sum = 0.0;
+            for (CacheEntry e : upper.values()) {
+                sum += priority(e, i - 1, now);
+            }
+            double average = upper.isEmpty() ? 0.0 : sum / upper.size();
+            if (priority <= average) return;
+            
+            if (!isFull(i - 1)) {
+                levels.get(i).remove(entry.key);
+                upper.put(entry.key, entry);
+                return;
+            }
+            CacheEntry victim = extreme(i - 1, false);
+            if (priority > priority(victim, i - 1, now)) {
+                levels.get(i).remove(entry.key);
+                upper.remove(victim.key);
+                upper.put(entry.key, entry);
+                levels.get(i).put(victim.key, victim);
+            }
+        }
+        
+        private boolean isFull(int i) {
+            return levels.get(i).size() >= capacities[i];
+        }
+        
+        private static double priority(CacheEntry entry, int index, long now) {
+            return CacheEntry.priorityOf(entry.accessCount, entry.lastAccessTime, entry.insertTime, index + 1, now);
+        }
+        
+        // 優先權最高（highest）或最低的條目
+        private CacheEntry extreme(int i, boolean highest) {
+            long now = clock.getAsLong();
+            CacheEntry best = null;
+            double bestPriority = 0;
+            for (CacheEntry entry : levels.get(i).values()) {
+                double p = priority(entry, i, now);
+                int order = best == null ? 1 : Double.compare(highest ? p : bestPriority, highest ? bestPriority : p);
+                if (order == 0) order = highest ? BY_LAST_ACCESS.compare(entry, best) : BY_LAST_ACCESS.compare(best, entry);
+                if (order > 0) {
+                    best = entry;
+                    bestPriority = p;
+                }
+            }
+            return best;
+        }
+    }
+    
+    // 以手動推進的時鐘對 MultiLevelCache 與 BaselineCache 送出同一串操作，每一步都比對回傳值與各層的 key
+    public static void testPromotionEquivalence() {
+        System.out.println("=== Promotion Equivalence Test (vs baseline rules) ===");
+        long[] now = {0};
+        LongSupplier manual = () -> now[0];
+        int[][] topologies = {{2, 5, 10}, {4, 16, 64}, {3, 8, 8, 32}};
+        Random rand = new Random(5);
+        long steps = 0;
+        int mismatches = 0;
+        long promotions = 0;
+        long demotions = 0;
+        for (int[] capacities : topologies) {
+            int keySpace = 0;
+            for (int c : capacities) keySpace += c;
+            keySpace *= 2;
+            for (int round = 0; round < 50; round++) {
+                MultiLevelCache.Builder builder = MultiLevelCache.builder().clock(manual);
+                for (int c : capacities) builder.level(c, 1);
+                MultiLevelCache cache = builder.build();
+                BaselineCache reference = new BaselineCache(manual, capacities);
+                for (int op = 0; op < 2000; op++) {
+                    if (rand.nextInt(4) == 0) {
+                        now[0] += rand.nextInt(3000) * 1000000L;
+                    }
+                    // 偏斜分布，熱門 key 會累積存取次數而觸發升級與交換
+                    String key = "k" + (int) (keySpace * Math.pow(rand.nextDouble(), 2));
+                    steps++;
+                    if (rand.nextInt(3) == 0) {
+                        cache.put(key, "v" + op);
+                        reference.put(key, "v" + op);
+                    } else if (!Objects.equals(cache.get(key), reference.get(key))) {
+                        mismatches++;
+                    }
+                    if (!sameLevels(cache, reference)) {
+                        mismatches++;
+                        break;
+                    }
+                }
+                CacheMetrics metrics = cache.metrics();
+                for (int i = 0; i < capacities.length; i++) {
+                    promotions += metrics.promotions[i];
+                    demotions += metrics.demotions[i];
+                }
+            }
+        }
+        System.out.printf("Steps: %d, promotions: %d, swaps: %d, mismatches: %d\n",
+            steps, promotions, demotions, mismatches);
+        System.out.println();
+    }
+    
+    private static boolean sameLevels(MultiLevelCache cache, BaselineCache reference) {
+        for (int i = 0; i < cache.levels.length; i++) {
+            Set<String> keys = new HashSet<>();
+            for (CacheEntry entry : cache.levels[i].getAllEntries()) {
+                keys.add(entry.key);
+            }
+            if (!keys.equals(reference.levels.get(i).keySet())) return false;
+        }
+        return true;
+    }
+    
     public static void complexityAnalysis() {
         System.out.println("=== Complexity Analysis ===");
         System.out.println("設計參數：");
@@ -406,7 +1170,8 @@ public class MultiLevelCacheSystem {
         System.out.println("GET操作：");
         System.out.println("  時間複雜度：O(L + log K) (L=層級數, K=每層最大容量)");
         System.out.println("  - 搜尋各層級：O(L)");
-        System.out.println("  - 更新heap：O(log K)");
+        System.out.println("  - 更新存取次數桶：O(log K)");
+        System.out.println("  - 升級判斷：以存取次數總和夾出平均優先權，通常 O(1)；接近平均時掃描上一層 O(K)");
         System.out.println();
         System.out.println("PUT操作：");
         System.out.println("  時間複雜度：O(L * log K)");
@@ -415,7 +1180,7 @@ public class MultiLevelCacheSystem {
         System.out.println();
         System.out.println("空間複雜度：O(N) (N為總容量)");
         System.out.println("  - 每個條目的儲存和索引");
-        System.out.println("  - 每層的priority heap");
+        System.out.println("  - 每層的存取次數桶與插入時間索引");
         System.out.println();
         System.out.println("優化策略：");
         System.out.println("- 頻率優先：高存取頻率的資料往上層移動");
@@ -428,6 +1193,9 @@ public class MultiLevelCacheSystem {
         testBasicOperations();
         testPromotionDemotion();
         testPerformanceComparison();
+        testCustomTopology();
+        testEvictionEquivalence();
+        testPromotionEquivalence();
         complexityAnalysis();
     }
 }
\ No newline at end of file
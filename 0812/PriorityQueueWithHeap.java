@@ -1,90 +1,199 @@
 import java.util.*;
 
+/**
+ * 以名稱索引的任務優先佇列：優先級高者先執行，同優先級依加入時間先進先出
+ *
+ * 堆積自己維護（Task[]），每個 Task 記住自己在陣列中的位置 index，
+ * 名稱經 taskMap 找到 Task 後就能直接從該位置上濾或下濾：
+ *   - changePriority（提高或降低）與 remove 都是 O(log n)，不必像 PriorityQueue.remove(Object) 線性搜尋
+ *   - 修改優先級時重新蓋時間戳，與原本「移除後重新加入」的行為相同，排到新優先級的最後面
+ * 時間戳取 System.nanoTime()，但保證嚴格遞增，連續加入時不會因時鐘解析度而打亂先進先出。
+ */
 public class PriorityQueueWithHeap {
     
     static class Task {
         String name;
         int priority;
         long timestamp;
+        int index;  // 在堆積陣列中的位置，離開佇列後為 -1
         
-        Task(String name, int priority) {
+        Task(String name, int priority, long timestamp) {
             this.name = name;
             this.priority = priority;
-            this.timestamp = System.nanoTime();
+            this.timestamp = timestamp;
         }
     }
     
-    private PriorityQueue<Task> heap;
+    private static final int DEFAULT_CAPACITY = 16;
+    
+    private Task[] heap;
+    private int size;
     private Map<String, Task> taskMap;
+    private long lastTimestamp;
     
     public PriorityQueueWithHeap() {
-        heap = new PriorityQueue<>((a, b) -> {
-            if (a.priority != b.priority) {
-                return Integer.compare(b.priority, a.priority);
-            }
-            return Long.compare(a.timestamp, b.timestamp);
-        });
+        heap = new Task[DEFAULT_CAPACITY];
         taskMap = new HashMap<>();
     }
     
+    private long nextTimestamp() {
+        lastTimestamp = Math.max(System.nanoTime(), lastTimestamp + 1);
+        return lastTimestamp;
+    }
+    
+    // a 是否應該比 b 先執行
+    private static boolean before(Task a, Task b) {
+        if (a.priority != b.priority) {
+            return a.priority > b.priority;
+        }
+        return a.timestamp < b.timestamp;
+    }
+    
     public void addTask(String name, int priority) {
         if (taskMap.containsKey(name)) {
             changePriority(name, priority);
             return;
         }
         
-        Task task = new Task(name, priority);
-        heap.offer(task);
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size + (size >> 1));
+        }
+        Task task = new Task(name, priority, nextTimestamp());
         taskMap.put(name, task);
+        siftUp(size++, task);
     }
     
     public String executeNext() {
-        if (heap.isEmpty()) {
+        if (size == 0) {
             return null;
         }
         
-        Task task = heap.poll();
+        Task task = heap[0];
+        removeAt(0);
         taskMap.remove(task.name);
         return task.name;
     }
     
     public String peek() {
-        if (heap.isEmpty()) {
+        if (size == 0) {
             return null;
         }
-        return heap.peek().name;
+        return heap[0].name;
     }
     
+    /**
+     * 修改任務優先級，O(log n)；提高時上濾、降低時下濾，任務不存在則不做事
+     */
     public void changePriority(String name, int newPriority) {
-        Task oldTask = taskMap.get(name);
-        if (oldTask == null) {
+        Task task = taskMap.get(name);
+        if (task == null) {
             return;
         }
         
-        heap.remove(oldTask);
-        taskMap.remove(name);
-        
-        Task newTask = new Task(name, newPriority);
-        heap.offer(newTask);
-        taskMap.put(name, newTask);
+        task.priority = newPriority;
+        task.timestamp = nextTimestamp();
+        int index = task.index;
+        siftUp(index, task);
+        if (task.index == index) {
+            siftDown(index, task);
+        }
+    }
+    
+    /**
+     * 依名稱移除任務，O(log n)；回傳任務是否存在
+     */
+    public boolean remove(String name) {
+        Task task = taskMap.remove(name);
+        if (task == null) {
+            return false;
+        }
+        removeAt(task.index);
+        return true;
+    }
+    
+    public boolean contains(String name) {
+        return taskMap.containsKey(name);
     }
     
     public boolean isEmpty() {
-        return heap.isEmpty();
+        return size == 0;
     }
     
     public int size() {
-        return heap.size();
+        return size;
     }
     
-    public void printQueue() {
-        List<Task> tasks = new ArrayList<>(heap);
-        tasks.sort((a, b) -> {
-            if (a.priority != b.priority) {
-                return Integer.compare(b.priority, a.priority);
+    // 用最後一個任務填補 i 的空洞，再視情況上濾或下濾
+    private void removeAt(int i) {
+        Task removed = heap[i];
+        removed.index = -1;
+        Task last = heap[--size];
+        heap[size] = null;
+        if (i < size) {
+            siftUp(i, last);
+            if (last.index == i) {
+                siftDown(i, last);
+            }
+        }
+    }
+    
+    // 把 task 從 pos 的空洞往上移，沿路把較晚執行的父節點往下搬並更新它們的 index
+    private void siftUp(int pos, Task task) {
+        Task[] h = heap;
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            Task p = h[parent];
+            if (!before(task, p)) {
+                break;
+            }
+            h[pos] = p;
+            p.index = pos;
+            pos = parent;
+        }
+        h[pos] = task;
+        task.index = pos;
+    }
+    
+    private void siftDown(int pos, Task task) {
+        Task[] h = heap;
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            Task c = h[child];
+            int right = child + 1;
+            if (right < size && before(h[right], c)) {
+                child = right;
+                c = h[right];
+            }
+            if (!before(c, task)) {
+                break;
+            }
+            h[pos] = c;
+            c.index = pos;
+            pos = child;
+        }
+        h[pos] = task;
+        task.index = pos;
+    }
+    
+    /**
+     * 驗證堆積性質與每個任務記錄的位置（測試用）
+     */
+    boolean isValidHeap() {
+        for (int i = 0; i < size; i++) {
+            if (heap[i].index != i || taskMap.get(heap[i].name) != heap[i]) {
+                return false;
+            }
+            if (i > 0 && before(heap[i], heap[(i - 1) >>> 1])) {
+                return false;
             }
-            return Long.compare(a.timestamp, b.timestamp);
-        });
+        }
+        return taskMap.size() == size;
+    }
+    
+    public void printQueue() {
+        List<Task> tasks = new ArrayList<>(Arrays.asList(heap).subList(0, size));
+        tasks.sort((a, b) -> before(a, b) ? -1 : before(b, a) ? 1 : 0);
         
         System.out.print("當前佇列：");
         for (int i = 0; i < tasks.size(); i++) {
@@ -96,6 +205,77 @@ public class PriorityQueueWithHeap {
         System.out.println();
     }
     
+    /**
+     * n 個任務下的加入、修改優先級、依名稱移除與全部執行
+     * 對照組是原本的作法：java.util.PriorityQueue 以 remove(Object) 再 offer 修改優先級，每次 O(n)，
+     * 因此對照組只做少量修改再換算成每次的成本
+     */
+    static void benchmark(int n) {
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++) {
+            names[i] = "task-" + i;
+        }
+        Random random = new Random(n);
+        int[] priorities = random.ints(n, 0, 100).toArray();
+        int changes = n;
+        int[] changeTargets = random.ints(changes, 0, n).toArray();
+        int[] changePriorities = random.ints(changes, 0, 100).toArray();
+        int removals = n / 10;
+        int[] removeTargets = random.ints(removals, 0, n).toArray();
+        
+        System.out.println("\n=== 效能測試：" + n + " 個任務 ===");
+        long sink = 0;
+        for (int round = 0; round < 3; round++) {
+            PriorityQueueWithHeap pq = new PriorityQueueWithHeap();
+            long t0 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                pq.addTask(names[i], priorities[i]);
+            }
+            long t1 = System.nanoTime();
+            for (int i = 0; i < changes; i++) {
+                pq.changePriority(names[changeTargets[i]], changePriorities[i]);
+            }
+            long t2 = System.nanoTime();
+            for (int i = 0; i < removals; i++) {
+                pq.remove(names[removeTargets[i]]);
+            }
+            long t3 = System.nanoTime();
+            int executed = 0;
+            while (!pq.isEmpty()) {
+                sink += pq.executeNext().length();
+                executed++;
+            }
+            long t4 = System.nanoTime();
+            if (round == 2) {
+                System.out.printf("索引堆積  addTask %.0f ns/op, changePriority %.0f ns/op, remove %.0f ns/op, executeNext %.0f ns/op%n",
+                    (double) (t1 - t0) / n, (double) (t2 - t1) / changes, (double) (t3 - t2) / removals,
+                    (double) (t4 - t3) / executed);
+            }
+        }
+        
+        Comparator<Task> order = (a, b) -> before(a, b) ? -1 : before(b, a) ? 1 : 0;
+        PriorityQueue<Task> baseline = new PriorityQueue<>(order);
+        Map<String, Task> baselineMap = new HashMap<>();
+        long timestamp = 0;
+        for (int i = 0; i < n; i++) {
+            Task task = new Task(names[i], priorities[i], timestamp++);
+            baseline.offer(task);
+            baselineMap.put(names[i], task);
+        }
+        int baselineChanges = Math.min(changes, Math.max(100, 200_000_000 / n));
+        long start = System.nanoTime();
+        for (int i = 0; i < baselineChanges; i++) {
+            String name = names[changeTargets[i]];
+            baseline.remove(baselineMap.get(name));
+            Task task = new Task(name, changePriorities[i], timestamp++);
+            baseline.offer(task);
+            baselineMap.put(name, task);
+        }
+        System.out.printf("PriorityQueue.remove(Object) + offer  changePriority %.0f ns/op（%d 次取樣）%n",
+            (double) (System.nanoTime() - start) / baselineChanges, baselineChanges);
+        System.out.println("(sink " + (sink + baseline.size()) + ")");
+    }
+    
     public static void main(String[] args) {
         PriorityQueueWithHeap pq = new PriorityQueueWithHeap();
         
@@ -128,10 +308,61 @@ public class PriorityQueueWithHeap {
         System.out.println("修改任務C優先級為6");
         pq.printQueue();
         
+        pq.changePriority("任務B", 2);
+        System.out.println("修改任務B優先級為2（排到任務A之後）");
+        pq.printQueue();
+        
+        pq.remove("任務A");
+        System.out.println("移除任務A");
+        pq.printQueue();
+        
         System.out.println("\n執行修改後的任務：");
         while (!pq.isEmpty()) {
             String next = pq.executeNext();
             System.out.println("執行：" + next);
         }
+        
+        // 與 TreeSet 隨機比對：TreeSet 依相同順序排序，修改與移除都是 O(log n)
+        Random random = new Random(3);
+        TreeSet<Task> reference = new TreeSet<>((a, b) -> before(a, b) ? -1 : before(b, a) ? 1 : 0);
+        Map<String, Task> referenceMap = new HashMap<>();
+        long timestamp = 0;
+        boolean ok = true;
+        for (int i = 0; i < 200000 && ok; i++) {
+            String name = "t" + random.nextInt(500);
+            int op = random.nextInt(10);
+            if (op < 5) {
+                int priority = random.nextInt(20);
+                pq.addTask(name, priority);
+                Task old = referenceMap.remove(name);
+                if (old != null) {
+                    reference.remove(old);
+                }
+                Task task = new Task(name, priority, timestamp++);
+                reference.add(task);
+                referenceMap.put(name, task);
+            } else if (op < 7) {
+                Task old = referenceMap.remove(name);
+                ok = pq.remove(name) == (old != null);
+                if (old != null) {
+                    reference.remove(old);
+                }
+            } else {
+                Task expected = reference.pollFirst();
+                String actual = pq.executeNext();
+                if (expected == null) {
+                    ok = actual == null;
+                } else {
+                    referenceMap.remove(expected.name);
+                    ok = expected.name.equals(actual);
+                }
+            }
+            if (i % 1000 == 0) {
+                ok &= pq.isValidHeap();
+            }
+        }
+        System.out.println("\n與 TreeSet 隨機比對 20 萬次操作: " + (ok && pq.size() == reference.size() ? "一致" : "錯誤"));
+        
+        benchmark(args.length > 0 ? Integer.parseInt(args[0]) : 1000000);
     }
-}
\ No newline at end of file
+}
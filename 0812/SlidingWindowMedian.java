@@ -4,8 +4,17 @@ public class SlidingWindowMedian {
     
     private PriorityQueue<Integer> maxHeap;
     private PriorityQueue<Integer> minHeap;
+    private final boolean indexed;
     
     public SlidingWindowMedian() {
+        this(false);
+    }
+    
+    /**
+     * @param indexed true 時使用索引堆積，每次滑動 O(log k)；false 時使用 PriorityQueue.remove(Object)，每次 O(k)
+     */
+    public SlidingWindowMedian(boolean indexed) {
+        this.indexed = indexed;
         maxHeap = new PriorityQueue<>((a, b) -> b - a);
         minHeap = new PriorityQueue<>();
     }
@@ -14,6 +23,9 @@ public class SlidingWindowMedian {
         if (nums == null || nums.length == 0 || k <= 0) {
             return new double[0];
         }
+        if (indexed) {
+            return medianSlidingWindowIndexed(nums, k);
+        }
         
         double[] result = new double[nums.length - k + 1];
         
@@ -66,11 +78,158 @@ public class SlidingWindowMedian {
         }
     }
     
+    /**
+     * 以視窗位置為索引的堆積
+     *
+     * 視窗內第 i 個元素固定放在格子 i % k，離開視窗的元素和進入的元素用同一個格子，
+     * 所以滑動時不必刪除再插入：直接改寫格子的值，在它所在的堆積裡上濾或下濾即可（pos 記錄格子在堆積中的位置）。
+     * 兩個堆積的大小永遠不變（較小的一半放 max heap，較大的一半放 min heap），
+     * 改寫後若 max heap 的頂端大於 min heap 的頂端，交換兩個頂端再各自下濾一次就恢復。
+     * 每次滑動 O(log k)，全程不配置物件，總共 O(n log k)。
+     */
+    static class SlotHeap {
+        final int[] slots;
+        final int[] values;  // 兩個堆積共用：格子 → 值
+        final int[] pos;     // 兩個堆積共用：格子 → 在所屬堆積中的位置
+        final boolean[] inLow;
+        final boolean max;
+        int size;
+        
+        SlotHeap(int capacity, int[] values, int[] pos, boolean[] inLow, boolean max) {
+            this.slots = new int[Math.max(1, capacity)];
+            this.values = values;
+            this.pos = pos;
+            this.inLow = inLow;
+            this.max = max;
+        }
+        
+        // 格子 a 是否應該在格子 b 上面
+        boolean above(int a, int b) {
+            return max ? values[a] > values[b] : values[a] < values[b];
+        }
+        
+        int top() {
+            return slots[0];
+        }
+        
+        void add(int slot) {
+            inLow[slot] = max;
+            siftUp(size++, slot);
+        }
+        
+        // 格子的值被改寫後恢復堆積性質
+        void update(int slot) {
+            int i = pos[slot];
+            siftUp(i, slot);
+            if (pos[slot] == i) {
+                siftDown(i, slot);
+            }
+        }
+        
+        // 用另一個堆積的格子換掉頂端，回傳被換下來的格子
+        int replaceTop(int slot) {
+            int old = slots[0];
+            inLow[slot] = max;
+            siftDown(0, slot);
+            return old;
+        }
+        
+        private void siftUp(int i, int slot) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                int p = slots[parent];
+                if (!above(slot, p)) {
+                    break;
+                }
+                slots[i] = p;
+                pos[p] = i;
+                i = parent;
+            }
+            slots[i] = slot;
+            pos[slot] = i;
+        }
+        
+        private void siftDown(int i, int slot) {
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int c = slots[child];
+                int right = child + 1;
+                if (right < size && above(slots[right], c)) {
+                    child = right;
+                    c = slots[right];
+                }
+                if (!above(c, slot)) {
+                    break;
+                }
+                slots[i] = c;
+                pos[c] = i;
+                i = child;
+            }
+            slots[i] = slot;
+            pos[slot] = i;
+        }
+    }
+    
+    private static double[] medianSlidingWindowIndexed(int[] nums, int k) {
+        if (k > nums.length) {
+            return new double[0];
+        }
+        int[] values = Arrays.copyOf(nums, k);
+        int[] pos = new int[k];
+        boolean[] inLow = new boolean[k];
+        int lowSize = (k + 1) / 2;
+        SlotHeap low = new SlotHeap(lowSize, values, pos, inLow, true);
+        SlotHeap high = new SlotHeap(k - lowSize, values, pos, inLow, false);
+        
+        // 第一個視窗：依值排序格子，較小的一半進 max heap
+        Integer[] order = new Integer[k];
+        for (int i = 0; i < k; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(values[a], values[b]));
+        for (int i = 0; i < k; i++) {
+            if (i < lowSize) {
+                low.add(order[i]);
+            } else {
+                high.add(order[i]);
+            }
+        }
+        
+        double[] result = new double[nums.length - k + 1];
+        result[0] = median(low, high, k);
+        for (int i = k; i < nums.length; i++) {
+            int slot = i % k;
+            values[slot] = nums[i];
+            if (inLow[slot]) {
+                low.update(slot);
+            } else {
+                high.update(slot);
+            }
+            if (high.size > 0 && values[low.top()] > values[high.top()]) {
+                int fromHigh = high.top();
+                int fromLow = low.replaceTop(fromHigh);
+                high.replaceTop(fromLow);
+            }
+            result[i - k + 1] = median(low, high, k);
+        }
+        return result;
+    }
+    
+    private static double median(SlotHeap low, SlotHeap high, int k) {
+        int lowTop = low.values[low.top()];
+        if (k % 2 == 1) {
+            return lowTop;
+        }
+        return ((double) lowTop + high.values[high.top()]) / 2.0;
+    }
+    
     public static void testCase(int[] nums, int k) {
         System.out.println("陣列：" + Arrays.toString(nums) + ", K=" + k);
         
         SlidingWindowMedian swm = new SlidingWindowMedian();
         double[] result = swm.medianSlidingWindow(nums, k);
+        double[] indexedResult = new SlidingWindowMedian(true).medianSlidingWindow(nums, k);
         
         System.out.print("輸出：[");
         for (int i = 0; i < result.length; i++) {
@@ -84,6 +243,7 @@ public class SlidingWindowMedian {
             }
         }
         System.out.println("]");
+        System.out.println("索引堆積輸出" + (Arrays.equals(result, indexedResult) ? "相同" : "：" + Arrays.toString(indexedResult)));
         
         System.out.println("詳細解釋：");
         for (int i = 0; i <= nums.length - k; i++) {
@@ -126,9 +286,15 @@ public class SlidingWindowMedian {
         double[] result = swm.medianSlidingWindow(largeArray, k);
         long endTime = System.nanoTime();
         
+        long indexedStart = System.nanoTime();
+        double[] indexedResult = new SlidingWindowMedian(true).medianSlidingWindow(largeArray, k);
+        long indexedEnd = System.nanoTime();
+        
         System.out.println("陣列大小：" + n + ", 視窗大小：" + k);
         System.out.println("結果數量：" + result.length);
         System.out.println("執行時間：" + (endTime - startTime) / 1000000 + " ms");
+        System.out.println("索引堆積執行時間：" + (indexedEnd - indexedStart) / 1000000 + " ms，結果"
+            + (Arrays.equals(result, indexedResult) ? "相同" : "不同"));
         
         System.out.println("前5個中位數：");
         for (int i = 0; i < Math.min(5, result.length); i++) {
@@ -154,10 +320,45 @@ public class SlidingWindowMedian {
         System.out.println("空間複雜度：O(K)");
         System.out.println("- 兩個 heap 總共儲存 K 個元素");
         System.out.println();
-        System.out.println("優化建議：");
-        System.out.println("- 使用支援懶惰刪除的資料結構");
-        System.out.println("- 可以結合 TreeSet 或自訂平衡樹");
-        System.out.println("- 對於固定 K，可以考慮其他方法");
+        System.out.println("索引堆積（new SlidingWindowMedian(true)）：O(N log K)");
+        System.out.println("- 離開與進入視窗的元素共用同一個格子，直接改寫後上濾或下濾：O(log K)");
+        System.out.println("- 兩個堆積大小固定，最多再交換一次頂端：O(log K)");
+        System.out.println("- 不需要懶惰刪除的計數表，堆積裡也不會留下過期的元素");
+    }
+    
+    /**
+     * 不同視窗大小下兩種作法的比較（長度 n 的感測器資料）
+     * 原本的作法每次移除 O(k)，n × k 太大時略過
+     */
+    public static void windowSizeBenchmark(int n) {
+        System.out.println("=== 視窗大小比較（資料長度 " + n + "）===");
+        Random rand = new Random(7);
+        int[] stream = new int[n];
+        int level = 0;
+        for (int i = 0; i < n; i++) {
+            // 緩慢漂移加上雜訊，類似感測器讀值
+            level += rand.nextInt(21) - 10;
+            stream[i] = level + rand.nextInt(2001) - 1000;
+        }
+        System.out.printf("%-10s %16s %16s %10s%n", "K", "remove(Object)", "索引堆積", "ns/視窗");
+        for (int k = 10; k <= Math.min(n, 1000000); k *= 10) {
+            double[] indexedResult = null;
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                indexedResult = new SlidingWindowMedian(true).medianSlidingWindow(stream, k);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            String baseline = "略過";
+            if ((long) n * k <= 200_000_000L) {
+                long start = System.nanoTime();
+                double[] result = new SlidingWindowMedian().medianSlidingWindow(stream, k);
+                baseline = (System.nanoTime() - start) / 1000000 + " ms"
+                    + (Arrays.equals(result, indexedResult) ? "" : "（結果不同）");
+            }
+            System.out.printf("%-10d %16s %13d ms %10.1f%n", k, baseline, best / 1000000,
+                (double) best / indexedResult.length);
+        }
     }
     
     public static void main(String[] args) {
@@ -174,5 +375,7 @@ public class SlidingWindowMedian {
         performanceTest();
         System.out.println();
         complexityAnalysis();
+        System.out.println();
+        windowSizeBenchmark(args.length > 0 ? Integer.parseInt(args[0]) : 2000000);
     }
 }
\ No newline at end of file
@@ -3,6 +3,9 @@
  * 實作一個簡化版的 AVL 樹，包含基本操作和驗證功能
  */
 
+import java.util.Arrays;
+import java.util.Random;
+
 // AVL 樹節點類別
 class AVLNode {
     int data;
@@ -55,6 +58,64 @@ public class AVLBasicExercise {
         return node;
     }
     
+    /**
+     * 由已排序（遞增，可含重複值）的陣列一次建立完全平衡的樹，O(n)
+     * 取中間元素為根、左右兩半遞迴建立，建立時直接設定高度；重複值和逐筆插入一樣只保留一個
+     *
+     * @throws IllegalArgumentException 輸入不是遞增排序
+     */
+    public static AVLBasicExercise fromSorted(int[] sorted) {
+        int[] distinct = distinctSorted(sorted);
+        AVLBasicExercise tree = new AVLBasicExercise();
+        tree.root = tree.buildBalanced(distinct, 0, distinct.length - 1);
+        return tree;
+    }
+    
+    /**
+     * 由未排序的陣列建立：先排序再建立，O(n log n)，不修改傳入的陣列
+     */
+    public static AVLBasicExercise fromUnsorted(int[] values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return fromSorted(sorted);
+    }
+    
+    // 檢查遞增並去除重複值，沒有重複時直接回傳原陣列
+    private static int[] distinctSorted(int[] sorted) {
+        int count = sorted.length == 0 ? 0 : 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] < sorted[i - 1]) {
+                throw new IllegalArgumentException("Input is not sorted at index " + i);
+            }
+            if (sorted[i] != sorted[i - 1]) {
+                count++;
+            }
+        }
+        if (count == sorted.length) {
+            return sorted;
+        }
+        int[] distinct = new int[count];
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                distinct[n++] = sorted[i];
+            }
+        }
+        return distinct;
+    }
+    
+    private AVLNode buildBalanced(int[] values, int lo, int hi) {
+        if (lo > hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        AVLNode node = new AVLNode(values[mid]);
+        node.left = buildBalanced(values, lo, mid - 1);
+        node.right = buildBalanced(values, mid + 1, hi);
+        updateHeight(node);
+        return node;
+    }
+    
     /**
      * 2. 搜尋節點
      * 時間複雜度: O(log n) 平均情況, O(n) 最壞情況
@@ -232,5 +293,64 @@ public class AVLBasicExercise {
         emptyAVL.insert(42);
         System.out.println("單節點樹高度: " + emptyAVL.getHeight());
         System.out.println("單節點樹是否為有效 AVL: " + emptyAVL.isValidAVL());
+        
+        // 測試 5: 批次建立
+        System.out.println("\n測試 5: 由陣列批次建立");
+        AVLBasicExercise loaded = AVLBasicExercise.fromSorted(unbalancedData);
+        System.out.println("由排序資料 1..7 建立（和測試 3 相同資料）:");
+        loaded.displayTreeInfo();
+        AVLBasicExercise fromUnsorted = AVLBasicExercise.fromUnsorted(new int[]{18, 3, 12, 3, 7, 10, 5, 15});
+        System.out.println("由未排序且含重複的資料建立:");
+        fromUnsorted.displayTreeInfo();
+        try {
+            AVLBasicExercise.fromSorted(new int[]{1, 3, 2});
+        } catch (IllegalArgumentException e) {
+            System.out.println("未排序的資料傳給 fromSorted: " + e.getMessage());
+        }
+        
+        // 效能測試要數十秒，只在指定 bulk 參數時執行，可接著指定元素數
+        if (args.length > 0 && args[0].equals("bulk")) {
+            int[] sizes = args.length == 1 ? new int[]{1000000, 10000000}
+                : Arrays.stream(args).skip(1).mapToInt(Integer::parseInt).toArray();
+            bulkLoadBenchmark(sizes);
+        } else {
+            System.out.println("\n（批次建立效能測試：java AVLBasicExercise bulk [元素數...]）");
+        }
+    }
+    
+    /**
+     * 比較逐筆插入、排序後建立、已排序直接建立三種方式建立大型樹的耗時
+     */
+    private static void bulkLoadBenchmark(int[] sizes) {
+        System.out.println("\n測試 6: 批次建立效能（隨機資料）");
+        System.out.printf("%-10s %-14s %12s %8s %8s%n", "元素數", "方式", "耗時(ms)", "高度", "有效AVL");
+        for (int n : sizes) {
+            int[] values = new Random(n).ints(n).toArray();
+            int[] sorted = values.clone();
+            Arrays.sort(sorted);
+            for (int mode = 0; mode < 3; mode++) {
+                System.gc();
+                long start = System.nanoTime();
+                AVLBasicExercise tree;
+                String name;
+                if (mode == 0) {
+                    name = "逐筆 insert";
+                    tree = new AVLBasicExercise();
+                    for (int value : values) {
+                        tree.insert(value);
+                    }
+                } else if (mode == 1) {
+                    name = "fromUnsorted";
+                    tree = AVLBasicExercise.fromUnsorted(values);
+                } else {
+                    name = "fromSorted";
+                    tree = AVLBasicExercise.fromSorted(sorted);
+                }
+                long elapsed = System.nanoTime() - start;
+                boolean found = tree.search(values[n / 2]) && tree.search(sorted[0]);
+                System.out.printf("%-10d %-14s %12.1f %8d %8s%n", n, name, elapsed / 1e6,
+                    tree.getHeight(), tree.isValidAVL() && found ? "是" : "否");
+            }
+        }
     }
 }
\ No newline at end of file
@@ -183,6 +183,62 @@ public class AVLInsertExample {
         return (node != null) ? node.height : 0;
     }
     
+    /**
+     * 由已排序（遞增，可含重複值）的陣列一次建立樹，O(n)
+     * 取中間元素為根、左右兩半遞迴建立，節點建構時就算好高度；重複值只保留一個。
+     * 建好的樹是版本 1（版本 0 仍是空樹），也是目前的工作版本。
+     *
+     * @throws IllegalArgumentException 輸入不是遞增排序
+     */
+    public static AVLInsertExample fromSorted(int[] sorted) {
+        int[] distinct = distinctSorted(sorted);
+        AVLInsertExample tree = new AVLInsertExample();
+        tree.currentVersion = new AVLVersion(buildBalanced(distinct, 0, distinct.length - 1), tree.nextVersionId++);
+        tree.versions.add(tree.currentVersion);
+        return tree;
+    }
+    
+    /**
+     * 由未排序的陣列建立：先排序再建立，O(n log n)，不修改傳入的陣列
+     */
+    public static AVLInsertExample fromUnsorted(int[] values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return fromSorted(sorted);
+    }
+    
+    // 檢查遞增並去除重複值，沒有重複時直接回傳原陣列
+    private static int[] distinctSorted(int[] sorted) {
+        int count = sorted.length == 0 ? 0 : 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] < sorted[i - 1]) {
+                throw new IllegalArgumentException("Input is not sorted at index " + i);
+            }
+            if (sorted[i] != sorted[i - 1]) {
+                count++;
+            }
+        }
+        if (count == sorted.length) {
+            return sorted;
+        }
+        int[] distinct = new int[count];
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                distinct[n++] = sorted[i];
+            }
+        }
+        return distinct;
+    }
+    
+    private static AVLNode buildBalanced(int[] values, int lo, int hi) {
+        if (lo > hi) return null;
+        int mid = (lo + hi) >>> 1;
+        AVLNode left = buildBalanced(values, lo, mid - 1);
+        AVLNode right = buildBalanced(values, mid + 1, hi);
+        return new AVLNode(values[mid], left, right);
+    }
+    
     /**
      * 持久化插入 - 插入節點到指定版本，返回新版本
      * 時間複雜度: O(log n), 空間複雜度: O(log n)
@@ -561,5 +617,31 @@ public class AVLInsertExample {
         System.out.println("✓ 維持 AVL 樹的平衡特性和時間複雜度");
         System.out.println("✓ 時間複雜度：O(log n) 插入/刪除/查詢");
         System.out.println("✓ 空間複雜度：每次操作 O(log n) 額外空間");
+        
+        // 批次建立
+        System.out.println("\n10. 由陣列批次建立：");
+        AVLInsertExample loaded = AVLInsertExample.fromUnsorted(new int[]{50, 10, 40, 20, 30, 10, 60});
+        System.out.print("由未排序且含重複的資料建立: ");
+        loaded.printTree();
+        System.out.printf("版本數 = %d, 大小 = %d, 有效AVL = %s%n", loaded.getVersionCount(), loaded.size(),
+            loaded.isValidAVL() ? "是" : "否");
+        loaded.insert(35);
+        System.out.print("建立後照常插入 35: ");
+        loaded.printTree();
+        
+        int n = 200000;
+        int[] values = new Random(n).ints(n).toArray();
+        long start = System.nanoTime();
+        AVLInsertExample inserted = new AVLInsertExample();
+        for (int value : values) {
+            inserted.insert(value);
+        }
+        long insertTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        AVLInsertExample bulk = AVLInsertExample.fromUnsorted(values);
+        long bulkTime = System.nanoTime() - start;
+        System.out.printf("%d 個隨機值: 逐筆插入 %.1f ms（%d 個版本），排序後建立 %.1f ms（%d 個版本），內容相同: %s%n",
+            n, insertTime / 1e6, inserted.getVersionCount(), bulkTime / 1e6, bulk.getVersionCount(),
+            inserted.getLatestVersion().inorderTraversal().equals(bulk.getLatestVersion().inorderTraversal()));
     }
 }
\ No newline at end of file
@@ -4,43 +4,8 @@
  */
 
 import java.util.*;
-
-// 玩家資訊類別
-class Player {
-    String name;
-    int score;
-    long timestamp; // 用於處理同分情況
-    
-    public Player(String name, int score) {
-        this.name = name;
-        this.score = score;
-        this.timestamp = System.nanoTime(); // 越晚加入的時間戳越大
-    }
-    
-    public Player(String name, int score, long timestamp) {
-        this.name = name;
-        this.score = score;
-        this.timestamp = timestamp;
-    }
-    
-    @Override
-    public String toString() {
-        return name + "(" + score + ")";
-    }
-    
-    @Override
-    public boolean equals(Object obj) {
-        if (this == obj) return true;
-        if (obj == null || getClass() != obj.getClass()) return false;
-        Player player = (Player) obj;
-        return Objects.equals(name, player.name);
-    }
-    
-    @Override
-    public int hashCode() {
-        return Objects.hash(name);
-    }
-}
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 // 擴展的 AVL 節點，包含額外的排行榜資訊
 class LeaderboardNode {
@@ -64,12 +29,28 @@ class LeaderboardNode {
 }
 
 public class AVLLeaderboardSystem {
-    private LeaderboardNode root;
+    private volatile LeaderboardNode root;
     private Map<String, Player> playerMap; // 快速查找玩家
     
+    // 快照模式：寫入以路徑複製產生新版本後才發佈 root，已發佈的節點與 Player 都不再修改，
+    // 讀者只要讀一次 root 就能在一致的版本上查詢，不需要任何鎖
+    private final boolean snapshotMode;
+    private final Object writeLock = new Object();
+    // 寫入者發佈期間為奇數，讀者據此判斷查不到玩家是否因為讀到新舊交錯的 root 與 playerMap
+    private volatile long publishSeq;
+    
     public AVLLeaderboardSystem() {
+        this(false);
+    }
+    
+    /**
+     * @param snapshotMode true 時寫入者彼此互斥並以路徑複製發佈新版本，
+     *                     查詢可與寫入同時在其他執行緒進行
+     */
+    public AVLLeaderboardSystem(boolean snapshotMode) {
         this.root = null;
-        this.playerMap = new HashMap<>();
+        this.snapshotMode = snapshotMode;
+        this.playerMap = snapshotMode ? new ConcurrentHashMap<>() : new HashMap<>();
     }
     
     // 獲取節點高度
@@ -96,7 +77,8 @@ public class AVLLeaderboardSystem {
     }
     
     // 比較兩個玩家的分數（分數高的排前面，分數相同時時間戳小的排前面）
-    private int comparePlayer(Player p1, Player p2) {
+    // ShardedLeaderboard 合併各分片時也用這個順序
+    static int comparePlayer(Player p1, Player p2) {
         if (p1.score != p2.score) {
             return Integer.compare(p2.score, p1.score); // 分數高的排前面
         }
@@ -136,19 +118,38 @@ public class AVLLeaderboardSystem {
      * 時間複雜度: O(log n)
      */
     public boolean addPlayer(String name, int score) {
-        if (playerMap.containsKey(name)) {
+        if (!addPlayerInternal(new Player(name, score))) {
             System.out.println("玩家 " + name + " 已存在，請使用 updateScore 更新分數");
             return false;
         }
         
-        Player newPlayer = new Player(name, score);
-        playerMap.put(name, newPlayer);
-        root = insert(root, newPlayer);
-        
         System.out.println("成功添加玩家: " + name + " (分數: " + score + ")");
         return true;
     }
     
+    // 不輸出訊息的新增，供批次、分片與效能測試使用；名稱已存在時不做事並回傳 false
+    // 快照模式下檢查與插入都在 writeLock 內，兩個同名的並行新增只會有一個成功
+    boolean addPlayerInternal(Player player) {
+        if (snapshotMode) {
+            synchronized (writeLock) {
+                if (playerMap.containsKey(player.name)) {
+                    return false;
+                }
+                publishSeq++;
+                root = insertCopy(root, player);
+                playerMap.put(player.name, player);
+                publishSeq++;
+            }
+            return true;
+        }
+        if (playerMap.containsKey(player.name)) {
+            return false;
+        }
+        playerMap.put(player.name, player);
+        root = insert(root, player);
+        return true;
+    }
+    
     private LeaderboardNode insert(LeaderboardNode node, Player player) {
         // 1. 標準 BST 插入
         if (node == null) {
@@ -179,8 +180,27 @@ public class AVLLeaderboardSystem {
             return false;
         }
         
+        int oldScore = playerMap.get(name).score;
+        updateScoreInternal(name, newScore);
+        
+        System.out.println("成功更新玩家 " + name + " 分數: " + oldScore + " → " + newScore);
+        return true;
+    }
+    
+    void updateScoreInternal(String name, int newScore) {
+        if (snapshotMode) {
+            synchronized (writeLock) {
+                Player oldPlayer = playerMap.get(name);
+                Player updatedPlayer = new Player(name, newScore, oldPlayer.timestamp);
+                publishSeq++;
+                root = insertCopy(deleteCopy(root, oldPlayer), updatedPlayer);
+                playerMap.put(name, updatedPlayer);
+                publishSeq++;
+            }
+            return;
+        }
+        
         Player oldPlayer = playerMap.get(name);
-        int oldScore = oldPlayer.score;
         
         // 從樹中刪除舊的玩家節點
         root = delete(root, oldPlayer);
@@ -191,9 +211,189 @@ public class AVLLeaderboardSystem {
         
         // 插入更新後的玩家節點
         root = insert(root, updatedPlayer);
+    }
+    
+    /**
+     * 批次套用分數變化（每筆 delta 加到玩家目前的分數上）
+     * 先把受影響的玩家依新分數排序，再依批次大小 m 與玩家總數 n 選擇做法：
+     *  - m log n < 4n：逐一從樹中刪除，再依排序結果插回，O(m log n)
+     *  - 否則：中序取出未受影響的玩家（已排序），與排序後的更新結果合併，
+     *    再重複使用原本的節點串成完全平衡的樹，O(n + m log m)
+     * 常數 4 是實測的交界點（10 萬玩家時約 2 萬筆以上改用重建）
+     * 玩家物件就地修改分數，不會重新建立 Player；不存在的玩家、null 名稱與 null／0 的 delta 會被略過，
+     * 篩選在修改任何玩家之前完成，不會只套用一半的批次。
+     * 快照模式下改為建立新的 Player 並以路徑複製／配置新節點產生新版本，舊版本維持不變。
+     * 回傳實際更新的玩家數
+     */
+    public int applyScoreUpdates(Map<String, Integer> deltas) {
+        if (snapshotMode) {
+            synchronized (writeLock) {
+                return applyScoreUpdatesCopy(deltas);
+            }
+        }
+        List<Player> updated = new ArrayList<>(deltas.size());
+        for (Map.Entry<String, Integer> e : deltas.entrySet()) {
+            Integer delta = e.getValue();
+            if (e.getKey() == null || delta == null || delta == 0) {
+                continue;
+            }
+            Player player = playerMap.get(e.getKey());
+            if (player != null) {
+                updated.add(player);
+            }
+        }
+        int m = updated.size();
+        if (m == 0) {
+            return 0;
+        }
         
-        System.out.println("成功更新玩家 " + name + " 分數: " + oldScore + " → " + newScore);
-        return true;
+        int n = getSize(root);
+        int logN = 32 - Integer.numberOfLeadingZeros(n);
+        if ((long) m * logN < 4L * n) {
+            // 必須在修改分數前刪除，否則會找不到原本的位置
+            for (Player player : updated) {
+                root = delete(root, player);
+                player.score += deltas.get(player.name);
+            }
+            updated.sort(AVLLeaderboardSystem::comparePlayer);
+            for (Player player : updated) {
+                root = insert(root, player);
+            }
+        } else {
+            Set<Player> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+            affected.addAll(updated);
+            Player[] others = new Player[n - m];
+            LeaderboardNode[] nodes = new LeaderboardNode[n];
+            collectUnaffected(root, affected, others, nodes, new int[]{0, 0});
+            
+            for (Player player : updated) {
+                player.score += deltas.get(player.name);
+            }
+            updated.sort(AVLLeaderboardSystem::comparePlayer);
+            
+            Player[] merged = new Player[n];
+            int i = 0, j = 0, k = 0;
+            while (i < others.length && j < m) {
+                merged[k++] = comparePlayer(others[i], updated.get(j)) <= 0 ? others[i++] : updated.get(j++);
+            }
+            while (i < others.length) merged[k++] = others[i++];
+            while (j < m) merged[k++] = updated.get(j++);
+            
+            root = relinkBalanced(nodes, merged, 0, n - 1);
+        }
+        return m;
+    }
+    
+    private int applyScoreUpdatesCopy(Map<String, Integer> deltas) {
+        List<Player> stale = new ArrayList<>(deltas.size());
+        List<Player> updated = new ArrayList<>(deltas.size());
+        for (Map.Entry<String, Integer> e : deltas.entrySet()) {
+            Integer delta = e.getValue();
+            if (e.getKey() == null || delta == null || delta == 0) {
+                continue;
+            }
+            Player player = playerMap.get(e.getKey());
+            if (player != null) {
+                stale.add(player);
+                updated.add(new Player(player.name, player.score + delta, player.timestamp));
+            }
+        }
+        int m = updated.size();
+        if (m == 0) {
+            return 0;
+        }
+        updated.sort(AVLLeaderboardSystem::comparePlayer);
+        
+        LeaderboardNode newRoot = root;
+        int n = getSize(newRoot);
+        int logN = 32 - Integer.numberOfLeadingZeros(n);
+        if ((long) m * logN < 4L * n) {
+            for (Player player : stale) {
+                newRoot = deleteCopy(newRoot, player);
+            }
+            for (Player player : updated) {
+                newRoot = insertCopy(newRoot, player);
+            }
+        } else {
+            Set<Player> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+            affected.addAll(stale);
+            Player[] others = new Player[n - m];
+            collectUnaffected(newRoot, affected, others, new LeaderboardNode[n], new int[]{0, 0});
+            
+            Player[] merged = new Player[n];
+            int i = 0, j = 0, k = 0;
+            while (i < others.length && j < m) {
+                merged[k++] = comparePlayer(others[i], updated.get(j)) <= 0 ? others[i++] : updated.get(j++);
+            }
+            while (i < others.length) merged[k++] = others[i++];
+            while (j < m) merged[k++] = updated.get(j++);
+            
+            // 舊節點可能仍被讀者使用，只能配置新節點
+            newRoot = buildBalanced(merged, 0, n - 1);
+        }
+        
+        publishSeq++;
+        root = newRoot;
+        for (Player player : updated) {
+            playerMap.put(player.name, player);
+        }
+        publishSeq++;
+        return m;
+    }
+    
+    // 中序收集所有節點（供重建時重複使用）以及未受影響的玩家
+    private void collectUnaffected(LeaderboardNode node, Set<Player> affected, Player[] out,
+                                   LeaderboardNode[] nodes, int[] index) {
+        if (node == null) {
+            return;
+        }
+        collectUnaffected(node.left, affected, out, nodes, index);
+        nodes[index[1]++] = node;
+        if (!affected.contains(node.player)) {
+            out[index[0]++] = node.player;
+        }
+        collectUnaffected(node.right, affected, out, nodes, index);
+    }
+    
+    // 用既有節點依排序後的玩家重新串成完全平衡的樹，不配置新節點
+    private LeaderboardNode relinkBalanced(LeaderboardNode[] nodes, Player[] players, int lo, int hi) {
+        if (lo > hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        LeaderboardNode node = nodes[mid];
+        node.player = players[mid];
+        node.left = relinkBalanced(nodes, players, lo, mid - 1);
+        node.right = relinkBalanced(nodes, players, mid + 1, hi);
+        updateNode(node);
+        return node;
+    }
+    
+    /**
+     * 由已依排名排序的玩家直接建出完全平衡的樹，O(n)，供從快照復原時使用
+     * 只能用在空的排行榜；玩家未嚴格依排名排序時丟出 IllegalArgumentException
+     */
+    void loadRanked(Player[] ranked) {
+        if (root != null) {
+            throw new IllegalStateException("排行榜不是空的");
+        }
+        for (int i = 1; i < ranked.length; i++) {
+            if (comparePlayer(ranked[i - 1], ranked[i]) >= 0) {
+                throw new IllegalArgumentException("玩家未依排名排序: " + ranked[i - 1] + ", " + ranked[i]);
+            }
+        }
+        root = buildBalanced(ranked, 0, ranked.length - 1);
+        for (Player player : ranked) {
+            playerMap.put(player.name, player);
+        }
+    }
+    
+    private LeaderboardNode buildBalanced(Player[] players, int lo, int hi) {
+        if (lo > hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        return newNode(players[mid], buildBalanced(players, lo, mid - 1), buildBalanced(players, mid + 1, hi));
     }
     
     private LeaderboardNode delete(LeaderboardNode node, Player player) {
@@ -260,6 +460,204 @@ public class AVLLeaderboardSystem {
         return node;
     }
     
+    // ---- 快照模式的路徑複製操作：只建立新節點，不修改任何既有節點 ----
+    
+    private LeaderboardNode newNode(Player player, LeaderboardNode left, LeaderboardNode right) {
+        LeaderboardNode node = new LeaderboardNode(player);
+        node.left = left;
+        node.right = right;
+        updateNode(node);
+        return node;
+    }
+    
+    // 以 player 為根、left / right 為子樹組出新節點，失衡時直接組出旋轉後的形狀
+    private LeaderboardNode balancedNode(Player player, LeaderboardNode left, LeaderboardNode right) {
+        int balance = getHeight(left) - getHeight(right);
+        
+        if (balance > 1) {
+            // Left Left Case
+            if (getBalanceFactor(left) >= 0) {
+                return newNode(left.player, left.left, newNode(player, left.right, right));
+            }
+            // Left Right Case
+            LeaderboardNode lr = left.right;
+            return newNode(lr.player, newNode(left.player, left.left, lr.left), newNode(player, lr.right, right));
+        }
+        
+        if (balance < -1) {
+            // Right Right Case
+            if (getBalanceFactor(right) <= 0) {
+                return newNode(right.player, newNode(player, left, right.left), right.right);
+            }
+            // Right Left Case
+            LeaderboardNode rl = right.left;
+            return newNode(rl.player, newNode(player, left, rl.left), newNode(right.player, rl.right, right.right));
+        }
+        
+        return newNode(player, left, right);
+    }
+    
+    private LeaderboardNode insertCopy(LeaderboardNode node, Player player) {
+        if (node == null) {
+            return new LeaderboardNode(player);
+        }
+        
+        int cmp = comparePlayer(player, node.player);
+        if (cmp < 0) {
+            return balancedNode(node.player, insertCopy(node.left, player), node.right);
+        } else if (cmp > 0) {
+            return balancedNode(node.player, node.left, insertCopy(node.right, player));
+        }
+        return node;
+    }
+    
+    private LeaderboardNode deleteCopy(LeaderboardNode node, Player player) {
+        if (node == null) {
+            return null;
+        }
+        
+        int cmp = comparePlayer(player, node.player);
+        if (cmp < 0) {
+            return balancedNode(node.player, deleteCopy(node.left, player), node.right);
+        } else if (cmp > 0) {
+            return balancedNode(node.player, node.left, deleteCopy(node.right, player));
+        }
+        
+        if (node.left == null) {
+            return node.right;
+        } else if (node.right == null) {
+            return node.left;
+        }
+        Player successor = findMin(node.right).player;
+        return balancedNode(successor, node.left, deleteCopy(node.right, successor));
+    }
+    
+    /**
+     * 排行榜某一版本的唯讀檢視
+     * 建立後不受之後的寫入影響，所有查詢都在同一個版本上進行，可在任何執行緒使用。
+     * 只有快照模式保證寫入不會改動已取得的版本。
+     */
+    public final class Snapshot {
+        private final LeaderboardNode root;
+        
+        private Snapshot(LeaderboardNode root) {
+            this.root = root;
+        }
+        
+        public int size() {
+            return getSize(root);
+        }
+        
+        // 玩家在此版本的排名 (1-based)，不在此版本中回傳 -1
+        public int rankOf(Player player) {
+            int rank = exactRank(root, player);
+            return rank > 0 ? rank : -1;
+        }
+        
+        // 第 k 名玩家 (1-based)，超出範圍回傳 null
+        public Player selectKth(int k) {
+            return k < 1 || k > getSize(root) ? null : select(root, k);
+        }
+        
+        public List<Player> topK(int k) {
+            return rankWindow(root, 1, k);
+        }
+        
+        public int countInScoreRange(int minScore, int maxScore) {
+            return AVLLeaderboardSystem.this.countInScoreRange(root, minScore, maxScore);
+        }
+        
+        public List<Player> playersInScoreRange(int minScore, int maxScore) {
+            return scoreRangeWindow(root, minScore, maxScore);
+        }
+        
+        // 排名在 [rank - window, rank + window] 內的玩家，player 不在此版本中回傳空串列
+        public List<Player> playersAround(Player player, int window) {
+            int rank = exactRank(root, player);
+            return rank > 0 ? rankWindow(root, rank - window, rank + window) : Collections.emptyList();
+        }
+    }
+    
+    /**
+     * 取得目前已發佈版本的快照，O(1)
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(root);
+    }
+    
+    /**
+     * 不輸出訊息的排名查詢 (1-based)，玩家不存在時回傳 -1
+     * 快照模式下不需加鎖：playerMap 與 root 分開讀取，可能拿到不同版本的玩家而在樹中找不到，
+     * 此時若讀取期間有寫入者在發佈（publishSeq 為奇數或已改變）就重讀一次
+     */
+    public int rankOf(String name) {
+        return rankOf(name, null);
+    }
+    
+    // version 不為 null 時，version[0] 會設為查到排名的那個版本的 root
+    private int rankOf(String name, LeaderboardNode[] version) {
+        while (true) {
+            long seq = publishSeq;
+            Player player = playerMap.get(name);
+            if (player == null) {
+                return -1;
+            }
+            LeaderboardNode current = root;
+            int rank = exactRank(current, player);
+            if (rank > 0) {
+                if (version != null) {
+                    version[0] = current;
+                }
+                return rank;
+            }
+            if ((seq & 1) == 0 && seq == publishSeq) {
+                return -1;
+            }
+            Thread.onSpinWait();
+        }
+    }
+    
+    Player getPlayer(String name) {
+        return playerMap.get(name);
+    }
+    
+    // 排在 player 之前的玩家數（player 本身不必在樹中），O(log n)
+    int countAhead(Player player) {
+        LeaderboardNode node = root;
+        int count = 0;
+        while (node != null) {
+            if (comparePlayer(player, node.player) <= 0) {
+                node = node.left;
+            } else {
+                count += getSize(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return count;
+    }
+    
+    // 排名在 [from, to] 內的玩家，不輸出訊息
+    List<Player> playersRanked(int from, int to) {
+        return rankWindow(root, from, to);
+    }
+    
+    // 找到的節點必須就是同一個 Player 物件才算數，否則回傳 0
+    private int exactRank(LeaderboardNode node, Player player) {
+        int rank = 0;
+        while (node != null) {
+            int cmp = comparePlayer(player, node.player);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                rank += 1 + getSize(node.left);
+                node = node.right;
+            } else {
+                return node.player == player ? rank + 1 + getSize(node.left) : 0;
+            }
+        }
+        return 0;
+    }
+    
     /**
      * 3. 查詢玩家排名 (1-based)
      * 時間複雜度: O(log n)
@@ -270,8 +668,7 @@ public class AVLLeaderboardSystem {
             return -1;
         }
         
-        Player player = playerMap.get(name);
-        int rank = getRank(root, player);
+        int rank = rankOf(name);
         
         System.out.println("玩家 " + name + " 當前排名: 第 " + rank + " 名");
         return rank;
@@ -297,16 +694,15 @@ public class AVLLeaderboardSystem {
     
     /**
      * 4. 查詢前 K 名玩家
-     * 時間複雜度: O(k)
+     * 時間複雜度: O(log n + k)
      */
     public List<Player> getTopK(int k) {
-        List<Player> result = new ArrayList<>();
         if (k <= 0) {
-            return result;
+            return new ArrayList<>();
         }
         
         System.out.println("查詢前 " + k + " 名玩家:");
-        selectTopK(root, k, result);
+        List<Player> result = rankWindow(root, 1, k);
         
         for (int i = 0; i < result.size(); i++) {
             System.out.println("第 " + (i + 1) + " 名: " + result.get(i));
@@ -315,19 +711,67 @@ public class AVLLeaderboardSystem {
         return result;
     }
     
-    private void selectTopK(LeaderboardNode node, int k, List<Player> result) {
-        if (node == null || result.size() >= k) {
-            return;
+    /**
+     * 排名 (1-based) 落在 [from, to] 內的玩家，依排名排序；範圍會截到 [1, n]
+     * 只走進與範圍相交的子樹，時間複雜度 O(log n + k)，k 為回傳的玩家數
+     */
+    private List<Player> rankWindow(LeaderboardNode root, int from, int to) {
+        int lo = Math.max(1, from);
+        int hi = Math.min(getSize(root), to);
+        if (lo > hi) {
+            return new ArrayList<>();
         }
-        
-        // 中序遍歷（由於我們的比較函數，這會按排名順序遍歷）
-        selectTopK(node.left, k, result);
-        
-        if (result.size() < k) {
-            result.add(node.player);
+        Player[] out = new Player[hi - lo + 1];
+        collectRanks(root, 0, lo, hi, out, 0);
+        return Arrays.asList(out);
+    }
+    
+    // 把排名在 [lo, hi] 內的玩家依序寫入 out，before 是排在此子樹之前的玩家數，回傳下一個寫入位置
+    private int collectRanks(LeaderboardNode node, int before, int lo, int hi, Player[] out, int pos) {
+        if (node == null) {
+            return pos;
         }
-        
-        selectTopK(node.right, k, result);
+        int rank = before + getSize(node.left) + 1;
+        if (lo < rank) {
+            pos = collectRanks(node.left, before, lo, hi, out, pos);
+        }
+        if (lo <= rank && rank <= hi) {
+            out[pos++] = node.player;
+        }
+        if (hi > rank) {
+            pos = collectRanks(node.right, rank, lo, hi, out, pos);
+        }
+        return pos;
+    }
+    
+    // 分數 >= minScore 的玩家數，也就是這些玩家佔據的前幾名，O(log n)
+    private int countScoreAtLeast(LeaderboardNode node, long minScore) {
+        int count = 0;
+        while (node != null) {
+            if (node.player.score >= minScore) {
+                // 左子樹分數都不低於此節點
+                count += getSize(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+    
+    private int countInScoreRange(LeaderboardNode root, int minScore, int maxScore) {
+        if (minScore > maxScore) {
+            return 0;
+        }
+        return countScoreAtLeast(root, minScore) - countScoreAtLeast(root, (long) maxScore + 1);
+    }
+    
+    // 分數範圍內的玩家恰好佔據一段連續排名，先用兩次計數找出這段排名再取出
+    private List<Player> scoreRangeWindow(LeaderboardNode root, int minScore, int maxScore) {
+        if (minScore > maxScore) {
+            return new ArrayList<>();
+        }
+        return rankWindow(root, countScoreAtLeast(root, (long) maxScore + 1) + 1, countScoreAtLeast(root, minScore));
     }
     
     /**
@@ -362,20 +806,13 @@ public class AVLLeaderboardSystem {
     }
     
     /**
-     * 查詢分數範圍內的玩家
+     * 查詢分數範圍內的玩家（依排名排序）
+     * 時間複雜度: O(log n + k)
      */
     public List<Player> getPlayersInScoreRange(int minScore, int maxScore) {
-        List<Player> result = new ArrayList<>();
         System.out.println("查詢分數範圍 [" + minScore + ", " + maxScore + "] 內的玩家:");
         
-        // 創建虛擬玩家用於範圍查詢
-        Player minPlayer = new Player("", minScore, Long.MAX_VALUE);
-        Player maxPlayer = new Player("", maxScore, Long.MIN_VALUE);
-        
-        rangeQuery(root, minPlayer, maxPlayer, result);
-        
-        // 按排名排序
-        result.sort((p1, p2) -> comparePlayer(p1, p2));
+        List<Player> result = scoreRangeWindow(root, minScore, maxScore);
         
         for (Player player : result) {
             System.out.println("  " + player);
@@ -384,22 +821,25 @@ public class AVLLeaderboardSystem {
         return result;
     }
     
-    private void rangeQuery(LeaderboardNode node, Player minPlayer, Player maxPlayer, List<Player> result) {
-        if (node == null) {
-            return;
-        }
-        
-        if (node.player.score >= minPlayer.score && node.player.score <= maxPlayer.score) {
-            result.add(node.player);
-        }
-        
-        if (comparePlayer(minPlayer, node.player) < 0) {
-            rangeQuery(node.left, minPlayer, maxPlayer, result);
-        }
-        
-        if (comparePlayer(maxPlayer, node.player) > 0) {
-            rangeQuery(node.right, minPlayer, maxPlayer, result);
+    /**
+     * 分數範圍內的玩家數，不取出玩家
+     * 時間複雜度: O(log n)
+     */
+    public int countInScoreRange(int minScore, int maxScore) {
+        return countInScoreRange(root, minScore, maxScore);
+    }
+    
+    /**
+     * 排名在玩家前後 window 名以內的玩家（含自己），依排名排序；玩家不存在時回傳空串列
+     * 時間複雜度: O(log n + window)
+     */
+    public List<Player> playersAround(String name, int window) {
+        LeaderboardNode[] version = new LeaderboardNode[1];
+        int rank = rankOf(name, version);
+        if (rank < 0) {
+            return Collections.emptyList();
         }
+        return rankWindow(version[0], rank - window, rank + window);
     }
     
     /**
@@ -462,10 +902,285 @@ public class AVLLeaderboardSystem {
         }
     }
     
+    // 檢查 AVL 平衡、子樹大小與排序是否正確，回傳高度，不正確時回傳 -1
+    private int checkTree(LeaderboardNode node) {
+        if (node == null) {
+            return 0;
+        }
+        int lh = checkTree(node.left);
+        int rh = checkTree(node.right);
+        if (lh < 0 || rh < 0 || Math.abs(lh - rh) > 1) return -1;
+        if (node.height != 1 + Math.max(lh, rh)) return -1;
+        if (node.size != 1 + getSize(node.left) + getSize(node.right)) return -1;
+        if (node.left != null && comparePlayer(node.left.player, node.player) >= 0) return -1;
+        if (node.right != null && comparePlayer(node.right.player, node.player) <= 0) return -1;
+        return 1 + Math.max(lh, rh);
+    }
+    
+    private List<String> rankingNames() {
+        List<Player> players = new ArrayList<>();
+        inOrderTraversal(root, players);
+        List<String> names = new ArrayList<>(players.size());
+        for (Player p : players) names.add(p.name + ":" + p.score);
+        return names;
+    }
+    
+    /**
+     * 比較批次更新與逐筆 updateScore 的效能，並確認兩者結果一致
+     */
+    public static void benchmarkBatchUpdates(int players) {
+        System.out.println("=== 批次分數更新 vs 逐筆更新 (" + players + " 位玩家) ===");
+        System.out.printf("%-10s %14s %14s %10s %s%n", "批次大小", "逐筆 (ms)", "批次 (ms)", "加速", "結果");
+        Random random = new Random(7);
+        // 第一輪只用來暖身 JIT，不輸出結果
+        int[] sizes = {100, 1000, 10000, players / 2, players};
+        for (int round = 0; round < 2; round++) {
+            for (int m : sizes) {
+                AVLLeaderboardSystem single = new AVLLeaderboardSystem();
+                AVLLeaderboardSystem batch = new AVLLeaderboardSystem();
+                for (int i = 0; i < players; i++) {
+                    int score = random.nextInt(100000);
+                    single.addPlayerInternal(new Player("P" + i, score, i));
+                    batch.addPlayerInternal(new Player("P" + i, score, i));
+                }
+                
+                Map<String, Integer> deltas = new HashMap<>();
+                while (deltas.size() < m) {
+                    deltas.put("P" + random.nextInt(players), random.nextInt(2001) - 1000);
+                }
+                
+                // 避免建樹留下的垃圾在計時中被回收
+                System.gc();
+                long start = System.nanoTime();
+                for (Map.Entry<String, Integer> e : deltas.entrySet()) {
+                    single.updateScoreInternal(e.getKey(), single.playerMap.get(e.getKey()).score + e.getValue());
+                }
+                long singleTime = System.nanoTime() - start;
+                
+                System.gc();
+                start = System.nanoTime();
+                batch.applyScoreUpdates(deltas);
+                long batchTime = System.nanoTime() - start;
+                
+                boolean ok = batch.checkTree(batch.root) >= 0
+                    && batch.rankingNames().equals(single.rankingNames());
+                String probe = "P" + random.nextInt(players);
+                int rank = getRank(batch, probe);
+                ok = ok && rank == getRank(single, probe)
+                    && batch.select(batch.root, rank).name.equals(probe);
+                
+                if (round == 0) continue;
+                System.out.printf("%-10d %14.2f %14.2f %9.1fx %s%n", m, singleTime / 1e6, batchTime / 1e6,
+                    (double) singleTime / batchTime, ok ? "一致" : "不一致");
+            }
+        }
+        System.out.println();
+    }
+    
+    /**
+     * 量測各種查詢在不同玩家數下的單次耗時，並與中序走訪整棵樹的做法對照
+     * 輸出敏感的查詢只和 log n 與回傳筆數有關，玩家數放大 100 倍耗時應只小幅增加
+     */
+    public static void benchmarkQueries() {
+        System.out.println("=== 查詢耗時 (ns/op) ===");
+        System.out.printf("%-10s %10s %12s %12s %14s %16s %s%n", "玩家數", "前 10 名", "分數區間計數",
+            "前後 5 名", "區間取出 ~20", "中序走訪計數", "結果");
+        for (int n = 10000; n <= 1000000; n *= 10) {
+            AVLLeaderboardSystem board = new AVLLeaderboardSystem();
+            Random random = new Random(5);
+            // 分數範圍約為玩家數，讓寬度 20 的區間平均約有 20 位玩家
+            for (int i = 0; i < n; i++) {
+                board.addPlayerInternal(new Player("P" + i, random.nextInt(n), i));
+            }
+            int reps = 200000;
+            long sink = 0;
+            
+            long start = System.nanoTime();
+            for (int i = 0; i < reps; i++) {
+                sink += board.rankWindow(board.root, 1, 10).size();
+            }
+            double topK = (System.nanoTime() - start) / (double) reps;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < reps; i++) {
+                int min = random.nextInt(n);
+                sink += board.countInScoreRange(min, min + n / 10);
+            }
+            double count = (System.nanoTime() - start) / (double) reps;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < reps; i++) {
+                sink += board.playersAround("P" + random.nextInt(n), 5).size();
+            }
+            double around = (System.nanoTime() - start) / (double) reps;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < reps; i++) {
+                int min = random.nextInt(n);
+                sink += board.scoreRangeWindow(board.root, min, min + 19).size();
+            }
+            double range = (System.nanoTime() - start) / (double) reps;
+            
+            // 對照：走訪整棵樹逐一判斷分數
+            int scanReps = 20;
+            List<Player> all = new ArrayList<>(n);
+            start = System.nanoTime();
+            for (int i = 0; i < scanReps; i++) {
+                all.clear();
+                board.inOrderTraversal(board.root, all);
+                int c = 0;
+                for (Player player : all) {
+                    if (player.score >= 1000 && player.score <= 1000 + n / 10) c++;
+                }
+                sink += c;
+            }
+            double scan = (System.nanoTime() - start) / (double) scanReps;
+            
+            // 與逐一走訪的結果比對
+            boolean ok = true;
+            for (int i = 0; i < 50 && ok; i++) {
+                int min = random.nextInt(n);
+                int max = min + random.nextInt(n / 20);
+                List<Player> expected = new ArrayList<>();
+                for (Player player : all) {
+                    if (player.score >= min && player.score <= max) expected.add(player);
+                }
+                String name = "P" + random.nextInt(n);
+                int rank = board.rankOf(name);
+                List<Player> window = all.subList(Math.max(0, rank - 4), Math.min(n, rank + 3));
+                ok = board.countInScoreRange(min, max) == expected.size()
+                    && board.scoreRangeWindow(board.root, min, max).equals(expected)
+                    && board.playersAround(name, 3).equals(window)
+                    && board.rankWindow(board.root, 1, 10).equals(all.subList(0, 10));
+            }
+            
+            System.out.printf("%-10d %10.0f %12.0f %12.0f %14.0f %16.0f %s%n", n, topK, count, around, range, scan,
+                ok ? "一致" : "不一致");
+            if (sink == 42) System.out.println();
+        }
+        System.out.println();
+    }
+    
+    /**
+     * 一個寫入者持續更新分數時，量測讀者的查詢吞吐量
+     * 快照模式的讀者不加鎖；對照組是整個排行榜共用一把鎖。
+     * 每次讀取都確認 rankOf 與同一快照上的 selectKth / rankOf 互相一致。
+     */
+    public static void benchmarkConcurrentReads(int players, int maxReaders) throws InterruptedException {
+        System.out.println("=== 寫入進行中的讀取吞吐量 (" + players + " 位玩家，1 個寫入者) ===");
+        System.out.printf("%-6s %16s %16s %16s %16s %s%n", "讀者", "快照讀 (ops/s)", "快照寫 (ops/s)",
+            "全域鎖讀 (ops/s)", "全域鎖寫 (ops/s)", "結果");
+        // 第一輪只用來暖身 JIT
+        measureConcurrentReads(players, 2, true);
+        measureConcurrentReads(players, 2, false);
+        for (int readers = 1; readers <= maxReaders; readers *= 2) {
+            long[] snap = measureConcurrentReads(players, readers, true);
+            long[] locked = measureConcurrentReads(players, readers, false);
+            System.out.printf("%-6d %16d %16d %16d %16d %s%n", readers, snap[0], snap[1], locked[0], locked[1],
+                snap[2] == 0 && locked[2] == 0 ? "一致" : "不一致 " + (snap[2] + locked[2]));
+        }
+        System.out.println();
+    }
+    
+    // 回傳 {讀取 ops/s, 寫入 ops/s, 不一致次數}
+    private static long[] measureConcurrentReads(int players, int readers, boolean snapshotMode)
+            throws InterruptedException {
+        AVLLeaderboardSystem board = new AVLLeaderboardSystem(snapshotMode);
+        Random random = new Random(11);
+        for (int i = 0; i < players; i++) {
+            board.addPlayerInternal(new Player("P" + i, random.nextInt(100000), i));
+        }
+        String[] names = new String[players];
+        for (int i = 0; i < players; i++) names[i] = "P" + i;
+        
+        long durationNanos = 500_000_000L;
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong reads = new AtomicLong();
+        AtomicLong writes = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        
+        threads.add(new Thread(() -> {
+            ThreadLocalRandom rand = ThreadLocalRandom.current();
+            long count = 0;
+            awaitQuietly(start);
+            while (!stop.get()) {
+                String name = names[rand.nextInt(players)];
+                int score = rand.nextInt(100000);
+                if (snapshotMode) {
+                    board.updateScoreInternal(name, score);
+                } else {
+                    synchronized (board) {
+                        board.updateScoreInternal(name, score);
+                    }
+                }
+                count++;
+            }
+            writes.addAndGet(count);
+        }));
+        for (int r = 0; r < readers; r++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                long count = 0;
+                awaitQuietly(start);
+                while (!stop.get()) {
+                    String name = names[rand.nextInt(players)];
+                    boolean ok;
+                    if (snapshotMode) {
+                        ok = readConsistent(board, name, rand);
+                    } else {
+                        synchronized (board) {
+                            ok = readConsistent(board, name, rand);
+                        }
+                    }
+                    if (!ok) errors.incrementAndGet();
+                    count++;
+                }
+                reads.addAndGet(count);
+            }));
+        }
+        
+        for (Thread t : threads) t.start();
+        long startTime = System.nanoTime();
+        start.countDown();
+        Thread.sleep(durationNanos / 1_000_000);
+        stop.set(true);
+        for (Thread t : threads) t.join();
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        
+        if (board.checkTree(board.root) < 0 || board.getTotalPlayers() != players) {
+            errors.incrementAndGet();
+        }
+        return new long[]{(long) (reads.get() / seconds), (long) (writes.get() / seconds), errors.get()};
+    }
+    
+    private static boolean readConsistent(AVLLeaderboardSystem board, String name, ThreadLocalRandom rand) {
+        if (board.rankOf(name) < 1) {
+            return false;
+        }
+        Snapshot snapshot = board.snapshot();
+        int k = 1 + rand.nextInt(snapshot.size());
+        Player player = snapshot.selectKth(k);
+        return snapshot.rankOf(player) == k;
+    }
+    
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static int getRank(AVLLeaderboardSystem board, String name) {
+        return board.getRank(board.root, board.playerMap.get(name));
+    }
+    
     /**
      * 測試主程式
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
         System.out.println("=== AVL 樹遊戲排行榜系統 ===\n");
         
         AVLLeaderboardSystem leaderboard = new AVLLeaderboardSystem();
@@ -579,6 +1294,52 @@ public class AVLLeaderboardSystem {
         System.out.println("\n總玩家數: " + perfTest.getTotalPlayers());
         System.out.println("前 10 名:");
         perfTest.getTopK(10);
+        System.out.println();
+        
+        // 測試 9: 批次分數更新
+        System.out.println("=== 測試 9: 批次分數更新 ===");
+        Map<String, Integer> deltas = new LinkedHashMap<>();
+        deltas.put("Eve", 200);    // 850 → 1050
+        deltas.put("Diana", -100); // 990 → 890
+        deltas.put("Nobody", 10);  // 不存在，略過
+        System.out.println("套用分數變化 " + deltas + "，更新 " + leaderboard.applyScoreUpdates(deltas) + " 位玩家");
+        leaderboard.displayFullLeaderboard();
+        leaderboard.getPlayerRank("Eve");
+        leaderboard.selectKth(1);
+        leaderboard.getTopK(3);
+        System.out.println();
+        
+        benchmarkBatchUpdates(100000);
+        
+        // 測試 10: 快照模式
+        System.out.println("=== 測試 10: 快照模式 ===");
+        AVLLeaderboardSystem snapshotBoard = new AVLLeaderboardSystem(true);
+        for (int i = 0; i < playerNames.length; i++) {
+            snapshotBoard.addPlayerInternal(new Player(playerNames[i], playerScores[i], i));
+        }
+        Snapshot before = snapshotBoard.snapshot();
+        snapshotBoard.updateScoreInternal("Eve", 1000);
+        snapshotBoard.applyScoreUpdates(Map.of("Bob", 200, "Diana", -200));
+        Snapshot after = snapshotBoard.snapshot();
+        System.out.println("更新前的快照: 前 3 名 " + before.topK(3) + "，最後一名 " + before.selectKth(before.size()));
+        System.out.println("更新後的快照: 前 3 名 " + after.topK(3) + "，最後一名 " + after.selectKth(after.size()));
+        System.out.println("目前 Eve 的排名: " + snapshotBoard.rankOf("Eve"));
+        System.out.println("樹結構檢查: " + (snapshotBoard.checkTree(snapshotBoard.root) >= 0 ? "正確" : "錯誤"));
+        System.out.println();
+        
+        // 測試 11: 輸出敏感查詢
+        System.out.println("=== 測試 11: 分數區間計數與前後名次 ===");
+        System.out.println("分數 [900, 970] 內的玩家數: " + leaderboard.countInScoreRange(900, 970));
+        System.out.println("Alice 前後 2 名: " + leaderboard.playersAround("Alice", 2));
+        System.out.println("第 1 名前後 2 名: " + leaderboard.playersAround(leaderboard.rankWindow(leaderboard.root, 1, 1).get(0).name, 2));
+        System.out.println("快照中分數 [800, 900] 內的玩家: " + after.playersInScoreRange(800, 900)
+            + "，共 " + after.countInScoreRange(800, 900) + " 位");
+        System.out.println();
+        
+        benchmarkQueries();
+        
+        int cores = Runtime.getRuntime().availableProcessors();
+        benchmarkConcurrentReads(100000, Math.max(4, cores));
         
         System.out.println("\n=== 排行榜系統測試完成 ===");
     }
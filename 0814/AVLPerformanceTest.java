@@ -33,10 +33,22 @@ public class AVLPerformanceTest {
         }
     }
     
+    /**
+     * 效能測試共用的整數集合介面
+     */
+    interface IntTree {
+        void insert(int data);
+        boolean search(int data);
+        void delete(int data);
+        int size();
+        int height();
+        boolean isValidAVL();
+    }
+    
     /**
      * AVL 樹實現類
      */
-    static class AVLTree {
+    static class AVLTree implements IntTree {
         private AVLNode root;
         private int size;
         
@@ -218,7 +230,6 @@ public class AVLPerformanceTest {
                     AVLNode temp = findMin(node.right);
                     node.data = temp.data;
                     node.right = deleteNode(node.right, temp.data);
-                    size++;  // 補償上面的減法，因為實際只刪除一個節點
                 }
             }
             
@@ -321,6 +332,292 @@ public class AVLPerformanceTest {
         }
     }
     
+    /**
+     * 以 int[] 陣列存放節點的 AVL 樹（節點池）
+     *
+     * 所有節點放在同一個 int[]，每個節點連續佔 STRIDE 格：key、左子、右子、高度、子樹大小，
+     * 節點編號就是它在陣列中的起始位置，往下走一層只會碰到一段連續記憶體。
+     * 編號 0 是哨兵（高度與大小都是 0），代替 null，省去大部分的邊界判斷。
+     * 刪除的節點串成 free list（借用左子欄位當 next 指標）供之後的插入重複使用。
+     * 插入與刪除都不遞迴：往下走時把經過的節點記在 path 堆疊，再由下往上重新平衡。
+     * 陣列只在容量不足時加倍，暖機之後每次操作都不配置任何物件。
+     */
+    static class PooledAVLTree implements IntTree {
+        private static final int KEY = 0;
+        private static final int LEFT = 1;
+        private static final int RIGHT = 2;
+        private static final int HEIGHT = 3;
+        private static final int SIZE = 4;
+        private static final int STRIDE = 5;
+        private static final int NIL = 0;
+        // AVL 樹高最多約 1.44 log2(n)，n < 2^31 時不超過 45
+        private static final int MAX_HEIGHT = 64;
+        
+        private int[] nodes;
+        private final int[] path = new int[MAX_HEIGHT];
+        private int root = NIL;
+        private int freeList = NIL;
+        private int nextUnused = STRIDE;
+        
+        public PooledAVLTree() {
+            this(16);
+        }
+        
+        public PooledAVLTree(int initialCapacity) {
+            nodes = new int[(Math.max(1, initialCapacity) + 1) * STRIDE];
+        }
+        
+        private int allocate(int data) {
+            int node;
+            if (freeList != NIL) {
+                node = freeList;
+                freeList = nodes[node + LEFT];
+            } else {
+                if (nextUnused + STRIDE > nodes.length) {
+                    grow();
+                }
+                node = nextUnused;
+                nextUnused += STRIDE;
+            }
+            nodes[node + KEY] = data;
+            nodes[node + LEFT] = NIL;
+            nodes[node + RIGHT] = NIL;
+            nodes[node + HEIGHT] = 1;
+            nodes[node + SIZE] = 1;
+            return node;
+        }
+        
+        private void release(int node) {
+            nodes[node + LEFT] = freeList;
+            freeList = node;
+        }
+        
+        private void grow() {
+            long capacity = (long) nodes.length * 2;
+            if (capacity > Integer.MAX_VALUE - 8) {
+                capacity = Integer.MAX_VALUE - 8;
+                if (capacity - nodes.length < STRIDE) {
+                    throw new IllegalStateException("節點池已滿");
+                }
+            }
+            nodes = Arrays.copyOf(nodes, (int) capacity);
+        }
+        
+        private void update(int node) {
+            int l = nodes[node + LEFT];
+            int r = nodes[node + RIGHT];
+            nodes[node + HEIGHT] = Math.max(nodes[l + HEIGHT], nodes[r + HEIGHT]) + 1;
+            nodes[node + SIZE] = nodes[l + SIZE] + nodes[r + SIZE] + 1;
+        }
+        
+        private int balanceOf(int node) {
+            return nodes[nodes[node + LEFT] + HEIGHT] - nodes[nodes[node + RIGHT] + HEIGHT];
+        }
+        
+        private int rightRotate(int y) {
+            int x = nodes[y + LEFT];
+            nodes[y + LEFT] = nodes[x + RIGHT];
+            nodes[x + RIGHT] = y;
+            update(y);
+            update(x);
+            return x;
+        }
+        
+        private int leftRotate(int x) {
+            int y = nodes[x + RIGHT];
+            nodes[x + RIGHT] = nodes[y + LEFT];
+            nodes[y + LEFT] = x;
+            update(x);
+            update(y);
+            return y;
+        }
+        
+        private int rebalance(int node) {
+            update(node);
+            int balance = balanceOf(node);
+            if (balance > 1) {
+                if (balanceOf(nodes[node + LEFT]) < 0) {
+                    nodes[node + LEFT] = leftRotate(nodes[node + LEFT]);
+                }
+                return rightRotate(node);
+            }
+            if (balance < -1) {
+                if (balanceOf(nodes[node + RIGHT]) > 0) {
+                    nodes[node + RIGHT] = rightRotate(nodes[node + RIGHT]);
+                }
+                return leftRotate(node);
+            }
+            return node;
+        }
+        
+        // 把 parent 指向 oldChild 的連結改成 newChild；parent 為 NIL 代表 oldChild 是根
+        private void replaceChild(int parent, int oldChild, int newChild) {
+            if (parent == NIL) {
+                root = newChild;
+            } else if (nodes[parent + LEFT] == oldChild) {
+                nodes[parent + LEFT] = newChild;
+            } else {
+                nodes[parent + RIGHT] = newChild;
+            }
+        }
+        
+        // 由 path[depth - 1] 往上到根，逐一更新並重新平衡
+        private void fixUp(int depth) {
+            for (int i = depth - 1; i >= 0; i--) {
+                int node = path[i];
+                int balanced = rebalance(node);
+                if (balanced != node) {
+                    replaceChild(i == 0 ? NIL : path[i - 1], node, balanced);
+                }
+            }
+        }
+        
+        public void insert(int data) {
+            int depth = 0;
+            int node = root;
+            while (node != NIL) {
+                path[depth++] = node;
+                int nodeKey = nodes[node + KEY];
+                if (data < nodeKey) {
+                    node = nodes[node + LEFT];
+                } else if (data > nodeKey) {
+                    node = nodes[node + RIGHT];
+                } else {
+                    // 重複值不插入
+                    return;
+                }
+            }
+            
+            int created = allocate(data);
+            if (depth == 0) {
+                root = created;
+            } else {
+                int parent = path[depth - 1];
+                nodes[parent + (data < nodes[parent + KEY] ? LEFT : RIGHT)] = created;
+            }
+            fixUp(depth);
+        }
+        
+        public boolean search(int data) {
+            int node = root;
+            while (node != NIL) {
+                int nodeKey = nodes[node + KEY];
+                if (data == nodeKey) {
+                    return true;
+                }
+                node = nodes[node + (data < nodeKey ? LEFT : RIGHT)];
+            }
+            return false;
+        }
+        
+        public void delete(int data) {
+            int depth = 0;
+            int node = root;
+            while (node != NIL && nodes[node + KEY] != data) {
+                path[depth++] = node;
+                node = nodes[node + (data < nodes[node + KEY] ? LEFT : RIGHT)];
+            }
+            if (node == NIL) {
+                return;
+            }
+            
+            if (nodes[node + LEFT] != NIL && nodes[node + RIGHT] != NIL) {
+                // 有兩個子節點：把後繼的 key 搬上來，改成刪除後繼（後繼沒有左子節點）
+                path[depth++] = node;
+                int successor = nodes[node + RIGHT];
+                while (nodes[successor + LEFT] != NIL) {
+                    path[depth++] = successor;
+                    successor = nodes[successor + LEFT];
+                }
+                nodes[node + KEY] = nodes[successor + KEY];
+                node = successor;
+            }
+            
+            int child = nodes[node + LEFT] != NIL ? nodes[node + LEFT] : nodes[node + RIGHT];
+            replaceChild(depth == 0 ? NIL : path[depth - 1], node, child);
+            release(node);
+            fixUp(depth);
+        }
+        
+        /**
+         * 第 k 小的 key (1-based)，利用子樹大小 O(log n)
+         */
+        public int select(int k) {
+            if (k < 1 || k > size()) {
+                throw new IndexOutOfBoundsException("k = " + k + ", size = " + size());
+            }
+            int node = root;
+            while (true) {
+                int leftSize = nodes[nodes[node + LEFT] + SIZE];
+                if (k <= leftSize) {
+                    node = nodes[node + LEFT];
+                } else if (k == leftSize + 1) {
+                    return nodes[node + KEY];
+                } else {
+                    k -= leftSize + 1;
+                    node = nodes[node + RIGHT];
+                }
+            }
+        }
+        
+        public int size() {
+            return nodes[root + SIZE];
+        }
+        
+        public int height() {
+            return nodes[root + HEIGHT];
+        }
+        
+        public boolean isEmpty() {
+            return root == NIL;
+        }
+        
+        /**
+         * 中序遍歷（同樣用堆疊，不遞迴）
+         */
+        public void inorderTraversal() {
+            int depth = 0;
+            int node = root;
+            while (node != NIL || depth > 0) {
+                while (node != NIL) {
+                    path[depth++] = node;
+                    node = nodes[node + LEFT];
+                }
+                node = path[--depth];
+                System.out.print(nodes[node + KEY] + " ");
+                node = nodes[node + RIGHT];
+            }
+            System.out.println();
+        }
+        
+        /**
+         * 驗證 AVL 平衡、排序、高度與子樹大小
+         */
+        public boolean isValidAVL() {
+            return checkAVL(root, Long.MIN_VALUE, Long.MAX_VALUE) != -1;
+        }
+        
+        private int checkAVL(int node, long low, long high) {
+            if (node == NIL) {
+                return 0;
+            }
+            int nodeKey = nodes[node + KEY];
+            if (nodeKey <= low || nodeKey >= high) {
+                return -1;
+            }
+            int leftHeight = checkAVL(nodes[node + LEFT], low, nodeKey);
+            int rightHeight = checkAVL(nodes[node + RIGHT], nodeKey, high);
+            if (leftHeight == -1 || rightHeight == -1 || Math.abs(leftHeight - rightHeight) > 1) {
+                return -1;
+            }
+            if (nodes[node + HEIGHT] != Math.max(leftHeight, rightHeight) + 1
+                || nodes[node + SIZE] != nodes[nodes[node + LEFT] + SIZE] + nodes[nodes[node + RIGHT] + SIZE] + 1) {
+                return -1;
+            }
+            return Math.max(leftHeight, rightHeight) + 1;
+        }
+    }
+    
     /**
      * 主測試方法
      */
@@ -351,11 +648,28 @@ public class AVLPerformanceTest {
         System.out.println("搜尋 35: " + (basicTree.search(35) ? "找到" : "未找到"));
         System.out.println();
         
+        System.out.println("陣列節點池版本：");
+        PooledAVLTree pooledTree = new PooledAVLTree();
+        for (int value : testValues) {
+            pooledTree.insert(value);
+        }
+        System.out.print("中序遍歷: ");
+        pooledTree.inorderTraversal();
+        System.out.println("樹大小: " + pooledTree.size() + ", 高度: " + pooledTree.height()
+            + ", 是否平衡: " + pooledTree.isValidAVL() + ", 第 3 小: " + pooledTree.select(3));
+        pooledTree.delete(30);
+        pooledTree.delete(35);
+        System.out.print("刪除 30 後: ");
+        pooledTree.inorderTraversal();
+        System.out.println();
+        
         // 性能測試
         System.out.println("2. 性能測試：");
         performanceTest(1000, "小規模");
         performanceTest(10000, "中規模");
         performanceTest(100000, "大規模");
+        performanceTest(1000000, "百萬");
+        performanceTest(10000000, "千萬");
         
         // 比較測試
         System.out.println("\n3. 與理論時間複雜度比較：");
@@ -363,65 +677,70 @@ public class AVLPerformanceTest {
     }
     
     /**
-     * 性能測試方法
+     * 性能測試方法：物件節點版與陣列節點池版使用相同資料，結果並列
      */
     private static void performanceTest(int n, String scale) {
         System.out.println("\n--- " + scale + "測試 (n = " + n + ") ---");
         
-        AVLTree avlTree = new AVLTree();
         Random random = new Random(42); // 使用固定種子保證可重現性
         
-        // 生成測試資料
-        List<Integer> insertData = new ArrayList<>();
-        List<Integer> searchData = new ArrayList<>();
+        // 生成測試資料（int[]，避免千萬筆 Integer 佔用過多記憶體）
+        int[] insertData = new int[n];
+        int[] searchData = new int[Math.min(n, 10000)];
         
         for (int i = 0; i < n; i++) {
-            insertData.add(random.nextInt(n * 10));
+            insertData[i] = random.nextInt(n * 10);
         }
         
-        for (int i = 0; i < Math.min(n, 10000); i++) {
-            searchData.add(random.nextInt(n * 10));
+        for (int i = 0; i < searchData.length; i++) {
+            searchData[i] = random.nextInt(n * 10);
         }
         
-        // 插入測試
-        long startTime = System.nanoTime();
-        for (int value : insertData) {
-            avlTree.insert(value);
-        }
-        long insertTime = System.nanoTime() - startTime;
+        int deleteCount = Math.min(n / 10, 1000);
+        System.out.printf("%-8s %12s %12s %12s %10s %6s %6s %14s %14s\n", "版本", "插入(ms)", "搜尋(ms)",
+                         "刪除(ms)", "大小", "高度", "平衡", "平均插入(μs)", "平均搜尋(μs)");
         
-        // 搜尋測試
-        startTime = System.nanoTime();
-        int foundCount = 0;
-        for (int value : searchData) {
-            if (avlTree.search(value)) {
-                foundCount++;
+        for (int engine = 0; engine < 2; engine++) {
+            IntTree tree = engine == 0 ? new AVLTree() : new PooledAVLTree();
+            // 讓上一輪留下的樹先被回收，不算進這一輪的時間
+            System.gc();
+            
+            // 插入測試
+            long startTime = System.nanoTime();
+            for (int value : insertData) {
+                tree.insert(value);
+            }
+            long insertTime = System.nanoTime() - startTime;
+            
+            // 搜尋測試
+            startTime = System.nanoTime();
+            int foundCount = 0;
+            for (int value : searchData) {
+                if (tree.search(value)) {
+                    foundCount++;
+                }
+            }
+            long searchTime = System.nanoTime() - startTime;
+            
+            // 刪除測試
+            startTime = System.nanoTime();
+            for (int i = 0; i < deleteCount; i++) {
+                tree.delete(insertData[i]);
+            }
+            long deleteTime = System.nanoTime() - startTime;
+            
+            // 計算平均時間
+            double avgInsertTime = (double) insertTime / n / 1000; // 微秒
+            double avgSearchTime = (double) searchTime / searchData.length / 1000; // 微秒
+            
+            System.out.printf("%-8s %12.1f %12.2f %12.2f %10d %6d %6s %14.3f %14.3f\n",
+                             engine == 0 ? "物件節點" : "陣列節點池", insertTime / 1e6, searchTime / 1e6,
+                             deleteTime / 1e6, tree.size(), tree.height(), tree.isValidAVL() ? "是" : "否",
+                             avgInsertTime, avgSearchTime);
+            if (engine == 1) {
+                System.out.printf("(搜尋 %d 次找到 %d 個，刪除 %d 個元素)\n", searchData.length, foundCount, deleteCount);
             }
         }
-        long searchTime = System.nanoTime() - startTime;
-        
-        // 刪除測試
-        startTime = System.nanoTime();
-        for (int i = 0; i < Math.min(n / 10, 1000); i++) {
-            avlTree.delete(insertData.get(i));
-        }
-        long deleteTime = System.nanoTime() - startTime;
-        
-        // 輸出結果
-        System.out.printf("插入 %d 個元素耗時: %d ms\n", n, insertTime / 1_000_000);
-        System.out.printf("搜尋 %d 次耗時: %d ms (找到 %d 個)\n", 
-                         searchData.size(), searchTime / 1_000_000, foundCount);
-        System.out.printf("刪除 %d 個元素耗時: %d ms\n", 
-                         Math.min(n / 10, 1000), deleteTime / 1_000_000);
-        System.out.printf("最終樹大小: %d, 高度: %d\n", avlTree.size(), avlTree.height());
-        System.out.printf("是否仍然平衡: %s\n", avlTree.isValidAVL() ? "是" : "否");
-        
-        // 計算平均時間
-        double avgInsertTime = (double) insertTime / n / 1000; // 微秒
-        double avgSearchTime = (double) searchTime / searchData.size() / 1000; // 微秒
-        
-        System.out.printf("平均插入時間: %.2f μs\n", avgInsertTime);
-        System.out.printf("平均搜尋時間: %.2f μs\n", avgSearchTime);
     }
     
     /**
@@ -4,27 +4,34 @@
  */
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
 
-// AVL 樹節點類別
-class AVLNode {
-    int data;
-    AVLNode left, right;
-    int height;
-    
-    public AVLNode(int data) {
-        this.data = data;
-        this.left = null;
-        this.right = null;
-        this.height = 1; // 新節點的高度為1
+public class AVLRangeQueryExercise {
+    // AVL 樹節點類別（巢狀類別，避免與同目錄其他檔案的頂層 AVLNode 互相覆寫 class 檔）
+    private static class AVLNode {
+        int data;
+        AVLNode left, right;
+        int height;
+        int size;  // 子樹節點數
+        long sum;  // 子樹鍵值總和
+        
+        public AVLNode(int data) {
+            this.data = data;
+            this.left = null;
+            this.right = null;
+            this.height = 1; // 新節點的高度為1
+            this.size = 1;
+            this.sum = data;
+        }
+        
+        @Override
+        public String toString() {
+            return "Node(" + data + ", h=" + height + ")";
+        }
     }
     
-    @Override
-    public String toString() {
-        return "Node(" + data + ", h=" + height + ")";
-    }
-}
-
-public class AVLRangeQueryExercise {
     private AVLNode root;
     private int visitedNodes; // 用於統計實際訪問的節點數
     
@@ -42,12 +49,22 @@ public class AVLRangeQueryExercise {
         return node.height;
     }
     
-    // 更新節點高度
+    private int getSize(AVLNode node) {
+        return node == null ? 0 : node.size;
+    }
+    
+    private long getSum(AVLNode node) {
+        return node == null ? 0 : node.sum;
+    }
+    
+    // 更新節點高度，同時維護子樹大小與總和（子節點改變後都要呼叫）
     private void updateHeight(AVLNode node) {
         if (node != null) {
             int leftHeight = getHeight(node.left);
             int rightHeight = getHeight(node.right);
             node.height = 1 + Math.max(leftHeight, rightHeight);
+            node.size = 1 + getSize(node.left) + getSize(node.right);
+            node.sum = node.data + getSum(node.left) + getSum(node.right);
         }
     }
     
@@ -264,68 +281,285 @@ public class AVLRangeQueryExercise {
     
     /**
      * 計算範圍內元素數量（不需要儲存所有元素）
+     * 利用子樹大小，只走兩條從根往下的路徑: O(log n)
      */
     public int countInRange(int min, int max) {
-        return countInRangeRec(root, min, max);
+        if (min > max) {
+            return 0;
+        }
+        return countBelow(max, true) - countBelow(min, false);
     }
     
-    private int countInRangeRec(AVLNode node, int min, int max) {
-        if (node == null) {
+    /**
+     * 範圍內元素總和，利用子樹總和: O(log n)
+     */
+    public long sumInRange(int min, int max) {
+        if (min > max) {
             return 0;
         }
-        
-        if (node.data > max) {
-            return countInRangeRec(node.left, min, max);
-        } else if (node.data < min) {
-            return countInRangeRec(node.right, min, max);
-        } else {
-            return 1 + countInRangeRec(node.left, min, max) + countInRangeRec(node.right, min, max);
+        return sumBelow(max, true) - sumBelow(min, false);
+    }
+    
+    // 鍵值 < bound（inclusive 時為 <=）的元素數
+    private int countBelow(int bound, boolean inclusive) {
+        int count = 0;
+        AVLNode node = root;
+        while (node != null) {
+            if (node.data < bound || (inclusive && node.data == bound)) {
+                count += getSize(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
         }
+        return count;
+    }
+    
+    // 鍵值 < bound（inclusive 時為 <=）的元素總和
+    private long sumBelow(int bound, boolean inclusive) {
+        long sum = 0;
+        AVLNode node = root;
+        while (node != null) {
+            if (node.data < bound || (inclusive && node.data == bound)) {
+                sum += getSum(node.left) + node.data;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return sum;
     }
     
     /**
-     * 找出範圍內的最小值
+     * 找出範圍內的最小值：也就是第一個 >= min 的元素，只走一條路徑 O(log n)
      */
     public Integer findMinInRange(int min, int max) {
-        return findMinInRangeRec(root, min, max);
+        AVLNode candidate = null;
+        AVLNode node = root;
+        while (node != null) {
+            if (node.data >= min) {
+                candidate = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return candidate != null && candidate.data <= max ? candidate.data : null;
     }
     
-    private Integer findMinInRangeRec(AVLNode node, int min, int max) {
-        if (node == null) {
-            return null;
+    /**
+     * 找出範圍內的最大值：也就是最後一個 <= max 的元素，O(log n)
+     */
+    public Integer findMaxInRange(int min, int max) {
+        AVLNode candidate = null;
+        AVLNode node = root;
+        while (node != null) {
+            if (node.data <= max) {
+                candidate = node;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return candidate != null && candidate.data >= min ? candidate.data : null;
+    }
+    
+    /**
+     * 惰性走訪 [min, max] 的游標，以 nextInt() 逐一取出 int，不建立 List 也不裝箱
+     * 用一個固定大小的陣列當堆疊（AVL 高度有上限），建立之後走訪過程不再配置記憶體；
+     * 取出 k 個元素總共 O(log n + k)。走訪期間不可修改樹。
+     */
+    public RangeCursor cursor(int min, int max) {
+        return new RangeCursor(min, max);
+    }
+    
+    /**
+     * 對 [min, max] 內每個元素依序呼叫 action，整個走訪只配置一個游標
+     */
+    public void forEachInRange(int min, int max, IntConsumer action) {
+        cursor(min, max).forEachRemaining(action);
+    }
+    
+    public final class RangeCursor implements PrimitiveIterator.OfInt {
+        private final AVLNode[] stack;
+        private int top;
+        private final int max;
+        
+        private RangeCursor(int min, int max) {
+            // 堆疊最多放一條根到葉的路徑
+            this.stack = new AVLNode[getHeight(root) + 1];
+            this.max = max;
+            if (min > max) {
+                return;
+            }
+            // 把通往第一個 >= min 元素的路徑上、所有 >= min 的節點放進堆疊
+            AVLNode node = root;
+            while (node != null) {
+                if (node.data >= min) {
+                    stack[top++] = node;
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
         }
         
-        if (node.data > max) {
-            return findMinInRangeRec(node.left, min, max);
-        } else if (node.data < min) {
-            return findMinInRangeRec(node.right, min, max);
-        } else {
-            // 當前節點在範圍內
-            Integer leftMin = findMinInRangeRec(node.left, min, max);
-            return leftMin != null ? leftMin : node.data;
+        @Override
+        public boolean hasNext() {
+            return top > 0 && stack[top - 1].data <= max;
+        }
+        
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            AVLNode node = stack[--top];
+            // 下一個元素是右子樹的最左節點
+            for (AVLNode next = node.right; next != null; next = next.left) {
+                stack[top++] = next;
+            }
+            return node.data;
         }
     }
     
     /**
-     * 找出範圍內的最大值
+     * 範圍統計：數量、總和、最小、最大，以及把 [rangeMin, rangeMax] 等分成數個區間的直方圖
+     * 子任務各自累積一份，最後以 merge 合併
      */
-    public Integer findMaxInRange(int min, int max) {
-        return findMaxInRangeRec(root, min, max);
+    public static final class RangeStats {
+        public final int rangeMin;
+        public final int rangeMax;
+        public long count;
+        public long sum;
+        public int minValue = Integer.MAX_VALUE;
+        public int maxValue = Integer.MIN_VALUE;
+        public final long[] histogram;
+        
+        RangeStats(int rangeMin, int rangeMax, int buckets) {
+            if (buckets < 1) {
+                throw new IllegalArgumentException("buckets must be at least 1: " + buckets);
+            }
+            this.rangeMin = rangeMin;
+            this.rangeMax = rangeMax;
+            this.histogram = new long[buckets];
+        }
+        
+        void add(int value) {
+            count++;
+            sum += value;
+            minValue = Math.min(minValue, value);
+            maxValue = Math.max(maxValue, value);
+            long width = (long) rangeMax - rangeMin + 1;
+            histogram[(int) (((long) value - rangeMin) * histogram.length / width)]++;
+        }
+        
+        void merge(RangeStats other) {
+            count += other.count;
+            sum += other.sum;
+            minValue = Math.min(minValue, other.minValue);
+            maxValue = Math.max(maxValue, other.maxValue);
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+        }
+        
+        boolean sameAs(RangeStats other) {
+            return count == other.count && sum == other.sum && minValue == other.minValue
+                && maxValue == other.maxValue && Arrays.equals(histogram, other.histogram);
+        }
+        
+        @Override
+        public String toString() {
+            return "count=" + count + ", sum=" + sum + ", min=" + minValue + ", max=" + maxValue
+                + ", histogram=" + Arrays.toString(histogram);
+        }
     }
     
-    private Integer findMaxInRangeRec(AVLNode node, int min, int max) {
-        if (node == null) {
-            return null;
+    // 子樹小於這個節點數就不再分割，直接在目前的執行緒裡走完
+    static final int PARALLEL_THRESHOLD = 1 << 13;
+    
+    /**
+     * 循序計算 [min, max] 的範圍統計，直方圖分成 buckets 個等寬區間
+     * @throws IllegalArgumentException buckets 小於 1
+     */
+    public RangeStats rangeStats(int min, int max, int buckets) {
+        RangeStats stats = new RangeStats(min, max, buckets);
+        if (min <= max) {
+            collectStats(root, min, max, stats);
+        }
+        return stats;
+    }
+    
+    /**
+     * 以 fork-join 平行計算範圍統計
+     * 範圍內、且子樹超過 PARALLEL_THRESHOLD 個節點的節點把左子樹 fork 出去，自己處理右子樹，
+     * 最後合併兩邊的部分結果；樹是平衡的，子樹大小又已知，分出去的工作量大致均等。
+     * 走訪期間不可修改樹。
+     * @throws IllegalArgumentException buckets 小於 1
+     */
+    public RangeStats rangeStatsParallel(int min, int max, int buckets, ForkJoinPool pool) {
+        if (buckets < 1) {
+            throw new IllegalArgumentException("buckets must be at least 1: " + buckets);
+        }
+        if (min > max) {
+            return new RangeStats(min, max, buckets);
+        }
+        return pool.invoke(new RangeStatsTask(root, min, max, buckets));
+    }
+    
+    // 與 rangeQueryRec 相同的剪枝，只是不印出過程、改為累積統計
+    private static void collectStats(AVLNode node, int min, int max, RangeStats stats) {
+        while (node != null) {
+            if (node.data > max) {
+                node = node.left;
+            } else if (node.data < min) {
+                node = node.right;
+            } else {
+                collectStats(node.left, min, max, stats);
+                stats.add(node.data);
+                node = node.right;
+            }
+        }
+    }
+    
+    private static final class RangeStatsTask extends RecursiveTask<RangeStats> {
+        private static final long serialVersionUID = 1L;
+        
+        private final AVLNode node;
+        private final int min;
+        private final int max;
+        private final int buckets;
+        
+        RangeStatsTask(AVLNode node, int min, int max, int buckets) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+            this.buckets = buckets;
         }
         
-        if (node.data > max) {
-            return findMaxInRangeRec(node.left, min, max);
-        } else if (node.data < min) {
-            return findMaxInRangeRec(node.right, min, max);
-        } else {
-            // 當前節點在範圍內
-            Integer rightMax = findMaxInRangeRec(node.right, min, max);
-            return rightMax != null ? rightMax : node.data;
+        @Override
+        protected RangeStats compute() {
+            RangeStats stats = new RangeStats(min, max, buckets);
+            AVLNode current = node;
+            // 範圍外的節點只會往一邊走，不值得分割
+            while (current != null && (current.data > max || current.data < min)) {
+                current = current.data > max ? current.left : current.right;
+            }
+            if (current == null) {
+                return stats;
+            }
+            if (current.size <= PARALLEL_THRESHOLD) {
+                collectStats(current, min, max, stats);
+                return stats;
+            }
+            RangeStatsTask leftTask = new RangeStatsTask(current.left, min, max, buckets);
+            leftTask.fork();
+            RangeStats right = new RangeStatsTask(current.right, min, max, buckets).compute();
+            stats.merge(leftTask.join());
+            stats.add(current.data);
+            stats.merge(right);
+            return stats;
         }
     }
     
@@ -333,14 +567,7 @@ public class AVLRangeQueryExercise {
      * 輔助方法
      */
     public int size() {
-        return sizeRec(root);
-    }
-    
-    private int sizeRec(AVLNode node) {
-        if (node == null) {
-            return 0;
-        }
-        return 1 + sizeRec(node.left) + sizeRec(node.right);
+        return getSize(root);
     }
     
     public void inOrderTraversal() {
@@ -507,6 +734,145 @@ public class AVLRangeQueryExercise {
                              " (" + String.format("%.1f", 100.0 * largeAVL.visitedNodes / largeAVL.size()) + "%)");
         }
         
+        // 測試 6: 大範圍掃描
+        System.out.println("\n=== 測試 6: 游標與子樹聚合 ===");
+        scanBenchmark();
+        
+        // 測試 7: 平行範圍統計
+        System.out.println("\n=== 測試 7: fork-join 平行範圍統計 ===");
+        parallelBenchmark();
+        
         System.out.println("\n=== 範圍查詢測試完成 ===");
     }
+    
+    /**
+     * 插入一百萬個隨機值後，比較三種取得範圍總和的方式：
+     * 裝箱收集成 List、以 int 游標逐一走訪、直接用子樹總和；並以隨機範圍驗證聚合結果
+     */
+    private static void scanBenchmark() {
+        int n = 1000000;
+        AVLRangeQueryExercise tree = new AVLRangeQueryExercise();
+        Random random = new Random(7);
+        for (int i = 0; i < n; i++) {
+            tree.insert(random.nextInt(4 * n));
+        }
+        
+        boolean ok = true;
+        for (int i = 0; i < 1000 && ok; i++) {
+            int a = random.nextInt(4 * n);
+            int b = a + random.nextInt(20000);
+            int count = 0;
+            long sum = 0;
+            Integer first = null;
+            int last = 0;
+            RangeCursor cursor = tree.cursor(a, b);
+            while (cursor.hasNext()) {
+                int value = cursor.nextInt();
+                if (first == null) first = value;
+                last = value;
+                count++;
+                sum += value;
+            }
+            ok = count == tree.countInRange(a, b) && sum == tree.sumInRange(a, b)
+                && Objects.equals(first, tree.findMinInRange(a, b))
+                && (count == 0 ? tree.findMaxInRange(a, b) == null : tree.findMaxInRange(a, b) == last);
+        }
+        System.out.println("1000 個隨機範圍的數量/總和/最小/最大與游標走訪結果比對: " + (ok ? "一致" : "錯誤"));
+        
+        int min = n / 2;
+        int max = 3 * n;
+        System.out.printf("樹大小 %d，掃描範圍 [%d, %d]，共 %d 個元素%n", tree.size(), min, max,
+            tree.countInRange(min, max));
+        System.out.printf("%-16s %12s %20s%n", "方式", "耗時(ms)", "總和");
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            List<Integer> boxed = new ArrayList<>();
+            tree.forEachInRange(min, max, boxed::add);
+            long boxedSum = 0;
+            for (int value : boxed) boxedSum += value;
+            long boxedTime = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            long cursorSum = 0;
+            RangeCursor cursor = tree.cursor(min, max);
+            while (cursor.hasNext()) {
+                cursorSum += cursor.nextInt();
+            }
+            long cursorTime = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            long aggregateSum = tree.sumInRange(min, max);
+            long aggregateTime = System.nanoTime() - start;
+            
+            if (round == 2) {
+                System.out.printf("%-16s %12.3f %20d%n", "List<Integer>", boxedTime / 1e6, boxedSum);
+                System.out.printf("%-16s %12.3f %20d%n", "int 游標", cursorTime / 1e6, cursorSum);
+                System.out.printf("%-16s %12.3f %20d%n", "子樹總和", aggregateTime / 1e6, aggregateSum);
+            }
+        }
+    }
+    
+    /**
+     * 在一百萬個隨機值的樹上，以不同範圍寬度與平行度比較循序與 fork-join 範圍統計的耗時
+     */
+    private static void parallelBenchmark() {
+        int n = 1000000;
+        int keySpace = 4 * n;
+        AVLRangeQueryExercise tree = new AVLRangeQueryExercise();
+        Random random = new Random(11);
+        for (int i = 0; i < n; i++) {
+            tree.insert(random.nextInt(keySpace));
+        }
+        
+        int cores = Runtime.getRuntime().availableProcessors();
+        TreeSet<Integer> levels = new TreeSet<>(Arrays.asList(1, 2, 4, 8));
+        levels.add(cores);
+        System.out.println("可用處理器: " + cores + "，樹大小: " + tree.size() + "，直方圖 16 個區間");
+        System.out.printf("%-10s %12s", "範圍寬度", "循序(ms)");
+        for (int p : levels) {
+            System.out.printf(" %10s", "p=" + p + "(ms)");
+        }
+        System.out.println();
+        
+        double[] widths = {0.001, 0.01, 0.1, 1.0};
+        List<ForkJoinPool> pools = new ArrayList<>();
+        for (int p : levels) {
+            pools.add(new ForkJoinPool(p));
+        }
+        boolean ok = true;
+        for (double width : widths) {
+            int min = (int) (keySpace * (1 - width) / 2);
+            int max = (int) (min + keySpace * width) - 1;
+            RangeStats expected = null;
+            double sequential = 0;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                expected = tree.rangeStats(min, max, 16);
+                sequential = (System.nanoTime() - start) / 1e6;
+            }
+            System.out.printf("%-10s %12.2f", String.format("%.1f%%", width * 100), sequential);
+            for (ForkJoinPool pool : pools) {
+                double parallel = 0;
+                for (int round = 0; round < 5; round++) {
+                    long start = System.nanoTime();
+                    RangeStats stats = tree.rangeStatsParallel(min, max, 16, pool);
+                    parallel = (System.nanoTime() - start) / 1e6;
+                    ok &= stats.sameAs(expected);
+                }
+                System.out.printf(" %10.2f", parallel);
+            }
+            System.out.println();
+        }
+        for (ForkJoinPool pool : pools) {
+            pool.shutdown();
+        }
+        System.out.println("平行與循序結果（數量、總和、最小、最大、直方圖）: " + (ok ? "一致" : "錯誤")
+            + "，總和也與子樹聚合 sumInRange 比對: "
+            + (tree.rangeStats(0, keySpace, 4).sum == tree.sumInRange(0, keySpace) ? "一致" : "錯誤"));
+        try {
+            tree.rangeStats(0, keySpace, 0);
+        } catch (IllegalArgumentException e) {
+            System.out.println("直方圖區間數為 0 的錯誤: " + e.getMessage());
+        }
+    }
 }
\ No newline at end of file
@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.function.LongSupplier;
 
 /**
  * 支援版本控制的持久化 AVL 樹實作
@@ -7,19 +8,28 @@ import java.util.*;
 public class AVLTree {
     
     /**
-     * 不可變的 AVL 樹節點
+     * AVL 樹節點
+     * 已發佈（屬於某個版本）的節點不可變；只有 owner 是進行中交易的節點可以由該交易就地修改，
+     * 交易結束後 owner 對應的交易不再接受操作，這些節點也就跟著變成不可變。
+     * 欄位不是 final，跨執行緒的可見性靠 AVLVersion.root 這個 final 欄位發佈（見 AVLVersion）。
      */
     private static class AVLNode {
-        final int data;
-        final AVLNode left;
-        final AVLNode right;
-        final int height;
+        int data;
+        AVLNode left;
+        AVLNode right;
+        int height;
+        final Object owner; // 建立此節點的交易，路徑複製建立的節點為 null
         
         public AVLNode(int data, AVLNode left, AVLNode right) {
+            this(data, left, right, null);
+        }
+        
+        AVLNode(int data, AVLNode left, AVLNode right, Object owner) {
             this.data = data;
             this.left = left;
             this.right = right;
             this.height = 1 + Math.max(getHeight(left), getHeight(right));
+            this.owner = owner;
         }
         
         // 單一節點構造器
@@ -65,20 +75,53 @@ public class AVLTree {
     
     /**
      * AVL 樹的版本，每個版本都有自己的根節點
+     *
+     * 執行緒約定：節點欄位不是 final，版本之所以能交給其他執行緒唯讀，是因為 root 是 final 欄位，
+     * 依 final 欄位語意（JLS 17.5），看到這個版本的執行緒也一定看到建構完成時 root 可達的所有節點內容。
+     * 交易節點的就地修改都發生在 commit 建立版本之前，commit 之後沒有人再修改，所以同樣適用。
+     * 讀取節點一律要經過 AVLVersion，不要把節點另外存到其他地方交給別的執行緒；
+     * tags 與 AVLTree 本身的版本表仍不是執行緒安全的，寫入與 tag 需由呼叫端同步。
      */
-    public static class AVLVersion {
+    public static class AVLVersion implements RetentionPolicy.Version {
         private final AVLNode root;
         private final int versionId;
+        private final int parentId;      // 產生此版本時的基礎版本，初始版本為 -1
+        private final long createdAt;    // 建立時間（毫秒），供依時間保留的策略使用
+        private final int nodeCount;     // 寫入時由基礎版本的節點數加減得到，不必走訪整棵樹
+        private final Set<String> tags = new TreeSet<>();
         
         public AVLVersion(AVLNode root, int versionId) {
+            this(root, versionId, -1, 0, size(root));
+        }
+        
+        AVLVersion(AVLNode root, int versionId, int parentId, long createdAt, int nodeCount) {
             this.root = root;
             this.versionId = versionId;
+            this.parentId = parentId;
+            this.createdAt = createdAt;
+            this.nodeCount = nodeCount;
         }
         
         public int getVersionId() {
             return versionId;
         }
         
+        public int getParentId() {
+            return parentId;
+        }
+        
+        public long getCreatedAt() {
+            return createdAt;
+        }
+        
+        public boolean isTagged() {
+            return !tags.isEmpty();
+        }
+        
+        public Set<String> getTags() {
+            return Collections.unmodifiableSet(tags);
+        }
+        
         /**
          * 搜尋指定的鍵值
          * 時間複雜度: O(log n), 空間複雜度: O(log n)
@@ -115,10 +158,10 @@ public class AVLTree {
          * 獲取樹的大小
          */
         public int size() {
-            return size(root);
+            return nodeCount;
         }
         
-        private int size(AVLNode node) {
+        private static int size(AVLNode node) {
             if (node == null) return 0;
             return 1 + size(node.left) + size(node.right);
         }
@@ -161,15 +204,69 @@ public class AVLTree {
         }
     }
     
-    // 版本管理
-    private List<AVLVersion> versions;
+    /**
+     * 版本差異的接收者，依鍵值由小到大收到通知
+     */
+    public interface DiffListener {
+        void added(int data);
+        
+        void removed(int data);
+    }
+    
+    // 64 位元 JVM、壓縮指標下一個 AVLNode 約佔的位元組數（12 header + 2 int + 3 參考，對齊到 8）
+    static final int NODE_BYTES = 32;
+    
+    private static final VersionStats.Nodes<AVLNode> NODES = new VersionStats.Nodes<AVLNode>() {
+        public int key(AVLNode node) {
+            return node.data;
+        }
+        
+        public AVLNode left(AVLNode node) {
+            return node.left;
+        }
+        
+        public AVLNode right(AVLNode node) {
+            return node.right;
+        }
+    };
+    
+    // 版本管理：以版本 ID 排序，回收後 ID 不會重複使用
+    private final TreeMap<Integer, AVLVersion> versions;
     private int nextVersionId;
+    private final LongSupplier clock;
+    private RetentionPolicy retentionPolicy;
+    private int gcThreshold;
     
     public AVLTree() {
-        this.versions = new ArrayList<>();
+        this(System::currentTimeMillis);
+    }
+    
+    AVLTree(LongSupplier clock) {
+        this.versions = new TreeMap<>();
         this.nextVersionId = 0;
+        this.clock = clock;
         // 創建初始空版本
-        versions.add(new AVLVersion(null, nextVersionId++));
+        addVersion(null, -1, 0);
+    }
+    
+    private AVLVersion addVersion(AVLNode root, int parentId, int nodeCount) {
+        AVLVersion version = new AVLVersion(root, nextVersionId++, parentId, clock.getAsLong(), nodeCount);
+        versions.put(version.versionId, version);
+        // 版本數比上次回收後加倍才再回收一次，攤銷後每次寫入 O(1)
+        if (retentionPolicy != null && versions.size() >= gcThreshold) {
+            gc(retentionPolicy);
+            gcThreshold = Math.max(16, versions.size() * 2);
+        }
+        return version;
+    }
+    
+    private AVLVersion baseVersion(int versionId) {
+        AVLVersion version = versions.get(versionId);
+        if (version == null) {
+            throw new IllegalArgumentException(versionId >= 0 && versionId < nextVersionId
+                ? "Version " + versionId + " has been released" : "Invalid version ID: " + versionId);
+        }
+        return version;
     }
     
     /**
@@ -184,15 +281,10 @@ public class AVLTree {
      * 時間複雜度: O(log n), 空間複雜度: O(log n)
      */
     public AVLVersion insert(int versionId, int data) {
-        if (versionId < 0 || versionId >= versions.size()) {
-            throw new IllegalArgumentException("Invalid version ID: " + versionId);
-        }
-        
-        AVLVersion baseVersion = versions.get(versionId);
+        AVLVersion baseVersion = baseVersion(versionId);
         AVLNode newRoot = insertNode(baseVersion.root, data);
-        AVLVersion newVersion = new AVLVersion(newRoot, nextVersionId++);
-        versions.add(newVersion);
-        return newVersion;
+        int nodeCount = baseVersion.nodeCount + (baseVersion.search(data) ? 0 : 1);
+        return addVersion(newRoot, versionId, nodeCount);
     }
     
     /**
@@ -255,15 +347,10 @@ public class AVLTree {
      * 時間複雜度: O(log n), 空間複雜度: O(log n)
      */
     public AVLVersion delete(int versionId, int data) {
-        if (versionId < 0 || versionId >= versions.size()) {
-            throw new IllegalArgumentException("Invalid version ID: " + versionId);
-        }
-        
-        AVLVersion baseVersion = versions.get(versionId);
+        AVLVersion baseVersion = baseVersion(versionId);
         AVLNode newRoot = deleteNode(baseVersion.root, data);
-        AVLVersion newVersion = new AVLVersion(newRoot, nextVersionId++);
-        versions.add(newVersion);
-        return newVersion;
+        int nodeCount = baseVersion.nodeCount - (baseVersion.search(data) ? 1 : 0);
+        return addVersion(newRoot, versionId, nodeCount);
     }
     
     /**
@@ -340,36 +427,406 @@ public class AVLTree {
         return node;
     }
     
+    /**
+     * 以指定版本為基礎開啟交易
+     */
+    public Transaction begin(int versionId) {
+        return new Transaction(baseVersion(versionId));
+    }
+    
+    /**
+     * 批次寫入的交易
+     * 交易內的插入與刪除不會產生版本；第一次修改某個已發佈的節點時才複製一份屬於此交易的節點，
+     * 之後對它的修改（包括旋轉）都直接就地進行，不再複製。commit 時只發佈一個新版本。
+     * 大量寫入時每筆只需 O(log n) 時間，額外配置的節點總數不超過被修改到的不同節點數。
+     * 交易不是執行緒安全的，同一時間只能由一個執行緒使用。
+     */
+    public final class Transaction {
+        private final int baseVersionId;
+        private final Object token = new Object();
+        private AVLNode root;
+        private int nodeCount;
+        private boolean open = true;
+        private boolean changed;
+        private int operations;
+        
+        private Transaction(AVLVersion base) {
+            this.baseVersionId = base.versionId;
+            this.root = base.root;
+            this.nodeCount = base.nodeCount;
+        }
+        
+        public Transaction insert(int data) {
+            checkOpen();
+            changed = false;
+            root = txInsert(root, data);
+            if (changed) nodeCount++;
+            operations++;
+            return this;
+        }
+        
+        public Transaction delete(int data) {
+            checkOpen();
+            changed = false;
+            root = txDelete(root, data);
+            if (changed) nodeCount--;
+            operations++;
+            return this;
+        }
+        
+        public boolean search(int data) {
+            checkOpen();
+            AVLNode node = root;
+            while (node != null) {
+                if (data == node.data) return true;
+                node = data < node.data ? node.left : node.right;
+            }
+            return false;
+        }
+        
+        public int getOperationCount() {
+            return operations;
+        }
+        
+        /**
+         * 發佈交易結果為一個新版本（基礎版本為開啟交易時的版本）
+         */
+        public AVLVersion commit() {
+            checkOpen();
+            open = false;
+            AVLNode result = root;
+            root = null;
+            return addVersion(result, baseVersionId, nodeCount);
+        }
+        
+        /**
+         * 放棄交易，不產生任何版本
+         */
+        public void abort() {
+            open = false;
+            root = null;
+        }
+        
+        private void checkOpen() {
+            if (!open) {
+                throw new IllegalStateException("交易已結束");
+            }
+        }
+        
+        // 屬於此交易的節點直接回傳，否則複製一份（子樹仍共享）
+        private AVLNode editable(AVLNode node) {
+            return node.owner == token ? node : new AVLNode(node.data, node.left, node.right, token);
+        }
+        
+        private void updateHeight(AVLNode node) {
+            node.height = 1 + Math.max(getHeight(node.left), getHeight(node.right));
+        }
+        
+        // y 與回傳的新根都屬於此交易
+        private AVLNode rightRotate(AVLNode y) {
+            AVLNode x = editable(y.left);
+            y.left = x.right;
+            x.right = y;
+            updateHeight(y);
+            updateHeight(x);
+            return x;
+        }
+        
+        private AVLNode leftRotate(AVLNode x) {
+            AVLNode y = editable(x.right);
+            x.right = y.left;
+            y.left = x;
+            updateHeight(x);
+            updateHeight(y);
+            return y;
+        }
+        
+        // node 必須屬於此交易
+        private AVLNode rebalance(AVLNode node) {
+            updateHeight(node);
+            int balance = node.getBalance();
+            if (balance > 1) {
+                if (node.left.getBalance() < 0) {
+                    node.left = leftRotate(editable(node.left));
+                }
+                return rightRotate(node);
+            }
+            if (balance < -1) {
+                if (node.right.getBalance() > 0) {
+                    node.right = rightRotate(editable(node.right));
+                }
+                return leftRotate(node);
+            }
+            return node;
+        }
+        
+        private AVLNode txInsert(AVLNode node, int data) {
+            if (node == null) {
+                changed = true;
+                return new AVLNode(data, null, null, token);
+            }
+            if (data == node.data) {
+                // 重複值不插入，也不複製
+                return node;
+            }
+            AVLNode child = txInsert(data < node.data ? node.left : node.right, data);
+            if (!changed) {
+                return node;
+            }
+            node = editable(node);
+            if (data < node.data) {
+                node.left = child;
+            } else {
+                node.right = child;
+            }
+            return rebalance(node);
+        }
+        
+        private AVLNode txDelete(AVLNode node, int data) {
+            if (node == null) {
+                return null;
+            }
+            if (data < node.data || data > node.data) {
+                AVLNode child = txDelete(data < node.data ? node.left : node.right, data);
+                if (!changed) {
+                    return node;
+                }
+                node = editable(node);
+                if (data < node.data) {
+                    node.left = child;
+                } else {
+                    node.right = child;
+                }
+                return rebalance(node);
+            }
+            
+            changed = true;
+            if (node.left == null || node.right == null) {
+                return node.left != null ? node.left : node.right;
+            }
+            // 有兩個子節點：以後繼的值取代，再從右子樹刪除後繼
+            int successor = findMin(node.right).data;
+            AVLNode newRight = txDelete(node.right, successor);
+            node = editable(node);
+            node.data = successor;
+            node.right = newRight;
+            return rebalance(node);
+        }
+    }
+    
+    /**
+     * 比較兩個版本，把 from 沒有而 to 有的值通知為 added、from 有而 to 沒有的通知為 removed
+     * 兩邊同時走中序，遇到同一個節點物件（共享的子樹）整棵跳過，
+     * 因此耗時約為 O(差異數 × log n)，與樹的大小無關；回傳展開的子樹數，可用來觀察實際走過的範圍
+     */
+    public int diff(int fromVersionId, int toVersionId, DiffListener listener) {
+        DiffCursor from = new DiffCursor(baseVersion(fromVersionId).root);
+        DiffCursor to = new DiffCursor(baseVersion(toVersionId).root);
+        int expanded = 0;
+        while (!from.isEmpty() || !to.isEmpty()) {
+            if (from.isEmpty() || to.isEmpty()) {
+                DiffCursor rest = from.isEmpty() ? to : from;
+                if (!rest.peekIsKey()) {
+                    rest.expand();
+                    expanded++;
+                } else if (rest == to) {
+                    listener.added(to.pop().data);
+                } else {
+                    listener.removed(from.pop().data);
+                }
+                continue;
+            }
+            if (!from.peekIsKey() && !to.peekIsKey() && from.peek() == to.peek()) {
+                // 共享的子樹：兩邊接下來的內容完全相同
+                from.pop();
+                to.pop();
+                continue;
+            }
+            int fromHeight = from.topHeight();
+            int toHeight = to.topHeight();
+            if (fromHeight > 0 || toHeight > 0) {
+                // 先展開較高的一邊，較矮的共享子樹才有機會在兩邊同時出現在頂端
+                if (fromHeight >= toHeight) {
+                    from.expand();
+                } else {
+                    to.expand();
+                }
+                expanded++;
+                continue;
+            }
+            int a = from.peek().data;
+            int b = to.peek().data;
+            if (a < b) {
+                listener.removed(from.pop().data);
+            } else if (a > b) {
+                listener.added(to.pop().data);
+            } else {
+                from.pop();
+                to.pop();
+            }
+        }
+        return expanded;
+    }
+    
+    /**
+     * 三方合併：以 base 為共同祖先，把 base 到 right 的差異套用到 left 上，產生基於 left 的新版本
+     * 集合只有加入與刪除兩種變化，不會衝突：結果含有某值，若且唯若 right 加入了它，
+     * 或 left 有它而 right 沒有刪除它。整個合併在一個交易內完成，只產生一個版本。
+     */
+    public AVLVersion merge(int baseVersionId, int leftVersionId, int rightVersionId) {
+        Transaction tx = begin(leftVersionId);
+        // diff 只讀 base 與 right 的已發佈節點，交易只修改自己的節點，兩者可以交錯進行
+        diff(baseVersionId, rightVersionId, new DiffListener() {
+            @Override
+            public void added(int data) {
+                tx.insert(data);
+            }
+            
+            @Override
+            public void removed(int data) {
+                tx.delete(data);
+            }
+        });
+        return tx.commit();
+    }
+    
+    /**
+     * diff 用的中序游標
+     * 堆疊上的項目是尚未展開的整棵子樹，或已展開、只剩節點本身的值（keyOnly）
+     */
+    private static final class DiffCursor {
+        private AVLNode[] nodes = new AVLNode[16];
+        private boolean[] keyOnly = new boolean[16];
+        private int top;
+        
+        DiffCursor(AVLNode root) {
+            if (root != null) push(root, false);
+        }
+        
+        private void push(AVLNode node, boolean key) {
+            if (top == nodes.length) {
+                nodes = Arrays.copyOf(nodes, top * 2);
+                keyOnly = Arrays.copyOf(keyOnly, top * 2);
+            }
+            nodes[top] = node;
+            keyOnly[top++] = key;
+        }
+        
+        boolean isEmpty() {
+            return top == 0;
+        }
+        
+        AVLNode peek() {
+            return nodes[top - 1];
+        }
+        
+        boolean peekIsKey() {
+            return keyOnly[top - 1];
+        }
+        
+        // 頂端子樹的高度，只剩值的項目為 0
+        int topHeight() {
+            return keyOnly[top - 1] ? 0 : nodes[top - 1].height;
+        }
+        
+        AVLNode pop() {
+            AVLNode node = nodes[--top];
+            nodes[top] = null;
+            return node;
+        }
+        
+        // 把頂端的子樹換成 右子樹、節點本身、左子樹，左子樹在最上面
+        void expand() {
+            AVLNode node = pop();
+            if (node.right != null) push(node.right, false);
+            push(node, true);
+            if (node.left != null) push(node.left, false);
+        }
+    }
+    
     /**
      * 獲取指定版本
      */
     public AVLVersion getVersion(int versionId) {
-        if (versionId < 0 || versionId >= versions.size()) {
-            throw new IllegalArgumentException("Invalid version ID: " + versionId);
-        }
-        return versions.get(versionId);
+        return baseVersion(versionId);
     }
     
     /**
      * 獲取最新版本
      */
     public AVLVersion getLatestVersion() {
-        return versions.get(versions.size() - 1);
+        return versions.lastEntry().getValue();
     }
     
     /**
-     * 獲取版本數量
+     * 獲取版本數量（尚未回收的版本）
      */
     public int getVersionCount() {
         return versions.size();
     }
     
+    /**
+     * 為版本加上標籤；同名標籤只會在一個版本上，原本標在其他版本的會被移過來
+     */
+    public void tag(int versionId, String tag) {
+        AVLVersion version = baseVersion(versionId);
+        untag(tag);
+        version.tags.add(tag);
+    }
+    
+    public void untag(String tag) {
+        for (AVLVersion version : versions.values()) {
+            version.tags.remove(tag);
+        }
+    }
+    
+    /**
+     * 設定自動回收策略，之後每次寫入產生新版本時，版本數累積到上次回收後的兩倍就回收一次
+     * 傳入 null 關閉自動回收
+     */
+    public void setRetentionPolicy(RetentionPolicy policy) {
+        this.retentionPolicy = policy;
+        this.gcThreshold = 16;
+    }
+    
+    /**
+     * 依策略釋放版本，回傳釋放的版本數
+     */
+    public int gc(RetentionPolicy policy) {
+        return RetentionPolicy.release(versions, policy, clock.getAsLong());
+    }
+    
+    /**
+     * 版本與其基礎版本的節點共享統計，O(此版本獨有節點數 + 搜尋路徑長度)
+     */
+    public VersionStats versionStats(int versionId) {
+        AVLVersion version = baseVersion(versionId);
+        AVLVersion parent = versions.get(version.parentId);
+        int unique = VersionStats.countUnique(version.root, parent == null ? null : parent.root, NODES);
+        return new VersionStats(versionId, version.parentId, version.nodeCount, version.nodeCount - unique);
+    }
+    
+    /**
+     * 所有存活版本實際引用的不重複節點數（共享節點只算一次），約為 gc 後持久化樹佔用的節點記憶體
+     */
+    public int liveNodeCount() {
+        List<AVLNode> roots = new ArrayList<>(versions.size());
+        for (AVLVersion version : versions.values()) {
+            roots.add(version.root);
+        }
+        return VersionStats.countLive(roots, NODES);
+    }
+    
+    public long estimatedLiveBytes() {
+        return (long) liveNodeCount() * NODE_BYTES;
+    }
+    
     /**
      * 列出所有版本的資訊
      */
     public void printVersionHistory() {
         System.out.println("版本歷史：");
-        for (AVLVersion version : versions) {
+        for (AVLVersion version : versions.values()) {
             System.out.printf("版本 %d: 大小 = %d, 有效AVL = %s%n", 
                 version.getVersionId(), 
                 version.size(), 
@@ -468,5 +925,251 @@ public class AVLTree {
         System.out.println("✓ 維持 AVL 樹的平衡特性和時間複雜度");
         System.out.println("✓ 時間複雜度：O(log n) 插入/刪除/查詢");
         System.out.println("✓ 空間複雜度：每次操作 O(log n) 額外空間");
+        
+        // 版本回收與共享統計
+        System.out.println("\n10. 版本共享統計：");
+        for (int id : new int[]{1, 7, 8, branch1.getVersionId()}) {
+            System.out.println(tree.versionStats(id));
+        }
+        
+        System.out.println("\n11. 版本回收：");
+        tree.tag(3, "release-1");
+        System.out.printf("回收前: %d 個版本, 存活節點 %d%n", tree.getVersionCount(), tree.liveNodeCount());
+        int released = tree.gc(RetentionPolicy.keepLast(3).or(RetentionPolicy.keepTagged()));
+        System.out.printf("保留最新 3 個與有標籤的版本，釋放 %d 個，剩 %d 個版本, 存活節點 %d%n",
+            released, tree.getVersionCount(), tree.liveNodeCount());
+        tree.printVersionHistory();
+        try {
+            tree.getVersion(1);
+        } catch (IllegalArgumentException e) {
+            System.out.println("存取已回收版本: " + e.getMessage());
+        }
+        System.out.println(tree.versionStats(branch1.getVersionId()) + "（基礎版本 3 有標籤而保留）");
+        
+        sustainedWriteDemo();
+        transactionDemo();
+        diffMergeDemo();
+    }
+    
+    /**
+     * 版本差異與三方合併：差異只走過變動的區域，大樹上的小修改也能很快比較
+     */
+    private static void diffMergeDemo() {
+        System.out.println("\n14. 版本差異與三方合併：");
+        AVLTree tree = new AVLTree();
+        Transaction tx = tree.begin(0);
+        for (int i = 0; i < 1000000; i++) {
+            tx.insert(i * 2);
+        }
+        AVLVersion base = tx.commit();
+        AVLVersion left = tree.insert(tree.delete(base.getVersionId(), 10).getVersionId(), 11);
+        AVLVersion right = tree.insert(tree.delete(base.getVersionId(), 1999998).getVersionId(), 7);
+        
+        List<String> changes = new ArrayList<>();
+        DiffListener collector = new DiffListener() {
+            @Override
+            public void added(int data) {
+                changes.add("+" + data);
+            }
+            
+            @Override
+            public void removed(int data) {
+                changes.add("-" + data);
+            }
+        };
+        long start = System.nanoTime();
+        int expanded = tree.diff(base.getVersionId(), left.getVersionId(), collector);
+        System.out.printf("一百萬筆的版本 %d → %d: %s，展開 %d 個子樹，%.3f ms%n", base.getVersionId(),
+            left.getVersionId(), changes, expanded, (System.nanoTime() - start) / 1e6);
+        changes.clear();
+        expanded = tree.diff(left.getVersionId(), right.getVersionId(), collector);
+        System.out.printf("兩個分支 %d → %d: %s，展開 %d 個子樹%n", left.getVersionId(),
+            right.getVersionId(), changes, expanded);
+        
+        AVLVersion merged = tree.merge(base.getVersionId(), left.getVersionId(), right.getVersionId());
+        changes.clear();
+        tree.diff(base.getVersionId(), merged.getVersionId(), collector);
+        System.out.printf("合併為版本 %d（基於 %d）: 相對共同祖先 %s, 有效AVL = %s%n", merged.getVersionId(),
+            merged.getParentId(), changes, merged.isValidAVL() ? "是" : "否");
+        
+        // 隨機分支與 TreeSet 比對差異與合併結果
+        Random random = new Random(3);
+        boolean ok = true;
+        for (int round = 0; round < 200 && ok; round++) {
+            AVLTree t = new AVLTree();
+            TreeSet<Integer> baseSet = new TreeSet<>();
+            int b = 0;
+            for (int i = 0; i < 300; i++) {
+                int v = random.nextInt(500);
+                b = t.insert(b, v).getVersionId();
+                baseSet.add(v);
+            }
+            TreeSet<Integer> leftSet = new TreeSet<>(baseSet);
+            TreeSet<Integer> rightSet = new TreeSet<>(baseSet);
+            int l = b;
+            int r = b;
+            for (int i = 0; i < 20; i++) {
+                int v = random.nextInt(500);
+                if (random.nextBoolean()) {
+                    l = t.insert(l, v).getVersionId();
+                    leftSet.add(v);
+                } else {
+                    l = t.delete(l, v).getVersionId();
+                    leftSet.remove(v);
+                }
+                v = random.nextInt(500);
+                if (random.nextBoolean()) {
+                    r = t.insert(r, v).getVersionId();
+                    rightSet.add(v);
+                } else {
+                    r = t.delete(r, v).getVersionId();
+                    rightSet.remove(v);
+                }
+            }
+            TreeSet<Integer> added = new TreeSet<>();
+            TreeSet<Integer> removed = new TreeSet<>();
+            t.diff(l, r, new DiffListener() {
+                @Override
+                public void added(int data) {
+                    added.add(data);
+                }
+                
+                @Override
+                public void removed(int data) {
+                    removed.add(data);
+                }
+            });
+            TreeSet<Integer> expectedAdded = new TreeSet<>(rightSet);
+            expectedAdded.removeAll(leftSet);
+            TreeSet<Integer> expectedRemoved = new TreeSet<>(leftSet);
+            expectedRemoved.removeAll(rightSet);
+            
+            TreeSet<Integer> expectedMerge = new TreeSet<>(leftSet);
+            for (int v = 0; v < 500; v++) {
+                if (rightSet.contains(v) && !baseSet.contains(v)) expectedMerge.add(v);
+                if (!rightSet.contains(v) && baseSet.contains(v)) expectedMerge.remove(v);
+            }
+            AVLVersion m = t.merge(b, l, r);
+            ok = added.equals(expectedAdded) && removed.equals(expectedRemoved)
+                && m.inorderTraversal().equals(new ArrayList<>(expectedMerge)) && m.isValidAVL()
+                && t.getVersion(l).size() == leftSet.size() && t.getVersion(r).size() == rightSet.size()
+                && m.size() == expectedMerge.size();
+        }
+        System.out.println("200 組隨機分支的差異與合併與 TreeSet 比對: " + (ok ? "一致" : "錯誤"));
+    }
+    
+    /**
+     * 比較逐筆寫入（每筆一個版本）與單一交易批次寫入的耗時、版本數與新節點數
+     * 新節點數是每個新版本相對於其基礎版本的獨有節點數總和，旋轉途中建立又被丟棄的暫時節點不計入
+     */
+    private static void transactionDemo() {
+        System.out.println("\n13. 交易：");
+        AVLTree small = new AVLTree();
+        AVLVersion base = small.insert(0, 50);
+        Transaction tx = small.begin(base.getVersionId());
+        for (int value : new int[]{30, 70, 20, 40, 60, 80, 50}) {
+            tx.insert(value);
+        }
+        tx.delete(30);
+        AVLVersion committed = tx.commit();
+        System.out.printf("基於版本 %d 的交易執行 %d 個操作，只產生版本 %d: %s%n", base.getVersionId(),
+            tx.getOperationCount(), committed.getVersionId(), committed.inorderTraversal());
+        System.out.printf("基礎版本不變: %s, 版本數: %d%n", base.inorderTraversal(), small.getVersionCount());
+        System.out.println(small.versionStats(committed.getVersionId()));
+        
+        System.out.printf("%n%-10s %-8s %12s %10s %14s %8s%n", "鍵數", "方式", "耗時(ms)", "版本 ID", "新節點數", "結果");
+        for (int n : new int[]{100000, 1000000}) {
+            int[] keys = new int[n];
+            Random random = new Random(n);
+            for (int i = 0; i < n; i++) keys[i] = random.nextInt();
+            
+            List<Integer> expected = null;
+            for (int mode = 0; mode < 2; mode++) {
+                AVLTree tree = new AVLTree();
+                // 逐筆寫入時只保留最新版本，避免一百萬個版本的路徑把記憶體用完
+                tree.setRetentionPolicy(RetentionPolicy.keepLast(1));
+                System.gc();
+                long created = 0;
+                long elapsed = 0;
+                AVLVersion result;
+                if (mode == 0) {
+                    // 每個版本與前一個版本比對獨有節點，比對本身不計入耗時
+                    for (int i = 0; i < n + n / 10; i++) {
+                        AVLVersion previous = tree.getLatestVersion();
+                        long start = System.nanoTime();
+                        if (i < n) {
+                            tree.insert(previous.getVersionId(), keys[i]);
+                        } else {
+                            tree.delete(previous.getVersionId(), keys[i - n]);
+                        }
+                        elapsed += System.nanoTime() - start;
+                        created += VersionStats.countUnique(tree.getLatestVersion().root, previous.root, NODES);
+                    }
+                    result = tree.getLatestVersion();
+                } else {
+                    AVLVersion empty = tree.getLatestVersion();
+                    long start = System.nanoTime();
+                    Transaction bulk = tree.begin(empty.getVersionId());
+                    for (int key : keys) {
+                        bulk.insert(key);
+                    }
+                    for (int i = 0; i < n / 10; i++) {
+                        bulk.delete(keys[i]);
+                    }
+                    result = bulk.commit();
+                    elapsed = System.nanoTime() - start;
+                    created = VersionStats.countUnique(result.root, empty.root, NODES);
+                }
+                List<Integer> contents = result.inorderTraversal();
+                boolean ok = result.isValidAVL() && (expected == null || contents.equals(expected));
+                expected = contents;
+                System.out.printf("%-10d %-8s %12.1f %10d %14d %8s%n", n, mode == 0 ? "逐筆" : "交易",
+                    elapsed / 1e6, result.getVersionId(), created, ok ? "一致" : "錯誤");
+            }
+        }
+    }
+    
+    /**
+     * 持續寫入下比較不回收與三種保留策略的版本數與存活節點數
+     */
+    private static void sustainedWriteDemo() {
+        System.out.println("\n12. 持續寫入 20000 次（每次基於最新版本插入或刪除）：");
+        System.out.printf("%-28s %10s %12s %12s%n", "策略", "版本數", "存活節點", "估計記憶體");
+        long[] now = {0};
+        String[] names = {"不回收", "保留最新 100 個", "保留最新 10 個 + 標籤", "保留 1 秒內"};
+        RetentionPolicy[] policies = {
+            null,
+            RetentionPolicy.keepLast(100),
+            RetentionPolicy.keepLast(10).or(RetentionPolicy.keepTagged()),
+            RetentionPolicy.keepNewerThan(1000)
+        };
+        for (int p = 0; p < policies.length; p++) {
+            now[0] = 0;
+            AVLTree tree = new AVLTree(() -> now[0]);
+            tree.setRetentionPolicy(policies[p]);
+            Random random = new Random(1);
+            for (int i = 0; i < 20000; i++) {
+                now[0] += 1; // 每次寫入 1 毫秒
+                int latest = tree.getLatestVersion().getVersionId();
+                if (random.nextInt(4) == 0) {
+                    tree.delete(latest, random.nextInt(5000));
+                } else {
+                    tree.insert(latest, random.nextInt(5000));
+                }
+                if (i % 5000 == 0) {
+                    tree.tag(tree.getLatestVersion().getVersionId(), "checkpoint-" + i);
+                }
+            }
+            System.out.printf("%-28s %10d %12d %10.1f KB%n", names[p], tree.getVersionCount(),
+                tree.liveNodeCount(), tree.estimatedLiveBytes() / 1024.0);
+        }
+        
+        AVLTree tree = new AVLTree();
+        Random random = new Random(2);
+        for (int i = 0; i < 4000; i++) {
+            tree.insert(tree.getLatestVersion().getVersionId(), random.nextInt(100000));
+        }
+        VersionStats stats = tree.versionStats(tree.getLatestVersion().getVersionId());
+        System.out.println("4000 個元素的樹再插入一筆: " + stats + "（獨有節點就是被複製的插入路徑）");
     }
 }
\ No newline at end of file
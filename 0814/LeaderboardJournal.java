@@ -0,0 +1,419 @@
+/**
+ * 排行榜的持久化：只追加的二進位 WAL + 依排名排序的壓縮快照
+ *
+ * 檔案（都放在同一個目錄）：
+ *   leaderboard.wal ：header：int MAGIC, int VERSION, long generation
+ *                    record：byte 類型, short 名稱長度, 名稱（UTF-8）, int 分數, long 時間戳, int CRC32
+ *   leaderboard.snap：header：int MAGIC, int VERSION, long generation, long 下一個時間戳, int 玩家數
+ *                    record：short 名稱長度, 名稱（UTF-8）, int 分數, long 時間戳
+ *                    結尾：int CRC32（涵蓋前面所有位元組）
+ *
+ * 快照依排名順序寫出，復原時不需排序也不需逐筆插入，直接以 O(n) 建出完全平衡的樹，
+ * 再重播同一世代的 WAL。checkpoint 先寫暫存檔再以原子改名取代舊快照，fsync 目錄後才把 WAL 換成新世代；
+ * 兩步之間當機時，舊世代的 WAL 內容都已在快照裡，復原時會直接略過。
+ * WAL 結尾不完整或 CRC 不符的記錄視為寫到一半的資料，復原時截掉。
+ *
+ * 時間戳由日誌自己的序號產生（而不是 System.nanoTime），重新啟動後仍然遞增，同分時的先後順序不會改變。
+ * 寫入只進緩衝區，呼叫 sync() 才保證落地（group commit）。
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+public class LeaderboardJournal implements Closeable {
+
+    private static final int WAL_MAGIC = 0x4C42574C;
+    private static final int SNAPSHOT_MAGIC = 0x4C42534E;
+    private static final int VERSION = 1;
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_UPDATE = 2;
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+    private static final String WAL_FILE = "leaderboard.wal";
+    private static final String SNAPSHOT_FILE = "leaderboard.snap";
+
+    private final Path dir;
+    private final int checkpointInterval;
+    private final AVLLeaderboardSystem board = new AVLLeaderboardSystem();
+    private final ByteBuffer record = ByteBuffer.allocate(1 + 2 + MAX_NAME_BYTES + 4 + 8 + 4);
+    private final CRC32 crc = new CRC32();
+    private FileOutputStream walFile;
+    private OutputStream wal;
+    private long generation;
+    private long nextTimestamp;
+    private int walRecords;
+
+    // 復原統計，供 main 顯示
+    private int snapshotPlayers;
+    private int replayedRecords;
+    private long truncatedBytes;
+
+    private LeaderboardJournal(Path dir, int checkpointInterval) {
+        this.dir = dir;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * 開啟（或建立）日誌目錄並復原排行榜
+     * @param checkpointInterval WAL 累積這麼多筆記錄後自動 checkpoint，0 表示只在手動呼叫時進行
+     */
+    public static LeaderboardJournal open(Path dir, int checkpointInterval) throws IOException {
+        Files.createDirectories(dir);
+        LeaderboardJournal journal = new LeaderboardJournal(dir, checkpointInterval);
+        journal.recover();
+        return journal;
+    }
+
+    public AVLLeaderboardSystem board() {
+        return board;
+    }
+
+    /**
+     * 新增玩家並寫入 WAL，已存在時回傳 false
+     */
+    public boolean addPlayer(String name, int score) throws IOException {
+        if (board.getPlayer(name) != null) {
+            return false;
+        }
+        Player player = new Player(name, score, nextTimestamp++);
+        append(RECORD_ADD, name, score, player.timestamp);
+        board.addPlayerInternal(player);
+        afterAppend();
+        return true;
+    }
+
+    /**
+     * 更新玩家分數並寫入 WAL，玩家不存在時回傳 false
+     */
+    public boolean updateScore(String name, int newScore) throws IOException {
+        if (board.getPlayer(name) == null) {
+            return false;
+        }
+        append(RECORD_UPDATE, name, newScore, 0);
+        board.updateScoreInternal(name, newScore);
+        afterAppend();
+        return true;
+    }
+
+    private void afterAppend() throws IOException {
+        walRecords++;
+        if (checkpointInterval > 0 && walRecords >= checkpointInterval) {
+            checkpoint();
+        }
+    }
+
+    private void append(byte type, String name, int score, long timestamp) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("玩家名稱過長: " + nameBytes.length + " bytes");
+        }
+        record.clear();
+        record.put(type).putShort((short) nameBytes.length).put(nameBytes).putInt(score).putLong(timestamp);
+        crc.reset();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        wal.write(record.array(), 0, record.position());
+    }
+
+    /**
+     * 把緩衝區寫出並 fsync，之前的所有操作在這之後都不會因當機遺失
+     */
+    public void sync() throws IOException {
+        wal.flush();
+        walFile.getFD().sync();
+    }
+
+    /**
+     * 依排名順序寫出新世代的快照，再換上空的 WAL
+     */
+    public void checkpoint() throws IOException {
+        wal.flush();
+        long nextGeneration = generation + 1;
+        List<Player> ranked = board.playersRanked(1, board.getTotalPlayers());
+
+        Path tmp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile())) {
+            CRC32 checksum = new CRC32();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new CheckedOutputStream(file, checksum), 1 << 16));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(nextGeneration);
+            out.writeLong(nextTimestamp);
+            out.writeInt(ranked.size());
+            for (Player player : ranked) {
+                byte[] nameBytes = player.name.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(nameBytes.length);
+                out.write(nameBytes);
+                out.writeInt(player.score);
+                out.writeLong(player.timestamp);
+            }
+            out.flush();
+            // CRC 本身不計入校驗，直接寫到底層檔案
+            new DataOutputStream(file).writeInt((int) checksum.getValue());
+            file.getFD().sync();
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // 改名落地之後才能清空 WAL，否則當機後可能是舊快照配上新世代的空 WAL
+        syncDirectory(dir);
+
+        walFile.close();
+        generation = nextGeneration;
+        resetWal();
+    }
+
+    // 以目前世代建立空的 WAL（覆寫舊檔）並開啟供追加
+    private void resetWal() throws IOException {
+        Path walPath = dir.resolve(WAL_FILE);
+        boolean created = !Files.exists(walPath);
+        walFile = new FileOutputStream(walPath.toFile());
+        DataOutputStream header = new DataOutputStream(walFile);
+        header.writeInt(WAL_MAGIC);
+        header.writeInt(VERSION);
+        header.writeLong(generation);
+        walFile.getFD().sync();
+        if (created) {
+            syncDirectory(dir);
+        }
+        wal = new BufferedOutputStream(walFile, 1 << 16);
+        walRecords = 0;
+    }
+
+    /**
+     * 建立與改名只修改目錄項目，檔案本身的 fsync 不包含它們；要 fsync 目錄，當機後才保證看得到新檔名
+     * Windows 無法以 FileChannel 開啟目錄（NTFS 的中繼資料由檔案系統日誌保護），略過
+     */
+    static void syncDirectory(Path dir) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            if (!System.getProperty("os.name").startsWith("Windows")) {
+                throw e;
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        Path snapshot = dir.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            loadSnapshot(snapshot);
+        }
+
+        Path walPath = dir.resolve(WAL_FILE);
+        if (!Files.exists(walPath) || !replayWal(walPath)) {
+            resetWal();
+            return;
+        }
+        walFile = new FileOutputStream(walPath.toFile(), true);
+        wal = new BufferedOutputStream(walFile, 1 << 16);
+    }
+
+    private void loadSnapshot(Path snapshot) throws IOException {
+        CRC32 checksum = new CRC32();
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16)) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(file, checksum));
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != VERSION) {
+                throw new IOException("不是排行榜快照檔: " + snapshot);
+            }
+            generation = in.readLong();
+            nextTimestamp = in.readLong();
+            Player[] ranked = new Player[in.readInt()];
+            byte[] nameBytes = new byte[MAX_NAME_BYTES];
+            for (int i = 0; i < ranked.length; i++) {
+                int nameLength = in.readUnsignedShort();
+                in.readFully(nameBytes, 0, nameLength);
+                String name = new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8);
+                ranked[i] = new Player(name, in.readInt(), in.readLong());
+            }
+            int expected = (int) checksum.getValue();
+            if (new DataInputStream(file).readInt() != expected) {
+                throw new IOException("快照 CRC 不符: " + snapshot);
+            }
+            board.loadRanked(ranked);
+            snapshotPlayers = ranked.length;
+        }
+    }
+
+    // 重播與快照同一世代的 WAL 並截掉不完整的結尾；WAL 屬於舊世代或格式不符時回傳 false
+    private boolean replayWal(Path walPath) throws IOException {
+        long valid;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(walPath), 1 << 16))) {
+            try {
+                if (in.readInt() != WAL_MAGIC || in.readInt() != VERSION || in.readLong() != generation) {
+                    return false;
+                }
+            } catch (EOFException e) {
+                return false;
+            }
+            valid = 4 + 4 + 8;
+            byte[] buf = record.array();
+            while (true) {
+                try {
+                    buf[0] = in.readByte();
+                    in.readFully(buf, 1, 2);
+                    int nameLength = ((buf[1] & 0xFF) << 8) | (buf[2] & 0xFF);
+                    int length = 3 + nameLength + 4 + 8;
+                    in.readFully(buf, 3, nameLength + 4 + 8 + 4);
+                    crc.reset();
+                    crc.update(buf, 0, length);
+                    ByteBuffer view = ByteBuffer.wrap(buf, 0, length + 4);
+                    if (view.getInt(length) != (int) crc.getValue()) {
+                        break;
+                    }
+                    String name = new String(buf, 3, nameLength, StandardCharsets.UTF_8);
+                    int score = view.getInt(3 + nameLength);
+                    long timestamp = view.getLong(3 + nameLength + 4);
+                    apply(buf[0], name, score, timestamp);
+                    valid += length + 4;
+                    replayedRecords++;
+                    walRecords++;
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(walPath, StandardOpenOption.WRITE)) {
+            truncatedBytes = channel.size() - valid;
+            if (truncatedBytes > 0) {
+                channel.truncate(valid);
+                channel.force(true);
+            }
+        }
+        return true;
+    }
+
+    private void apply(byte type, String name, int score, long timestamp) throws IOException {
+        if (type == RECORD_ADD) {
+            if (board.getPlayer(name) == null) {
+                board.addPlayerInternal(new Player(name, score, timestamp));
+            }
+            nextTimestamp = Math.max(nextTimestamp, timestamp + 1);
+        } else if (type == RECORD_UPDATE) {
+            if (board.getPlayer(name) != null) {
+                board.updateScoreInternal(name, score);
+            }
+        } else {
+            throw new IOException("未知的 WAL 記錄類型: " + type);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        walFile.close();
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static List<String> ranking(AVLLeaderboardSystem board) {
+        List<String> names = new ArrayList<>();
+        for (Player player : board.playersRanked(1, board.getTotalPlayers())) {
+            names.add(player.name + ":" + player.score + ":" + player.timestamp);
+        }
+        return names;
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== 排行榜 WAL 與快照 ===\n");
+        Path dir = Files.createTempDirectory("leaderboard-journal");
+        try {
+            // 基本流程：寫入、關閉、重新開啟
+            try (LeaderboardJournal journal = open(dir, 0)) {
+                String[] playerNames = {"Alice", "Bob", "Charlie", "Diana", "Eve"};
+                int[] playerScores = {950, 880, 950, 990, 850};
+                for (int i = 0; i < playerNames.length; i++) {
+                    journal.addPlayer(playerNames[i], playerScores[i]);
+                }
+                journal.checkpoint();
+                journal.updateScore("Bob", 1000);
+                journal.addPlayer("Frank", 950);
+            }
+            try (LeaderboardJournal journal = open(dir, 0)) {
+                System.out.println("重新開啟: 快照 " + journal.snapshotPlayers + " 位玩家，重播 "
+                    + journal.replayedRecords + " 筆 WAL");
+                System.out.println("排行榜: " + journal.board.playersRanked(1, 10));
+            }
+
+            // 模擬寫到一半當機：WAL 結尾多出半筆記錄
+            try (OutputStream out = Files.newOutputStream(dir.resolve(WAL_FILE), StandardOpenOption.APPEND)) {
+                out.write(new byte[]{RECORD_UPDATE, 0, 5, 'A', 'l'});
+            }
+            try (LeaderboardJournal journal = open(dir, 0)) {
+                System.out.println("截掉不完整的 WAL 結尾 " + journal.truncatedBytes + " bytes，重播 "
+                    + journal.replayedRecords + " 筆，Alice 排名 " + journal.board.rankOf("Alice"));
+                journal.addPlayer("Grace", 950);
+                System.out.println("新加入的同分玩家排在最後: " + journal.board.playersRanked(1, 10));
+            }
+            System.out.println();
+        } finally {
+            deleteRecursively(dir);
+        }
+
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        benchmarkRecovery(players);
+    }
+
+    /**
+     * 比較兩種復原方式：重播全部 addPlayer 的 WAL，與讀取排名順序快照後線性建樹再重播少量 WAL
+     */
+    public static void benchmarkRecovery(int players) throws IOException {
+        System.out.println("=== 復原耗時 (" + players + " 位玩家) ===");
+        Random random = new Random(9);
+        Path dir = Files.createTempDirectory("leaderboard-journal");
+        try {
+            List<String> expected;
+            try (LeaderboardJournal journal = open(dir, 0)) {
+                for (int i = 0; i < players; i++) {
+                    journal.addPlayer("P" + i, random.nextInt(1000000));
+                }
+                expected = ranking(journal.board);
+            }
+            long walBytes = Files.size(dir.resolve(WAL_FILE));
+
+            // 暖身一次，避免第一次量測包含 JIT 編譯
+            open(dir, 0).close();
+            System.gc();
+            long start = System.nanoTime();
+            LeaderboardJournal replayed = open(dir, 0);
+            long replayTime = System.nanoTime() - start;
+            boolean ok = ranking(replayed.board).equals(expected);
+
+            replayed.checkpoint();
+            int updates = players / 10;
+            for (int i = 0; i < updates; i++) {
+                replayed.updateScore("P" + random.nextInt(players), random.nextInt(1000000));
+            }
+            expected = ranking(replayed.board);
+            replayed.close();
+            long snapshotBytes = Files.size(dir.resolve(SNAPSHOT_FILE));
+
+            open(dir, 0).close();
+            System.gc();
+            start = System.nanoTime();
+            LeaderboardJournal restored = open(dir, 0);
+            long restoreTime = System.nanoTime() - start;
+            ok = ok && ranking(restored.board).equals(expected);
+            restored.close();
+
+            System.out.printf("只重播 WAL (%d 筆 addPlayer, %.1f MB): %8.1f ms%n",
+                players, walBytes / 1e6, replayTime / 1e6);
+            System.out.printf("快照線性建樹 + 重播 %d 筆 updateScore (快照 %.1f MB): %8.1f ms%n",
+                updates, snapshotBytes / 1e6, restoreTime / 1e6);
+            System.out.println("復原結果: " + (ok ? "一致" : "不一致"));
+        } finally {
+            deleteRecursively(dir);
+        }
+        System.out.println();
+    }
+}
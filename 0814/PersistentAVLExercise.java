@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.function.LongSupplier;
 
 /**
  * 支援版本控制的持久化 AVL 樹實作
@@ -33,19 +34,46 @@ public class PersistentAVLExercise {
     /**
      * AVL 樹的版本，每個版本都有自己的根節點
      */
-    public static class AVLVersion {
+    public static class AVLVersion implements RetentionPolicy.Version {
         private final AVLNode root;
         private final int versionId;
+        private final int parentId;      // 產生此版本時的基礎版本，初始版本為 -1
+        private final long createdAt;    // 建立時間（毫秒），供依時間保留的策略使用
+        private final int nodeCount;     // 寫入時由基礎版本的節點數加減得到，不必走訪整棵樹
+        private final Set<String> tags = new TreeSet<>();
         
         public AVLVersion(AVLNode root, int versionId) {
+            this(root, versionId, -1, 0, size(root));
+        }
+        
+        AVLVersion(AVLNode root, int versionId, int parentId, long createdAt, int nodeCount) {
             this.root = root;
             this.versionId = versionId;
+            this.parentId = parentId;
+            this.createdAt = createdAt;
+            this.nodeCount = nodeCount;
         }
         
         public int getVersionId() {
             return versionId;
         }
         
+        public int getParentId() {
+            return parentId;
+        }
+        
+        public long getCreatedAt() {
+            return createdAt;
+        }
+        
+        public boolean isTagged() {
+            return !tags.isEmpty();
+        }
+        
+        public Set<String> getTags() {
+            return Collections.unmodifiableSet(tags);
+        }
+        
         /**
          * 搜尋指定的鍵值
          */
@@ -82,10 +110,10 @@ public class PersistentAVLExercise {
          * 獲取樹的大小
          */
         public int size() {
-            return size(root);
+            return nodeCount;
         }
         
-        private int size(AVLNode node) {
+        private static int size(AVLNode node) {
             if (node == null) return 0;
             return 1 + size(node.left) + size(node.right);
         }
@@ -109,15 +137,96 @@ public class PersistentAVLExercise {
         }
     }
     
-    // 版本管理
-    private List<AVLVersion> versions;
+    /**
+     * 版本差異的接收者，依鍵值由小到大收到通知
+     */
+    public interface DiffListener {
+        void added(int key, int value);
+        
+        void removed(int key, int value);
+        
+        void updated(int key, int oldValue, int newValue);
+    }
+    
+    /**
+     * 三方合併時兩邊改了同一個鍵且結果不同的處理方式
+     * 參數與回傳值為 null 代表該鍵不存在（回傳 null 即刪除）
+     */
+    @FunctionalInterface
+    public interface MergeResolver {
+        Integer resolve(int key, Integer base, Integer left, Integer right);
+        
+        // 衝突時直接失敗
+        static MergeResolver fail() {
+            return (key, base, left, right) -> {
+                throw new IllegalStateException("Merge conflict on key " + key
+                    + ": base=" + base + ", left=" + left + ", right=" + right);
+            };
+        }
+        
+        static MergeResolver preferLeft() {
+            return (key, base, left, right) -> left;
+        }
+        
+        static MergeResolver preferRight() {
+            return (key, base, left, right) -> right;
+        }
+    }
+    
+    // 64 位元 JVM、壓縮指標下一個 AVLNode 約佔的位元組數（12 header + 3 int + 2 參考，對齊到 8）
+    static final int NODE_BYTES = 32;
+    
+    private static final VersionStats.Nodes<AVLNode> NODES = new VersionStats.Nodes<AVLNode>() {
+        public int key(AVLNode node) {
+            return node.key;
+        }
+        
+        public AVLNode left(AVLNode node) {
+            return node.left;
+        }
+        
+        public AVLNode right(AVLNode node) {
+            return node.right;
+        }
+    };
+    
+    // 版本管理：以版本 ID 排序，回收後 ID 不會重複使用
+    private final TreeMap<Integer, AVLVersion> versions;
     private int nextVersionId;
+    private final LongSupplier clock;
+    private RetentionPolicy retentionPolicy;
+    private int gcThreshold;
     
     public PersistentAVLExercise() {
-        this.versions = new ArrayList<>();
+        this(System::currentTimeMillis);
+    }
+    
+    PersistentAVLExercise(LongSupplier clock) {
+        this.versions = new TreeMap<>();
         this.nextVersionId = 0;
+        this.clock = clock;
         // 創建初始空版本
-        versions.add(new AVLVersion(null, nextVersionId++));
+        addVersion(null, -1, 0);
+    }
+    
+    private AVLVersion addVersion(AVLNode root, int parentId, int nodeCount) {
+        AVLVersion version = new AVLVersion(root, nextVersionId++, parentId, clock.getAsLong(), nodeCount);
+        versions.put(version.versionId, version);
+        // 版本數比上次回收後加倍才再回收一次，攤銷後每次寫入 O(1)
+        if (retentionPolicy != null && versions.size() >= gcThreshold) {
+            gc(retentionPolicy);
+            gcThreshold = Math.max(16, versions.size() * 2);
+        }
+        return version;
+    }
+    
+    private AVLVersion baseVersion(int versionId) {
+        AVLVersion version = versions.get(versionId);
+        if (version == null) {
+            throw new IllegalArgumentException(versionId >= 0 && versionId < nextVersionId
+                ? "Version " + versionId + " has been released" : "Invalid version ID: " + versionId);
+        }
+        return version;
     }
     
     /**
@@ -166,15 +275,10 @@ public class PersistentAVLExercise {
      * 插入節點到指定版本，返回新版本
      */
     public AVLVersion insert(int versionId, int key, int value) {
-        if (versionId < 0 || versionId >= versions.size()) {
-            throw new IllegalArgumentException("Invalid version ID: " + versionId);
-        }
-        
-        AVLVersion baseVersion = versions.get(versionId);
+        AVLVersion baseVersion = baseVersion(versionId);
         AVLNode newRoot = insert(baseVersion.root, key, value);
-        AVLVersion newVersion = new AVLVersion(newRoot, nextVersionId++);
-        versions.add(newVersion);
-        return newVersion;
+        int nodeCount = baseVersion.nodeCount + (baseVersion.search(key) == null ? 1 : 0);
+        return addVersion(newRoot, versionId, nodeCount);
     }
     
     /**
@@ -232,36 +336,304 @@ public class PersistentAVLExercise {
         return node;
     }
     
+    /**
+     * 從子樹刪除鍵（路徑複製），只供合併使用；鍵必須存在
+     */
+    private AVLNode delete(AVLNode node, int key) {
+        if (key < node.key) {
+            node = new AVLNode(node.key, node.value, delete(node.left, key), node.right);
+        } else if (key > node.key) {
+            node = new AVLNode(node.key, node.value, node.left, delete(node.right, key));
+        } else {
+            if (node.left == null || node.right == null) {
+                return node.left != null ? node.left : node.right;
+            }
+            // 有兩個子節點：以後繼取代，再從右子樹刪除後繼
+            AVLNode successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            node = new AVLNode(successor.key, successor.value, node.left, delete(node.right, successor.key));
+        }
+        
+        int balance = getBalance(node);
+        if (balance > 1) {
+            if (getBalance(node.left) < 0) {
+                node = new AVLNode(node.key, node.value, leftRotate(node.left), node.right);
+            }
+            return rightRotate(node);
+        }
+        if (balance < -1) {
+            if (getBalance(node.right) > 0) {
+                node = new AVLNode(node.key, node.value, node.left, rightRotate(node.right));
+            }
+            return leftRotate(node);
+        }
+        return node;
+    }
+    
+    private static Integer lookup(AVLNode node, int key) {
+        while (node != null) {
+            if (key == node.key) return node.value;
+            node = key < node.key ? node.left : node.right;
+        }
+        return null;
+    }
+    
+    /**
+     * 比較兩個版本，依鍵值由小到大通知新增、移除與值被修改的鍵
+     * 兩邊同時走中序，遇到同一個節點物件（共享的子樹）整棵跳過，
+     * 因此耗時約為 O(差異數 × log n)，與樹的大小無關；回傳展開的子樹數
+     */
+    public int diff(int fromVersionId, int toVersionId, DiffListener listener) {
+        DiffCursor from = new DiffCursor(baseVersion(fromVersionId).root);
+        DiffCursor to = new DiffCursor(baseVersion(toVersionId).root);
+        int expanded = 0;
+        while (!from.isEmpty() || !to.isEmpty()) {
+            if (from.isEmpty() || to.isEmpty()) {
+                DiffCursor rest = from.isEmpty() ? to : from;
+                if (!rest.peekIsKey()) {
+                    rest.expand();
+                    expanded++;
+                } else {
+                    AVLNode node = rest.pop();
+                    if (rest == to) {
+                        listener.added(node.key, node.value);
+                    } else {
+                        listener.removed(node.key, node.value);
+                    }
+                }
+                continue;
+            }
+            if (!from.peekIsKey() && !to.peekIsKey() && from.peek() == to.peek()) {
+                // 共享的子樹：兩邊接下來的內容完全相同
+                from.pop();
+                to.pop();
+                continue;
+            }
+            int fromHeight = from.topHeight();
+            int toHeight = to.topHeight();
+            if (fromHeight > 0 || toHeight > 0) {
+                // 先展開較高的一邊，較矮的共享子樹才有機會在兩邊同時出現在頂端
+                if (fromHeight >= toHeight) {
+                    from.expand();
+                } else {
+                    to.expand();
+                }
+                expanded++;
+                continue;
+            }
+            AVLNode a = from.peek();
+            AVLNode b = to.peek();
+            if (a.key < b.key) {
+                listener.removed(a.key, a.value);
+                from.pop();
+            } else if (a.key > b.key) {
+                listener.added(b.key, b.value);
+                to.pop();
+            } else {
+                // 同一個鍵但節點不同（路徑複製或更新過），值相同就不算差異
+                if (a.value != b.value) {
+                    listener.updated(a.key, a.value, b.value);
+                }
+                from.pop();
+                to.pop();
+            }
+        }
+        return expanded;
+    }
+    
+    /**
+     * 三方合併，兩邊的修改有衝突時拋出 IllegalStateException
+     */
+    public AVLVersion merge(int baseVersionId, int leftVersionId, int rightVersionId) {
+        return merge(baseVersionId, leftVersionId, rightVersionId, MergeResolver.fail());
+    }
+    
+    /**
+     * 三方合併：以 base 為共同祖先，把 base 到 right 的差異逐鍵套用到 left 上，產生基於 left 的新版本
+     * 對 right 改過的每個鍵：left 仍是 base 的值就採用 right 的結果；left 已改成與 right 相同就略過；
+     * 其餘（兩邊改得不一樣）交給 resolver 決定。只走過 right 的差異，耗時 O(差異數 × log n)。
+     */
+    public AVLVersion merge(int baseVersionId, int leftVersionId, int rightVersionId, MergeResolver resolver) {
+        AVLVersion leftVersion = baseVersion(leftVersionId);
+        AVLNode[] root = {leftVersion.root};
+        int[] nodeCount = {leftVersion.nodeCount};
+        diff(baseVersionId, rightVersionId, new DiffListener() {
+            @Override
+            public void added(int key, int value) {
+                apply(key, null, value);
+            }
+            
+            @Override
+            public void removed(int key, int value) {
+                apply(key, value, null);
+            }
+            
+            @Override
+            public void updated(int key, int oldValue, int newValue) {
+                apply(key, oldValue, newValue);
+            }
+            
+            private void apply(int key, Integer base, Integer right) {
+                Integer left = lookup(root[0], key);
+                Integer result;
+                if (Objects.equals(left, base)) {
+                    result = right;
+                } else if (Objects.equals(left, right)) {
+                    return;
+                } else {
+                    result = resolver.resolve(key, base, left, right);
+                }
+                if (result != null) {
+                    if (!result.equals(left)) root[0] = insert(root[0], key, result);
+                    if (left == null) nodeCount[0]++;
+                } else if (left != null) {
+                    root[0] = delete(root[0], key);
+                    nodeCount[0]--;
+                }
+            }
+        });
+        return addVersion(root[0], leftVersionId, nodeCount[0]);
+    }
+    
+    /**
+     * diff 用的中序游標
+     * 堆疊上的項目是尚未展開的整棵子樹，或已展開、只剩節點本身的鍵值（keyOnly）
+     */
+    private static final class DiffCursor {
+        private AVLNode[] nodes = new AVLNode[16];
+        private boolean[] keyOnly = new boolean[16];
+        private int top;
+        
+        DiffCursor(AVLNode root) {
+            if (root != null) push(root, false);
+        }
+        
+        private void push(AVLNode node, boolean key) {
+            if (top == nodes.length) {
+                nodes = Arrays.copyOf(nodes, top * 2);
+                keyOnly = Arrays.copyOf(keyOnly, top * 2);
+            }
+            nodes[top] = node;
+            keyOnly[top++] = key;
+        }
+        
+        boolean isEmpty() {
+            return top == 0;
+        }
+        
+        AVLNode peek() {
+            return nodes[top - 1];
+        }
+        
+        boolean peekIsKey() {
+            return keyOnly[top - 1];
+        }
+        
+        // 頂端子樹的高度，只剩鍵值的項目為 0
+        int topHeight() {
+            return keyOnly[top - 1] ? 0 : nodes[top - 1].height;
+        }
+        
+        AVLNode pop() {
+            AVLNode node = nodes[--top];
+            nodes[top] = null;
+            return node;
+        }
+        
+        // 把頂端的子樹換成 右子樹、節點本身、左子樹，左子樹在最上面
+        void expand() {
+            AVLNode node = pop();
+            if (node.right != null) push(node.right, false);
+            push(node, true);
+            if (node.left != null) push(node.left, false);
+        }
+    }
+    
     /**
      * 獲取指定版本
      */
     public AVLVersion getVersion(int versionId) {
-        if (versionId < 0 || versionId >= versions.size()) {
-            throw new IllegalArgumentException("Invalid version ID: " + versionId);
-        }
-        return versions.get(versionId);
+        return baseVersion(versionId);
     }
     
     /**
      * 獲取最新版本
      */
     public AVLVersion getLatestVersion() {
-        return versions.get(versions.size() - 1);
+        return versions.lastEntry().getValue();
     }
     
     /**
-     * 獲取版本數量
+     * 獲取版本數量（尚未回收的版本）
      */
     public int getVersionCount() {
         return versions.size();
     }
     
+    /**
+     * 為版本加上標籤；同名標籤只會在一個版本上，原本標在其他版本的會被移過來
+     */
+    public void tag(int versionId, String tag) {
+        AVLVersion version = baseVersion(versionId);
+        untag(tag);
+        version.tags.add(tag);
+    }
+    
+    public void untag(String tag) {
+        for (AVLVersion version : versions.values()) {
+            version.tags.remove(tag);
+        }
+    }
+    
+    /**
+     * 設定自動回收策略，之後每次寫入產生新版本時，版本數累積到上次回收後的兩倍就回收一次
+     * 傳入 null 關閉自動回收
+     */
+    public void setRetentionPolicy(RetentionPolicy policy) {
+        this.retentionPolicy = policy;
+        this.gcThreshold = 16;
+    }
+    
+    /**
+     * 依策略釋放版本，回傳釋放的版本數
+     */
+    public int gc(RetentionPolicy policy) {
+        return RetentionPolicy.release(versions, policy, clock.getAsLong());
+    }
+    
+    /**
+     * 版本與其基礎版本的節點共享統計，O(此版本獨有節點數 + 搜尋路徑長度)
+     */
+    public VersionStats versionStats(int versionId) {
+        AVLVersion version = baseVersion(versionId);
+        AVLVersion parent = versions.get(version.parentId);
+        int unique = VersionStats.countUnique(version.root, parent == null ? null : parent.root, NODES);
+        return new VersionStats(versionId, version.parentId, version.nodeCount, version.nodeCount - unique);
+    }
+    
+    /**
+     * 所有存活版本實際引用的不重複節點數（共享節點只算一次），約為 gc 後持久化樹佔用的節點記憶體
+     */
+    public int liveNodeCount() {
+        List<AVLNode> roots = new ArrayList<>(versions.size());
+        for (AVLVersion version : versions.values()) {
+            roots.add(version.root);
+        }
+        return VersionStats.countLive(roots, NODES);
+    }
+    
+    public long estimatedLiveBytes() {
+        return (long) liveNodeCount() * NODE_BYTES;
+    }
+    
     /**
      * 列出所有版本的資訊
      */
     public void printVersionHistory() {
         System.out.println("版本歷史：");
-        for (AVLVersion version : versions) {
+        for (AVLVersion version : versions.values()) {
             System.out.printf("版本 %d: 大小 = %d, 平衡 = %s%n", 
                 version.getVersionId(), 
                 version.size(), 
@@ -344,5 +716,93 @@ public class PersistentAVLExercise {
         System.out.println("- 節點不可變，確保版本安全性");
         System.out.println("- 時間複雜度：O(log n) 插入，O(log n) 查詢");
         System.out.println("- 空間複雜度：每次插入 O(log n) 額外空間");
+        
+        // 版本回收與共享統計
+        System.out.println("\n9. 版本共享統計：");
+        for (int id = 1; id < tree.getVersionCount(); id++) {
+            System.out.println(tree.versionStats(id));
+        }
+        
+        System.out.println("\n10. 版本回收：");
+        long[] now = {0};
+        PersistentAVLExercise timed = new PersistentAVLExercise(() -> now[0]);
+        for (int i = 1; i <= 20; i++) {
+            now[0] = i * 100L;
+            timed.insert(timed.getLatestVersion().getVersionId(), i, i * 10);
+        }
+        timed.tag(5, "baseline");
+        System.out.printf("回收前: %d 個版本, 存活節點 %d%n", timed.getVersionCount(), timed.liveNodeCount());
+        int released = timed.gc(RetentionPolicy.keepNewerThan(500).or(RetentionPolicy.keepTagged()));
+        System.out.printf("保留 500 ms 內與有標籤的版本，釋放 %d 個，剩 %d 個版本, 存活節點 %d (約 %d bytes)%n",
+            released, timed.getVersionCount(), timed.liveNodeCount(), timed.estimatedLiveBytes());
+        timed.printVersionHistory();
+        
+        System.out.println("\n11. 版本差異與三方合併：");
+        PersistentAVLExercise store = new PersistentAVLExercise();
+        int base = 0;
+        for (int key = 1; key <= 10; key++) {
+            base = store.insert(base, key, key * 10).getVersionId();
+        }
+        int left = store.insert(store.insert(base, 3, 31).getVersionId(), 11, 110).getVersionId();
+        int right = store.insert(store.insert(base, 7, 71).getVersionId(), 12, 120).getVersionId();
+        DiffListener printer = new DiffListener() {
+            @Override
+            public void added(int key, int value) {
+                System.out.printf("  + %d = %d%n", key, value);
+            }
+            
+            @Override
+            public void removed(int key, int value) {
+                System.out.printf("  - %d = %d%n", key, value);
+            }
+            
+            @Override
+            public void updated(int key, int oldValue, int newValue) {
+                System.out.printf("  ~ %d: %d -> %d%n", key, oldValue, newValue);
+            }
+        };
+        System.out.printf("版本 %d -> %d:%n", left, right);
+        store.diff(left, right, printer);
+        AVLVersion merged = store.merge(base, left, right);
+        System.out.printf("合併 %d 與 %d（共同祖先 %d）為版本 %d，相對祖先的差異:%n", left, right, base, merged.getVersionId());
+        store.diff(base, merged.getVersionId(), printer);
+        
+        int conflicting = store.insert(base, 3, 32).getVersionId();
+        try {
+            store.merge(base, left, conflicting);
+        } catch (IllegalStateException e) {
+            System.out.println("衝突: " + e.getMessage());
+        }
+        AVLVersion resolved = store.merge(base, left, conflicting, MergeResolver.preferRight());
+        System.out.printf("以 right 為準合併為版本 %d: 鍵 3 = %d%n", resolved.getVersionId(), resolved.search(3));
+        
+        PersistentAVLExercise big = new PersistentAVLExercise();
+        big.setRetentionPolicy(RetentionPolicy.keepLast(1).or(RetentionPolicy.keepTagged()));
+        for (int key = 0; key < 200000; key++) {
+            big.insert(big.getLatestVersion().getVersionId(), key, key);
+        }
+        int before = big.getLatestVersion().getVersionId();
+        big.tag(before, "before");
+        int after = big.insert(before, 123456, -1).getVersionId();
+        int[] changes = {0};
+        long start = System.nanoTime();
+        int expanded = big.diff(before, after, new DiffListener() {
+            @Override
+            public void added(int key, int value) {
+                changes[0]++;
+            }
+            
+            @Override
+            public void removed(int key, int value) {
+                changes[0]++;
+            }
+            
+            @Override
+            public void updated(int key, int oldValue, int newValue) {
+                changes[0]++;
+            }
+        });
+        System.out.printf("20 萬筆的兩個版本只差一個鍵: %d 個差異，展開 %d 個子樹，%.3f ms%n",
+            changes[0], expanded, (System.nanoTime() - start) / 1e6);
     }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+import java.util.Objects;
+
+// 玩家資訊類別，AVLLeaderboardSystem、ShardedLeaderboard 與 LeaderboardJournal 共用
+class Player {
+    String name;
+    int score;
+    long timestamp; // 用於處理同分情況
+    
+    public Player(String name, int score) {
+        this.name = name;
+        this.score = score;
+        this.timestamp = System.nanoTime(); // 越晚加入的時間戳越大
+    }
+    
+    public Player(String name, int score, long timestamp) {
+        this.name = name;
+        this.score = score;
+        this.timestamp = timestamp;
+    }
+    
+    @Override
+    public String toString() {
+        return name + "(" + score + ")";
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        Player player = (Player) obj;
+        return Objects.equals(name, player.name);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(name);
+    }
+}
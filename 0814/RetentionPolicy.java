@@ -0,0 +1,64 @@
+import java.util.*;
+
+/**
+ * 持久化樹（AVLTree、PersistentAVLExercise）的版本保留策略
+ * gc 時對每個存活版本詢問一次，任一策略回傳 true 就保留；最新版本一律保留，不經過策略判斷
+ */
+@FunctionalInterface
+public interface RetentionPolicy {
+
+    /**
+     * 策略判斷時需要的版本資訊
+     */
+    interface Version {
+        long getCreatedAt();
+
+        boolean isTagged();
+    }
+
+    /**
+     * @param newerCount 比此版本新的存活版本數（次新的版本為 1）
+     * @param now        目前時間（毫秒）
+     */
+    boolean retain(Version version, int newerCount, long now);
+
+    default RetentionPolicy or(RetentionPolicy other) {
+        return (version, newerCount, now) -> retain(version, newerCount, now)
+            || other.retain(version, newerCount, now);
+    }
+
+    // 保留最新的 n 個版本
+    static RetentionPolicy keepLast(int n) {
+        return (version, newerCount, now) -> newerCount < n;
+    }
+
+    // 保留有標籤的版本
+    static RetentionPolicy keepTagged() {
+        return (version, newerCount, now) -> version.isTagged();
+    }
+
+    // 保留建立不超過 maxAgeMillis 的版本
+    static RetentionPolicy keepNewerThan(long maxAgeMillis) {
+        return (version, newerCount, now) -> now - version.getCreatedAt() <= maxAgeMillis;
+    }
+
+    /**
+     * 依策略從 versions（以版本 ID 排序）移除版本，回傳釋放的版本數
+     * 版本只是從 versions 移除，只被它引用的節點之後由 JVM 回收；與其他存活版本共享的節點不受影響
+     */
+    static <V extends Version> int release(NavigableMap<Integer, V> versions, RetentionPolicy policy, long now) {
+        int newerCount = 0;
+        int released = 0;
+        Iterator<V> it = versions.descendingMap().values().iterator();
+        it.next(); // 最新版本一律保留
+        while (it.hasNext()) {
+            V version = it.next();
+            newerCount++;
+            if (!policy.retain(version, newerCount, now)) {
+                it.remove();
+                released++;
+            }
+        }
+        return released;
+    }
+}
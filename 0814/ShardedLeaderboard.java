@@ -0,0 +1,413 @@
+/**
+ * 分片排行榜
+ * 依玩家名稱的 hash 把玩家分到 P 個獨立的 AVLLeaderboardSystem，
+ * 每個分片有自己的樹與 playerMap，樹高與單次插入的路徑都只和分片大小有關。
+ *
+ * 全域查詢由各分片的順序統計量合併而成：
+ *  - 排名：玩家的全域排名 = 1 + 各分片中排在他前面的玩家數總和，O(P log(n/P))
+ *  - 前 K 名：各分片依排名分段取出，用大小為 P 的堆積做 K 路合併，O(P log(n/P) + K log P)
+ * 時間戳由整個排行榜共用的序號產生，不會有兩位玩家的 (分數, 時間戳) 完全相同，
+ * 因此排序結果與把所有玩家放在同一棵樹完全一致。
+ *
+ * 每個分片以自己的物件為鎖；批次新增與批次更新會先依分片拆開，再交給 fork-join pool 平行處理。
+ * 跨分片的查詢逐一鎖住各分片，查詢期間若有寫入，結果可能混合不同時間點的分片狀態。
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class ShardedLeaderboard {
+    private final AVLLeaderboardSystem[] shards;
+    private final ForkJoinPool pool;
+    private final AtomicLong nextTimestamp = new AtomicLong();
+
+    public ShardedLeaderboard(int shardCount) {
+        this(shardCount, ForkJoinPool.commonPool());
+    }
+
+    public ShardedLeaderboard(int shardCount, ForkJoinPool pool) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("分片數必須至少為 1: " + shardCount);
+        }
+        this.shards = new AVLLeaderboardSystem[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new AVLLeaderboardSystem();
+        }
+        this.pool = pool;
+    }
+
+    private int shardIndex(String name) {
+        int h = name.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    private AVLLeaderboardSystem shardOf(String name) {
+        return shards[shardIndex(name)];
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * 新增玩家，已存在時回傳 false
+     * 時間複雜度: O(log(n/P))
+     */
+    public boolean addPlayer(String name, int score) {
+        AVLLeaderboardSystem shard = shardOf(name);
+        synchronized (shard) {
+            if (shard.getPlayer(name) != null) {
+                return false;
+            }
+            shard.addPlayerInternal(new Player(name, score, nextTimestamp.getAndIncrement()));
+            return true;
+        }
+    }
+
+    /**
+     * 更新玩家分數（保留原本的時間戳），玩家不存在時回傳 false
+     * 時間複雜度: O(log(n/P))
+     */
+    public boolean updateScore(String name, int newScore) {
+        AVLLeaderboardSystem shard = shardOf(name);
+        synchronized (shard) {
+            if (shard.getPlayer(name) == null) {
+                return false;
+            }
+            shard.updateScoreInternal(name, newScore);
+            return true;
+        }
+    }
+
+    /**
+     * 批次新增玩家，依 scores 的走訪順序給時間戳，各分片平行插入
+     * 已存在的玩家會被略過，回傳實際新增的玩家數
+     */
+    public int addPlayers(Map<String, Integer> scores) {
+        List<List<Player>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            parts.add(new ArrayList<>());
+        }
+        for (Map.Entry<String, Integer> e : scores.entrySet()) {
+            parts.get(shardIndex(e.getKey()))
+                .add(new Player(e.getKey(), e.getValue(), nextTimestamp.getAndIncrement()));
+        }
+
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            AVLLeaderboardSystem shard = shards[i];
+            List<Player> part = parts.get(i);
+            if (part.isEmpty()) {
+                continue;
+            }
+            tasks.add(() -> {
+                int added = 0;
+                synchronized (shard) {
+                    for (Player player : part) {
+                        if (shard.getPlayer(player.name) == null) {
+                            shard.addPlayerInternal(player);
+                            added++;
+                        }
+                    }
+                }
+                return added;
+            });
+        }
+        return invokeAll(tasks);
+    }
+
+    /**
+     * 批次套用分數變化（delta 加到目前分數上），各分片平行呼叫 AVLLeaderboardSystem.applyScoreUpdates
+     * 回傳實際更新的玩家數
+     */
+    public int applyScoreUpdates(Map<String, Integer> deltas) {
+        List<Map<String, Integer>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            parts.add(new HashMap<>());
+        }
+        for (Map.Entry<String, Integer> e : deltas.entrySet()) {
+            parts.get(shardIndex(e.getKey())).put(e.getKey(), e.getValue());
+        }
+
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            AVLLeaderboardSystem shard = shards[i];
+            Map<String, Integer> part = parts.get(i);
+            if (part.isEmpty()) {
+                continue;
+            }
+            tasks.add(() -> {
+                synchronized (shard) {
+                    return shard.applyScoreUpdates(part);
+                }
+            });
+        }
+        return invokeAll(tasks);
+    }
+
+    private int invokeAll(List<Callable<Integer>> tasks) {
+        int total = 0;
+        try {
+            for (Future<Integer> f : pool.invokeAll(tasks)) {
+                total += f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("批次操作被中斷", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        return total;
+    }
+
+    public int size() {
+        int total = 0;
+        for (AVLLeaderboardSystem shard : shards) {
+            synchronized (shard) {
+                total += shard.getTotalPlayers();
+            }
+        }
+        return total;
+    }
+
+    Player getPlayer(String name) {
+        AVLLeaderboardSystem shard = shardOf(name);
+        synchronized (shard) {
+            return shard.getPlayer(name);
+        }
+    }
+
+    /**
+     * 玩家的全域排名 (1-based)，不存在時回傳 -1
+     * 時間複雜度: O(P log(n/P))
+     */
+    public int rankOf(String name) {
+        Player player = getPlayer(name);
+        if (player == null) {
+            return -1;
+        }
+        int ahead = 0;
+        for (AVLLeaderboardSystem shard : shards) {
+            synchronized (shard) {
+                ahead += shard.countAhead(player);
+            }
+        }
+        return ahead + 1;
+    }
+
+    /**
+     * 分數範圍內的玩家數
+     * 時間複雜度: O(P log(n/P))
+     */
+    public int countInScoreRange(int minScore, int maxScore) {
+        int total = 0;
+        for (AVLLeaderboardSystem shard : shards) {
+            synchronized (shard) {
+                total += shard.countInScoreRange(minScore, maxScore);
+            }
+        }
+        return total;
+    }
+
+    // 依排名逐段讀取單一分片，避免一開始就從每個分片各取 K 位玩家
+    private static final class ShardCursor {
+        final AVLLeaderboardSystem shard;
+        final int chunk;
+        List<Player> buffer = Collections.emptyList();
+        int index;
+        int nextRank = 1;
+
+        ShardCursor(AVLLeaderboardSystem shard, int chunk) {
+            this.shard = shard;
+            this.chunk = chunk;
+        }
+
+        // 目前的玩家，此分片已讀完時回傳 null
+        Player head() {
+            if (index == buffer.size()) {
+                synchronized (shard) {
+                    buffer = shard.playersRanked(nextRank, nextRank + chunk - 1);
+                }
+                nextRank += buffer.size();
+                index = 0;
+            }
+            return index < buffer.size() ? buffer.get(index) : null;
+        }
+    }
+
+    /**
+     * 全域前 K 名，依排名排序
+     * 每個分片每次讀取約 K/P 位玩家，分布均勻時大多只需讀一兩段
+     */
+    public List<Player> topK(int k) {
+        List<Player> result = new ArrayList<>(Math.max(0, k));
+        if (k <= 0) {
+            return result;
+        }
+        int chunk = Math.max(16, k / shards.length + 1);
+        PriorityQueue<ShardCursor> heap =
+            new PriorityQueue<>(shards.length, (a, b) -> AVLLeaderboardSystem.comparePlayer(a.head(), b.head()));
+        for (AVLLeaderboardSystem shard : shards) {
+            ShardCursor cursor = new ShardCursor(shard, chunk);
+            if (cursor.head() != null) {
+                heap.add(cursor);
+            }
+        }
+        while (result.size() < k && !heap.isEmpty()) {
+            ShardCursor cursor = heap.poll();
+            result.add(cursor.head());
+            cursor.index++;
+            if (cursor.head() != null) {
+                heap.add(cursor);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 隨機新增與批次更新後，逐一比對分片排行榜與單一 AVL 樹的排名與前 K 名
+     */
+    public static boolean verifyAgainstSingleTree(int players, int shardCount, long seed) {
+        Random random = new Random(seed);
+        ShardedLeaderboard sharded = new ShardedLeaderboard(shardCount);
+        AVLLeaderboardSystem single = new AVLLeaderboardSystem();
+
+        Map<String, Integer> scores = new LinkedHashMap<>();
+        for (int i = 0; i < players; i++) {
+            // 分數範圍小，刻意製造大量同分
+            scores.put("P" + i, random.nextInt(players / 10 + 1));
+        }
+        sharded.addPlayers(scores);
+        for (String name : scores.keySet()) {
+            Player p = sharded.getPlayer(name);
+            single.addPlayerInternal(new Player(p.name, p.score, p.timestamp));
+        }
+
+        for (int round = 0; round < 3; round++) {
+            Map<String, Integer> deltas = new HashMap<>();
+            for (int i = 0; i < players / 5; i++) {
+                deltas.put("P" + random.nextInt(players), random.nextInt(201) - 100);
+            }
+            sharded.applyScoreUpdates(deltas);
+            single.applyScoreUpdates(deltas);
+            for (int i = 0; i < players / 50; i++) {
+                String name = "P" + random.nextInt(players);
+                int score = random.nextInt(players / 10 + 1);
+                sharded.updateScore(name, score);
+                single.updateScoreInternal(name, score);
+            }
+        }
+
+        if (sharded.size() != single.getTotalPlayers()) {
+            return false;
+        }
+        if (!sharded.topK(players).equals(single.playersRanked(1, players))
+            || !sharded.topK(10).equals(single.playersRanked(1, 10))) {
+            return false;
+        }
+        for (int i = 0; i < 1000; i++) {
+            String name = "P" + random.nextInt(players);
+            int min = random.nextInt(players / 10 + 1);
+            if (sharded.rankOf(name) != single.rankOf(name)
+                || sharded.countInScoreRange(min, min + 50) != single.countInScoreRange(min, min + 50)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 比較單一 AVL 樹與不同分片數的建置、批次更新與查詢耗時
+     */
+    public static void benchmark(int players) {
+        System.out.println("=== 分片排行榜效能 (" + players + " 位玩家，"
+            + ForkJoinPool.commonPool().getParallelism() + " 個 fork-join 工作執行緒) ===");
+        System.out.printf("%-8s %12s %14s %16s %16s%n", "分片", "建置 (ms)", "批次更新 (ms)", "排名 (ns/op)", "前 100 名 (ns/op)");
+        Random random = new Random(3);
+        Map<String, Integer> scores = new LinkedHashMap<>();
+        for (int i = 0; i < players; i++) {
+            scores.put("P" + i, random.nextInt(1000000));
+        }
+        Map<String, Integer> deltas = new HashMap<>();
+        while (deltas.size() < players / 10) {
+            deltas.put("P" + random.nextInt(players), random.nextInt(2001) - 1000);
+        }
+        String[] probes = new String[10000];
+        for (int i = 0; i < probes.length; i++) probes[i] = "P" + random.nextInt(players);
+
+        // 第一輪只用來暖身 JIT
+        int[] shardCounts = {0, 1, 2, 4, 8, 16};
+        for (int round = 0; round < 2; round++) {
+            for (int p : shardCounts) {
+                long sink = 0;
+                System.gc();
+                long start = System.nanoTime();
+                AVLLeaderboardSystem single = null;
+                ShardedLeaderboard sharded = null;
+                if (p == 0) {
+                    single = new AVLLeaderboardSystem();
+                    long ts = 0;
+                    for (Map.Entry<String, Integer> e : scores.entrySet()) {
+                        single.addPlayerInternal(new Player(e.getKey(), e.getValue(), ts++));
+                    }
+                } else {
+                    sharded = new ShardedLeaderboard(p);
+                    sharded.addPlayers(scores);
+                }
+                long build = System.nanoTime() - start;
+
+                System.gc();
+                start = System.nanoTime();
+                if (p == 0) single.applyScoreUpdates(deltas); else sharded.applyScoreUpdates(deltas);
+                long update = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (String name : probes) {
+                    sink += p == 0 ? single.rankOf(name) : sharded.rankOf(name);
+                }
+                double rank = (System.nanoTime() - start) / (double) probes.length;
+
+                int topReps = 2000;
+                start = System.nanoTime();
+                for (int i = 0; i < topReps; i++) {
+                    sink += (p == 0 ? single.playersRanked(1, 100) : sharded.topK(100)).size();
+                }
+                double top = (System.nanoTime() - start) / (double) topReps;
+
+                if (round == 0 || sink == 42) continue;
+                System.out.printf("%-8s %12.1f %14.1f %16.0f %16.0f%n", p == 0 ? "單一樹" : String.valueOf(p),
+                    build / 1e6, update / 1e6, rank, top);
+            }
+        }
+        System.out.println();
+    }
+
+    public static void main(String[] args) {
+        System.out.println("=== 分片排行榜 ===\n");
+        ShardedLeaderboard board = new ShardedLeaderboard(4);
+        String[] playerNames = {"Alice", "Bob", "Charlie", "Diana", "Eve", "Frank", "Grace", "Henry"};
+        int[] playerScores = {950, 880, 920, 990, 850, 930, 870, 960};
+        for (int i = 0; i < playerNames.length; i++) {
+            board.addPlayer(playerNames[i], playerScores[i]);
+        }
+        board.addPlayer("Ian", 950); // 與 Alice 同分，較晚加入排在後面
+        for (String name : playerNames) {
+            System.out.println(name + " 在分片 " + board.shardIndex(name) + "，全域排名 " + board.rankOf(name));
+        }
+        System.out.println("前 5 名: " + board.topK(5));
+        board.updateScore("Bob", 1000);
+        System.out.println("Bob 更新為 1000 後前 3 名: " + board.topK(3) + "，Bob 排名 " + board.rankOf("Bob"));
+        System.out.println("分數 [900, 960] 內的玩家數: " + board.countInScoreRange(900, 960));
+        System.out.println();
+
+        System.out.println("=== 與單一 AVL 樹比對 ===");
+        for (int p : new int[]{1, 3, 8, 16}) {
+            System.out.println(p + " 個分片: " + (verifyAgainstSingleTree(20000, p, p) ? "一致" : "不一致"));
+        }
+        System.out.println();
+
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        benchmark(players);
+    }
+}
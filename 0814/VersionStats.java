@@ -0,0 +1,88 @@
+import java.util.*;
+
+/**
+ * 單一版本與其基礎版本（parent）之間的節點共享統計，AVLTree 與 PersistentAVLExercise 共用
+ * 基礎版本已被回收時，所有節點都算獨有
+ */
+public class VersionStats {
+    public final int versionId;
+    public final int parentId;
+    public final int totalNodes;
+    public final int sharedNodes;   // 與基礎版本共用（同一物件）的節點數
+    public final int uniqueNodes;   // 此版本新建立的節點數
+
+    VersionStats(int versionId, int parentId, int totalNodes, int sharedNodes) {
+        this.versionId = versionId;
+        this.parentId = parentId;
+        this.totalNodes = totalNodes;
+        this.sharedNodes = sharedNodes;
+        this.uniqueNodes = totalNodes - sharedNodes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("版本 %d (基於 %s): 節點 %d, 共享 %d, 獨有 %d", versionId,
+            parentId < 0 ? "-" : String.valueOf(parentId), totalNodes, sharedNodes, uniqueNodes);
+    }
+
+    /**
+     * 兩種樹的節點型別不同，走訪時透過這個介面取得鍵值與左右子樹
+     */
+    interface Nodes<N> {
+        int key(N node);
+
+        N left(N node);
+
+        N right(N node);
+    }
+
+    /**
+     * version 中不屬於 parent 的節點數，兩棵樹同時往下走，O(獨有節點數 + 搜尋路徑長度)，不配置記憶體
+     * 鍵值在一棵樹中唯一，所以節點屬於 parent 若且唯若 parent 中同鍵值的節點就是它本身；
+     * 已發佈的節點不可變，共用的節點整棵子樹也一定共用，遇到就不必往下走。
+     * cover 是 parent 中包含 (lo, hi) 所有鍵值的最小子樹，子節點的範圍較小，從父節點的 cover 繼續往下找即可。
+     */
+    static <N> int countUnique(N root, N parentRoot, Nodes<N> nodes) {
+        return countUnique(root, Long.MIN_VALUE, Long.MAX_VALUE, parentRoot, nodes);
+    }
+
+    private static <N> int countUnique(N node, long lo, long hi, N cover, Nodes<N> nodes) {
+        if (node == null) return 0;
+        while (cover != null) {
+            int k = nodes.key(cover);
+            if (k <= lo) {
+                cover = nodes.right(cover);
+            } else if (k >= hi) {
+                cover = nodes.left(cover);
+            } else {
+                break;
+            }
+        }
+        int key = nodes.key(node);
+        N match = cover;
+        while (match != null && nodes.key(match) != key) {
+            match = key < nodes.key(match) ? nodes.left(match) : nodes.right(match);
+        }
+        if (match == node) return 0;
+        return 1 + countUnique(nodes.left(node), lo, key, cover, nodes)
+            + countUnique(nodes.right(node), key, hi, cover, nodes);
+    }
+
+    /**
+     * 多個版本實際引用的不重複節點數（共享節點只算一次），O(不重複節點數)
+     */
+    static <N> int countLive(Iterable<N> roots, Nodes<N> nodes) {
+        Set<N> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (N root : roots) {
+            collect(root, seen, nodes);
+        }
+        return seen.size();
+    }
+
+    // 已經收過的節點代表整棵子樹都已收過
+    private static <N> void collect(N node, Set<N> seen, Nodes<N> nodes) {
+        if (node == null || !seen.add(node)) return;
+        collect(nodes.left(node), seen, nodes);
+        collect(nodes.right(node), seen, nodes);
+    }
+}